@@ -0,0 +1,180 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.cas.FSIterator;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
+import org.cleartk.timeml.type.DocumentCreationTime;
+import org.cleartk.token.type.Sentence;
+import org.cleartk.token.type.Token;
+import org.uimafit.factory.JCasFactory;
+import org.uimafit.factory.TypeSystemDescriptionFactory;
+import org.uimafit.factory.UimaContextFactory;
+
+import de.unihd.dbs.uima.types.heideltime.Timex3;
+
+/**
+ * Builds the documents used in benchmarks from the synthetic corpus in
+ * benchmark/resources/corpus, which has one sentence per line, each token
+ * written as word/POS. Tokens are separated by single spaces in the
+ * document text, so documents are the same on every run.
+ */
+public class BenchmarkCorpus {
+
+	public static final String DCT = "20111021";
+
+	static TypeSystemDescription typeSystem;
+
+	static synchronized TypeSystemDescription getTypeSystem() throws ResourceInitializationException {
+		if (typeSystem == null) {
+			typeSystem = CasCreationUtils.mergeTypeSystems(Arrays.asList(
+					TypeSystemDescriptionFactory.createTypeSystemDescription(),
+					TypeSystemDescriptionFactory.createTypeSystemDescriptionFromPath("desc/type/HeidelTime_TypeSystem.xml")));
+		}
+		return typeSystem;
+	}
+
+	/**
+	 * @return the sentences of the corpus of language, each as word/POS tokens
+	 */
+	public static List<String[]> readSentences(String language) throws IOException {
+		InputStream in = BenchmarkCorpus.class.getClassLoader().getResourceAsStream("corpus/" + language + ".txt");
+		if (in == null) {
+			throw new IOException("No benchmark corpus for " + language);
+		}
+		List<String[]> res = new ArrayList<String[]>();
+		BufferedReader br = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+		try {
+			for (String line; (line = br.readLine()) != null; ) {
+				if (line.startsWith("//") || line.equals("")) {
+					continue;
+				}
+				res.add(line.split(" "));
+			}
+		} finally {
+			br.close();
+		}
+		return res;
+	}
+
+	/**
+	 * @return a document of the sentences of the corpus of language, with
+	 *         sentence and token annotations and a document creation time
+	 */
+	public static JCas createDocument(String language) throws UIMAException, IOException {
+		List<String[]> sentences = readSentences(language);
+		JCas jcas = JCasFactory.createJCas(getTypeSystem());
+
+		StringBuilder text = new StringBuilder();
+		for (String[] sentence : sentences) {
+			for (String token : sentence) {
+				text.append(token.substring(0, token.lastIndexOf('/'))).append(' ');
+			}
+			text.setCharAt(text.length() - 1, '\n');
+		}
+		jcas.setDocumentText(text.toString());
+
+		int offset = 0;
+		for (String[] sentence : sentences) {
+			int sentenceBegin = offset;
+			for (String token : sentence) {
+				int slash = token.lastIndexOf('/');
+				Token t = new Token(jcas, offset, offset + slash);
+				t.setPos(token.substring(slash + 1));
+				t.addToIndexes();
+				offset += slash + 1;
+			}
+			new Sentence(jcas, sentenceBegin, offset - 1).addToIndexes();
+		}
+
+		DocumentCreationTime dct = new DocumentCreationTime(jcas, 0, 0);
+		dct.setValue(DCT);
+		dct.addToIndexes();
+		return jcas;
+	}
+
+	/**
+	 * @return the sentences of the document, in order
+	 */
+	public static List<Sentence> getSentences(JCas jcas) {
+		List<Sentence> res = new ArrayList<Sentence>();
+		FSIterator iter = jcas.getAnnotationIndex(Sentence.type).iterator();
+		while (iter.hasNext()) {
+			res.add((Sentence) iter.next());
+		}
+		return res;
+	}
+
+	/**
+	 * @return a HeidelTime instance for language, with the default settings
+	 */
+	public static HeidelTime createHeidelTime(String language) throws ResourceInitializationException {
+		HeidelTime res = new HeidelTime();
+		res.initialize(UimaContextFactory.createUimaContext(
+				"Language_english_german", language,
+				"Type_news_narratives", "news"));
+		return res;
+	}
+
+	/**
+	 * Finds the timex candidates of all types in the document, as
+	 * HeidelTime.process does before resolving their overlaps.
+	 * @param batchMatchers receives the matcher of each batch of candidates
+	 * @param batches receives the candidates found by each matcher in each sentence
+	 */
+	public static void findCandidates(HeidelTime heidelTime, JCas jcas, TokenIndex tokens,
+			List<TimexRuleMatcher> batchMatchers, List<List<TimexCandidate>> batches) {
+		for (Sentence s : getSentences(jcas)) {
+			String text = s.getCoveredText();
+			for (TimexRuleMatcher rm : new TimexRuleMatcher[] {heidelTime.rmDate, heidelTime.rmTime,
+					heidelTime.rmDuration, heidelTime.rmSet}) {
+				batchMatchers.add(rm);
+				batches.add(rm.findCandidates(s, text, tokens));
+			}
+		}
+	}
+
+	/**
+	 * @return the timexes of the document, in index order
+	 */
+	public static List<Timex3> getTimexes(JCas jcas) {
+		List<Timex3> res = new ArrayList<Timex3>();
+		FSIterator iter = jcas.getAnnotationIndex(Timex3.type).iterator();
+		while (iter.hasNext()) {
+			res.add((Timex3) iter.next());
+		}
+		return res;
+	}
+
+	/**
+	 * Removes all timexes from the document.
+	 */
+	public static void removeTimexes(JCas jcas) {
+		for (Timex3 t : getTimexes(jcas)) {
+			t.removeFromIndexes();
+		}
+	}
+
+	/**
+	 * @return an id generator numbering timexes from t0, as HeidelTime does in
+	 *         each document
+	 */
+	public static IdGenerator newIdGenerator() {
+		return new IdGenerator() {
+			int counter = 0;
+			public String next() {
+				return "t" + counter++;
+			}
+		};
+	}
+}
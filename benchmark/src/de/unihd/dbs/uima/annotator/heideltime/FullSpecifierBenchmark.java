@@ -0,0 +1,74 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.jcas.JCas;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import de.unihd.dbs.uima.types.heideltime.Timex3;
+
+/**
+ * Specifying the underspecified (UNDEF) values of the timexes found in the
+ * corpus of a language, which is full of relative expressions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FullSpecifierBenchmark {
+
+	@Param({"english", "german"})
+	public String language;
+
+	@Param({"news", "narratives"})
+	public String typeToProcess;
+
+	HeidelTime heidelTime;
+	JCas jcas;
+	TokenIndex tokens;
+	// the timexes and their values before specification
+	List<Timex3> timexes;
+	String[] values;
+
+	@Setup
+	public void setUp() throws Exception {
+		heidelTime = BenchmarkCorpus.createHeidelTime(language);
+		jcas = BenchmarkCorpus.createDocument(language);
+		tokens = new TokenIndex(jcas);
+		List<TimexRuleMatcher> batchMatchers = new ArrayList<TimexRuleMatcher>();
+		List<List<TimexCandidate>> batches = new ArrayList<List<TimexCandidate>>();
+		BenchmarkCorpus.findCandidates(heidelTime, jcas, tokens, batchMatchers, batches);
+		heidelTime.addCandidates(batchMatchers, batches, jcas);
+		timexes = BenchmarkCorpus.getTimexes(jcas);
+		values = new String[timexes.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = timexes.get(i).getTimexValue();
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void restoreValues() {
+		for (int i = 0; i < values.length; i++) {
+			Timex3 t = timexes.get(i);
+			if (!values[i].equals(t.getTimexValue())) {
+				t.removeFromIndexes();
+				t.setTimexValue(values[i]);
+				t.addToIndexes();
+			}
+		}
+	}
+
+	@Benchmark
+	public void process() {
+		heidelTime.fullSpecifier.process(jcas, typeToProcess, tokens, heidelTime.unsetTimex);
+	}
+}
@@ -0,0 +1,62 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.jcas.JCas;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Choosing the overlapping timexes to remove from all the candidates found
+ * by the rules in the corpus of a language, each added copies times to make
+ * the set denser.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OverlapBenchmark {
+
+	@Param({"english", "german"})
+	public String language;
+
+	@Param({"1", "4"})
+	public int copies;
+
+	HeidelTime heidelTime;
+	List<TimexRuleMatcher> batchMatchers = new ArrayList<TimexRuleMatcher>();
+	List<List<TimexCandidate>> batches = new ArrayList<List<TimexCandidate>>();
+
+	@Setup
+	public void setUp() throws Exception {
+		heidelTime = BenchmarkCorpus.createHeidelTime(language);
+		JCas jcas = BenchmarkCorpus.createDocument(language);
+		List<TimexRuleMatcher> foundMatchers = new ArrayList<TimexRuleMatcher>();
+		List<List<TimexCandidate>> found = new ArrayList<List<TimexCandidate>>();
+		BenchmarkCorpus.findCandidates(heidelTime, jcas, new TokenIndex(jcas), foundMatchers, found);
+		for (int copy = 0; copy < copies; copy++) {
+			for (int b = 0; b < found.size(); b++) {
+				List<TimexCandidate> batch = new ArrayList<TimexCandidate>();
+				for (TimexCandidate c : found.get(b)) {
+					batch.add(new TimexCandidate(c.begin, c.end, c.sentence, c.value, c.quant, c.freq,
+							c.mod, c.foundByRule));
+				}
+				batchMatchers.add(foundMatchers.get(b));
+				batches.add(batch);
+			}
+		}
+	}
+
+	@Benchmark
+	public BitSet resolveOverlaps() {
+		return heidelTime.resolveOverlaps(batchMatchers, batches);
+	}
+}
@@ -0,0 +1,61 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.uimafit.factory.UimaContextFactory;
+
+/**
+ * Loading the resources and rules of a language: by HeidelTime.initialize
+ * (from the resource files, unless a rule bundle is on the classpath), and
+ * from a rule bundle in memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RuleLoadingBenchmark {
+
+	@Param({"english", "german"})
+	public String language;
+
+	UimaContext context;
+	byte[] bundle;
+
+	@Setup
+	public void setUp() throws Exception {
+		context = UimaContextFactory.createUimaContext(
+				"Language_english_german", language,
+				"Type_news_narratives", "news");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new RuleModel(language, false).write(out);
+		bundle = out.toByteArray();
+	}
+
+	@Benchmark
+	public HeidelTime initialize() throws ResourceInitializationException {
+		// forget models loaded by earlier invocations
+		synchronized (RuleModel.class) {
+			RuleModel.registry.clear();
+		}
+		HeidelTime heidelTime = new HeidelTime();
+		heidelTime.initialize(context);
+		return heidelTime;
+	}
+
+	@Benchmark
+	public RuleModel readBundle() throws IOException, ClassNotFoundException {
+		return RuleModel.read(new ByteArrayInputStream(bundle));
+	}
+}
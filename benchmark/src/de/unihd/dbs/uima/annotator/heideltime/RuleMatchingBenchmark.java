@@ -0,0 +1,73 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.jcas.JCas;
+import org.cleartk.token.type.Sentence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Matching the rules of all timex types against each sentence of the
+ * corpus of a language, and adding the timexes found to the CAS.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RuleMatchingBenchmark {
+
+	@Param({"english", "german"})
+	public String language;
+
+	@Param({"false", "true"})
+	public boolean useAutomaton;
+
+	JCas jcas;
+	TokenIndex tokens;
+	List<Sentence> sentences;
+	List<String> texts = new ArrayList<String>();
+	List<TimexRuleMatcher> matchers = new ArrayList<TimexRuleMatcher>();
+
+	@Setup
+	public void setUp() throws Exception {
+		jcas = BenchmarkCorpus.createDocument(language);
+		tokens = new TokenIndex(jcas);
+		sentences = BenchmarkCorpus.getSentences(jcas);
+		for (Sentence s : sentences) {
+			texts.add(s.getCoveredText());
+		}
+		RuleModel model = new RuleModel(language, useAutomaton);
+		for (TimexRuleMatcher rm : new TimexRuleMatcher[] {model.getDateMatcher(),
+				model.getTimeMatcher(), model.getDurationMatcher(), model.getSetMatcher()}) {
+			if (rm != null) {
+				matchers.add(rm);
+			}
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void removeTimexes() {
+		BenchmarkCorpus.removeTimexes(jcas);
+	}
+
+	@Benchmark
+	public int findTimexes() {
+		IdGenerator idGenerator = BenchmarkCorpus.newIdGenerator();
+		int found = 0;
+		for (int i = 0; i < sentences.size(); i++) {
+			for (TimexRuleMatcher rm : matchers) {
+				found += rm.findTimexes(sentences.get(i), texts.get(i), tokens, jcas, idGenerator);
+			}
+		}
+		return found;
+	}
+}
@@ -0,0 +1,90 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing, formatting and shifting timex values of each granularity, as
+ * TimexCalendar and as TimexValue.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TimexCalendarBenchmark {
+
+	static final String[] VALUES = {
+		"2011", "201X", "20XX", "2011-10", "2011-XX", "2011-H1", "2011-Q3", "2011-WI",
+		"2011-W42", "2011-W42-WE", "2011-10-21", "XX93-04-15", "2011-10-21TMO",
+		"2011-10-21T14", "2011-10-21T14:30",
+	};
+
+	TimexCalendar[] calendars;
+	TimexValue[] values;
+
+	@Setup
+	public void setUp() {
+		calendars = new TimexCalendar[VALUES.length];
+		values = new TimexValue[VALUES.length];
+		for (int i = 0; i < VALUES.length; i++) {
+			calendars[i] = new TimexCalendar(VALUES[i]);
+			values[i] = TimexValue.parse(VALUES[i], true);
+		}
+	}
+
+	@Benchmark
+	public void parse(Blackhole bh) {
+		for (String value : VALUES) {
+			bh.consume(new TimexCalendar(value));
+		}
+	}
+
+	@Benchmark
+	public void format(Blackhole bh) {
+		for (TimexCalendar calendar : calendars) {
+			bh.consume(calendar.toString(calendar.getLowestField()));
+		}
+	}
+
+	@Benchmark
+	public void parseValue(Blackhole bh) {
+		for (String value : VALUES) {
+			bh.consume(TimexValue.parse(value, true));
+		}
+	}
+
+	@Benchmark
+	public void formatValue(Blackhole bh) {
+		for (TimexValue value : values) {
+			bh.consume(value.toString(value.getLowestField()));
+		}
+	}
+
+	/**
+	 * Offsets each value by a month and by a week from a copy, as
+	 * FullSpecifier does for reference dates.
+	 */
+	@Benchmark
+	public void add(Blackhole bh) {
+		for (TimexCalendar calendar : calendars) {
+			TimexCalendar res = (TimexCalendar) calendar.clone();
+			res.add(TimexCalendar.MONTH, 1);
+			res.add(TimexCalendar.WEEK_OF_YEAR, -1);
+			bh.consume(res);
+		}
+	}
+
+	@Benchmark
+	public void addValue(Blackhole bh) {
+		for (TimexValue value : values) {
+			bh.consume(value.add(TimexCalendar.MONTH, 1).add(TimexCalendar.WEEK_OF_YEAR, -1));
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+/**
+ * Normalizes ISO 8601 duration values of a single unit, such as "PT90M" or
+ * "P24M", by expressing them in the coarsest unit of which they are a whole
+ * number. Units are converted up the ladder seconds, minutes, hours, days,
+ * and from months to years, as far as each step divides evenly: "PT1440M"
+ * becomes "P1D" and "PT90M" stays as it is.
+ * <p>
+ * Days are not converted to weeks, since text giving a number of days is
+ * annotated as such ("14 days" is P14D).
+ */
+public class DurationValue {
+
+	// the most digits an amount may have, so that it fits in a long
+	private static final int MAX_DIGITS = 18;
+
+	/**
+	 * @return value in its coarsest unit, or value itself if it is not a
+	 *         duration of a single unit or is already in its coarsest unit
+	 */
+	public static String normalize(String value) {
+		int n = value.length();
+		if (n < 3 || value.charAt(0) != 'P') {
+			return value;
+		}
+		boolean time = value.charAt(1) == 'T';
+		int digitsStart = time ? 2 : 1;
+		int i = digitsStart;
+		long amount = 0;
+		for (char c; i < n && (c = value.charAt(i)) >= '0' && c <= '9'; i++) {
+			if (i - digitsStart == MAX_DIGITS) {
+				return value;
+			}
+			amount = amount * 10 + (c - '0');
+		}
+		if (i == digitsStart || i != n - 1) {
+			return value;
+		}
+
+		char unit = value.charAt(i);
+		boolean changed = false;
+		while (true) {
+			if (time && unit == 'S' && amount % 60 == 0) {
+				amount /= 60;
+				unit = 'M';
+			} else if (time && unit == 'M' && amount % 60 == 0) {
+				amount /= 60;
+				unit = 'H';
+			} else if (time && unit == 'H' && amount % 24 == 0) {
+				amount /= 24;
+				unit = 'D';
+				time = false;
+			} else if (!time && unit == 'M' && amount % 12 == 0) {
+				amount /= 12;
+				unit = 'Y';
+			} else {
+				break;
+			}
+			changed = true;
+		}
+		if (!changed) {
+			return value;
+		}
+		return (time ? "PT" : "P") + amount + unit;
+	}
+}
@@ -119,7 +119,6 @@ public class FullSpecifier {
 	static final int PRESENT_FUTURE_TENSE = 2;
 	static final int FUTURE_TENSE = 3;
 	
-	TimexCalendar unsetTimex;
 	boolean northernSeasons;
 	
 	public FullSpecifier(Map<String, String> hmAllRePattern, boolean northernSeasons) {
@@ -130,7 +129,6 @@ public class FullSpecifier {
 		this.tenseWord4Future = initPattern(hmAllRePattern,"tenseWord4Future");
 		this.northernSeasons = northernSeasons;
 		initValues();
-		this.unsetTimex = new TimexCalendar("", northernSeasons);
 		logger = UIMAFramework.getLogger(FullSpecifier.class);
 	}
 	
@@ -167,7 +165,7 @@ public class FullSpecifier {
 		public static final int MENTIONED_TIME = 2;
 		public static final int MENTIONED_UNIT = 3;
 		
-		final TimexCalendar calendar;
+		final TimexValue calendar;
 		int field;
 		int diff;
 		int withRespectTo = UNKNOWN;
@@ -182,7 +180,11 @@ public class FullSpecifier {
 			return withRespectTo < MENTIONED_TIME;
 		}
 		
-		public UndefValues(String timex) {
+		/**
+		 * @param unsetTimex the time from which fields the value leaves
+		 *        unspecified are taken
+		 */
+		public UndefValues(String timex, TimexValue unsetTimex) {
 			int value = 0;
 			if (timex.startsWith("UNDEF-")) {
 				timex = timex.substring(6);
@@ -257,20 +259,46 @@ public class FullSpecifier {
 				remaining = timex.substring(m.end(2));
 			}
 			
+			TimexValue cal;
 			if (remaining.equals("")) {
-				calendar = (TimexCalendar) unsetTimex.clone();
-				calendar.setLowestField(field);
+				cal = unsetTimex.withLowestField(field);
 			}
 			else {
-				calendar = new TimexCalendar(unsetTimex.toString(field) + remaining, northernSeasons);
+				cal = TimexValue.now(northernSeasons);
 			}
 			if (byValue) {
-				calendar.set(field, value);
+				// set before the remaining fields, with which it is resolved
+				cal = cal.set(field, value);
 			}
+			if (!remaining.equals("")) {
+				cal = cal.parse(unsetTimex.appendTo(new StringBuilder(), field).append(remaining).toString());
+			}
+			calendar = cal;
 		}
 	}
 
+	/**
+	 * @return the current time, from which the fields left unspecified by
+	 *         UNDEF values are taken if no reference time has them
+	 */
+	public TimexValue now() {
+		return TimexValue.now(northernSeasons);
+	}
+
 	public void process(JCas jcas, String typeToProcess) {
+		process(jcas, typeToProcess, new TokenIndex(jcas));
+	}
+
+	public void process(JCas jcas, String typeToProcess, TokenIndex tokens) {
+		process(jcas, typeToProcess, tokens, now());
+	}
+
+	/**
+	 * @param tokens an index of the tokens of the document
+	 * @param unsetTimex the time from which fields left unspecified are
+	 *        taken, see {@link #now()}
+	 */
+	public void process(JCas jcas, String typeToProcess, TokenIndex tokens, TimexValue unsetTimex) {
 		
 		// build up a list with all found TIMEX expressions
 		List<Timex3> linearDates = new ArrayList<Timex3>();
@@ -287,7 +315,7 @@ public class FullSpecifier {
 		////////////////////////////////////////
 		// IS THERE A DOCUMENT CREATION TIME? //
 		////////////////////////////////////////
-		TimexCalendar dct = null;
+		TimexValue dct = null;
 	
 		//////////////////////////////////////////////
 		// INFORMATION ABOUT DOCUMENT CREATION TIME //
@@ -299,14 +327,15 @@ public class FullSpecifier {
 			if (dctValue.matches("\\d\\d\\d\\d\\d\\d\\d\\d")){
 				dctValue = dctValue.substring(0, 4) + '-' + dctValue.substring(4, 6) + '-' + dctValue.substring(6, 8);
 			}
-			dct = new TimexCalendar(dctValue, northernSeasons);
+			dct = TimexValue.parse(dctValue, northernSeasons);
 		}
 		else{
 			logger.log(Level.FINE, "No DCT available...");
 		}
 		boolean useDct = typeToProcess.equals("news") && (dct != null);
 	
-		List<TimexCalendar> previousDates = new LinkedList<TimexCalendar>();
+		List<TimexValue> previousDates = new LinkedList<TimexValue>();
+		StringBuilder valueBuffer = new StringBuilder(); // reused for the resolved values
 		FSIterator sentenceIter = jcas.getAnnotationIndex(Sentence.type).iterator();
 		
 		//////////////////////////////////////////////
@@ -323,14 +352,15 @@ public class FullSpecifier {
 			String valueNew = value_i;
 			try {
 				if (value_i.startsWith("UNDEF")) {
-					int tense = getLastTense(t_i, getCurrentSentence(sentenceIter, t_i), jcas);
+					int tense = getLastTense(t_i, getCurrentSentence(sentenceIter, t_i), tokens);
 					logger.log(Level.FINE, "\"" + t_i.getCoveredText() + "\" - " + value_i);
-					TimexCalendar cal_i = processUndef(previousDates, dct, useDct, tense, value_i);
+					TimexValue cal_i = processUndef(previousDates, dct, useDct, tense, value_i, unsetTimex);
 					previousDates.add(0, cal_i);
-					valueNew = cal_i.toString();
+					valueBuffer.setLength(0);
+					valueNew = cal_i.appendTo(valueBuffer).toString();
 				}
 				else if (value_i.matches("^\\d\\d\\d\\d.*")) {
-					previousDates.add(0, new TimexCalendar(value_i, northernSeasons));
+					previousDates.add(0, TimexValue.parse(value_i, northernSeasons));
 				}
 			} catch (RuntimeException e) {
 				logger.log(Level.WARNING, "Error while processing: " + value_i);
@@ -364,17 +394,18 @@ public class FullSpecifier {
 		return null;
 	}
 
-	private TimexCalendar processUndef(Collection<TimexCalendar> previousDates, TimexCalendar dct, boolean useDct, int tense, String value_i) {
+	private TimexValue processUndef(Collection<TimexValue> previousDates, TimexValue dct, boolean useDct, int tense, String value_i,
+			TimexValue unsetTimex) {
 		
 		// Parse the different forms of UNDEF strings
-		UndefValues undef = new UndefValues(value_i);
+		UndefValues undef = new UndefValues(value_i, unsetTimex);
 		logger.log(Level.FINE, value_i + " " + undef + " tense=" + tense + " dct=" + dct);
 
-		TimexCalendar thisDate = undef.calendar;
+		TimexValue thisDate = undef.calendar;
 		int field = undef.field;
 		
 		// Find a reference time: DCT or previous specified (or resolved) date
-		TimexCalendar refDate;
+		TimexValue refDate;
 		if (undef.canUseDct() && useDct) {
 			refDate = dct;
 		}
@@ -398,10 +429,10 @@ public class FullSpecifier {
 			}
 			if (refDate != null) {
 				// Set value offset from reference point
-				thisDate.set(field, refDate.get(field) + undef.diff);
+				thisDate = thisDate.set(field, refDate.get(field) + undef.diff);
 			}
 			else if (field == CENTURY && !thisDate.has(CENTURY)) {
-				thisDate.set(CENTURY, 19);
+				thisDate = thisDate.set(CENTURY, 19);
 			}
 			return thisDate;
 		}
@@ -410,13 +441,12 @@ public class FullSpecifier {
 			// e.g. "a year later" => adopt the level of detail of the reference date
 			assert field == YEAR;
 			if (refDate != null) {
-				thisDate = (TimexCalendar) refDate.clone();
-				thisDate.add(YEAR, undef.diff);
+				thisDate = refDate.add(YEAR, undef.diff);
 			}
 			return thisDate;
 		}
 		
-		TimexCalendar updateFrom;
+		TimexValue updateFrom;
 		if (undef.byValue) {
 			// Named season, month or day of week
 			if (undef.withRespectTo == UndefValues.AUTHOR_TIME) {
@@ -439,16 +469,16 @@ public class FullSpecifier {
 		}
 		
 		if (updateFrom != null) {
-			thisDate.update(updateFrom, field);
+			thisDate = thisDate.update(updateFrom, field);
 		}
 		if (field == CENTURY || field == DECADE) {
-			thisDate.setLowestField(YEAR);
+			thisDate = thisDate.withLowestField(YEAR);
 		}
 		return thisDate;
 	}
 
-	private TimexCalendar findHavingField(Collection<TimexCalendar> list, int field) {
-		for (TimexCalendar cal : list) {
+	private TimexValue findHavingField(Collection<TimexValue> list, int field) {
+		for (TimexValue cal : list) {
 			if (cal.has(field)) {
 				return cal;
 			}
@@ -457,12 +487,12 @@ public class FullSpecifier {
 	}
 	
 
-	private TimexCalendar calculateByValue(TimexCalendar ref, int field,
+	private TimexValue calculateByValue(TimexValue ref, int field,
 			int direction, int newValue) {
 		if (ref == null) {
 			return null;
 		}
-		TimexCalendar res = (TimexCalendar) ref.clone();
+		TimexValue res = ref;
 		int refValue = ref.get(field);
 		
 		if (field == DAY_OF_WEEK) {
@@ -486,12 +516,12 @@ public class FullSpecifier {
 					diff = diff + 7;
 				}
 			}
-			res.add(DATE, diff);
+			res = res.add(DATE, diff);
 		}
 		else if (field == MONTH || field == SEASON) {
-			res.set(field, newValue);
+			res = res.set(field, newValue);
 			if (direction != 0 && refValue * direction >= newValue * direction) {
-				res.add(YEAR, direction);
+				res = res.add(YEAR, direction);
 			}
 		}
 		else {
@@ -500,7 +530,7 @@ public class FullSpecifier {
 		return res;
 	}
 	
-	private TimexCalendar calculateUngroundedDayByValue(TimexCalendar ref,
+	private TimexValue calculateUngroundedDayByValue(TimexValue ref,
 			int tense, int newValue, boolean useDct) {
 		
 		if (ref == null) {
@@ -525,12 +555,10 @@ public class FullSpecifier {
 			}
 		}
 		
-		TimexCalendar res = (TimexCalendar) ref.clone();
-		res.add(DATE, diff);
-		return res;
+		return ref.add(DATE, diff);
 	}
 
-	private TimexCalendar calculateOffsetDate(TimexCalendar ref, int field, int diff) {
+	private TimexValue calculateOffsetDate(TimexValue ref, int field, int diff) {
 		
 		// TODO: make sure diff == 0 is handled quickly
 	
@@ -538,9 +566,7 @@ public class FullSpecifier {
 			return null;
 		}
 		
-		TimexCalendar res = (TimexCalendar) ref.clone();
-		res.add(field, diff);
-		return res;
+		return ref.add(field, diff);
 	}
 	
 	/**
@@ -550,42 +576,54 @@ public class FullSpecifier {
 	 */
 	private class TenseTokenIterator implements Iterator<Token> {
 		boolean backwards = true;
-		FSIterator backwardIter;
-		FSIterator forwardIter;
+		TokenIndex tokens;
+		// The sentence's tokens are first to end (exclusive)
+		int first;
+		int end;
+		int backwardPos;
+		int forwardPos;
 		
-		public TenseTokenIterator(Timex3 timex, Sentence sent, JCas jcas) {
-			backwardIter = jcas.getAnnotationIndex(Token.type).subiterator(sent);
-			while (backwardIter.isValid() && ((Token) backwardIter.get()).getBegin() < timex.getBegin()) {
-				backwardIter.moveToNext();
-			}
-			if (backwardIter.isValid()) {
-				backwardIter.moveToPrevious();
+		public TenseTokenIterator(Timex3 timex, Sentence sent, TokenIndex tokens) {
+			this.tokens = tokens;
+			first = tokens.firstAtOrAfter(sent.getBegin());
+			end = tokens.endOfSpan(first, sent.getEnd());
+			backwardPos = Math.max(first, Math.min(end, tokens.firstAtOrAfter(timex.getBegin())));
+			if (backwardPos < end) {
+				backwardPos--;
 			}
 			else {
-				backwardIter.moveToLast();
+				backwardPos = end - 1;
 			}
-			forwardIter = backwardIter.copy();
-			while (forwardIter.isValid() && ((Token) forwardIter.get()).getEnd() < timex.getEnd()) {
-				forwardIter.moveToNext();
+			forwardPos = backwardPos;
+			if (backwardValid()) {
+				while (forwardValid() && tokens.getEnd(forwardPos) < timex.getEnd()) {
+					forwardPos++;
+				}
 			}
 		}
 		
+		boolean backwardValid() {
+			return backwardPos >= first;
+		}
+		
+		boolean forwardValid() {
+			return forwardPos >= first && forwardPos < end;
+		}
+		
 		public boolean hasNext() {
-			return backwardIter.isValid() || forwardIter.isValid();
+			return backwardValid() || forwardValid();
 		}
 		
 		public Token next() {
 			Token res;
 			if (backwards) {
-				res = (Token) backwardIter.get();
-				backwardIter.moveToPrevious();
-				if (!backwardIter.isValid()) {
+				res = tokens.getToken(backwardPos--);
+				if (!backwardValid()) {
 					// Past first sentence token; proceed to scan from after timex
 					backwards = false;
 				}
 			} else {
-				res = (Token) forwardIter.get();
-				forwardIter.moveToNext();
+				res = tokens.getToken(forwardPos++);
 			}
 			return res;
 		}
@@ -601,23 +639,21 @@ public class FullSpecifier {
 	 */
 	private class ClosestTokenIterator extends TenseTokenIterator {
 		
-		public ClosestTokenIterator(Timex3 timex, Sentence sent, JCas jcas) {
-			super(timex, sent, jcas);
+		public ClosestTokenIterator(Timex3 timex, Sentence sent, TokenIndex tokens) {
+			super(timex, sent, tokens);
 		}
 		
 		public Token next() {
 			Token res;
 			if (backwards) {
-				res = (Token) backwardIter.get();
-				backwardIter.moveToPrevious();
-				if (forwardIter.isValid()) {
+				res = tokens.getToken(backwardPos--);
+				if (forwardValid()) {
 					backwards = false;
 				}
 			}
 			else {
-				res = (Token) forwardIter.get();
-				forwardIter.moveToNext();
-				if (backwardIter.isValid()) {
+				res = tokens.getToken(forwardPos++);
+				if (backwardValid()) {
 					backwards = true;
 				}
 			}
@@ -658,15 +694,26 @@ public class FullSpecifier {
 	 * @return
 	 */
 	public int getLastTense(Timex3 timex, Sentence sent, JCas jcas) {
+		return getLastTense(timex, sent, new TokenIndex(jcas, sent));
+	}
+
+	/**
+	 * Get the last tense used in the sentence
+	 *
+	 * @param timex
+	 * @param tokens an index including the tokens of sent
+	 * @return
+	 */
+	public int getLastTense(Timex3 timex, Sentence sent, TokenIndex tokens) {
 		
-		int lastTense = getTense(new TenseTokenIterator(timex, sent, jcas));
+		int lastTense = getTense(new TenseTokenIterator(timex, sent, tokens));
 		
 		// check for double POS Constraints (not included in the rule language, yet) TODO
 		// VHZ VNN and VHZ VNN and VHP VNN and VBP VVN
 		String prevPos = "";
 		int longTense = UNKNOWN_TENSE;
 		if (lastTense == PRESENT_FUTURE_TENSE){
-			Iterator<Token> tokenIter = new TenseTokenIterator(timex, sent, jcas);
+			Iterator<Token> tokenIter = new TenseTokenIterator(timex, sent, tokens);
 			while (tokenIter.hasNext()) {
 				Token token = tokenIter.next();
 				if ((prevPos.equals("VHZ")) || (prevPos.equals("VBZ")) || (prevPos.equals("VHP")) || (prevPos.equals("VBP"))){
@@ -14,28 +14,24 @@
 
 package de.unihd.dbs.uima.annotator.heideltime;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.BitSet;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.uima.UIMAFramework;
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_component.JCasAnnotator_ImplBase;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.cas.FSIterator;
-import org.apache.uima.cas.text.AnnotationIndex;
 import org.apache.uima.jcas.JCas;
-import org.apache.uima.jcas.tcas.Annotation;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.util.Level;
 import org.apache.uima.util.Logger;
@@ -45,7 +41,6 @@ import org.cleartk.token.type.Sentence;
 import org.uimafit.factory.AnalysisEngineFactory;
 import org.uimafit.factory.TypeSystemDescriptionFactory;
 import org.uimafit.util.JCasUtil;
-import de.unihd.dbs.uima.annotator.heideltime.IdGenerator;
 import de.unihd.dbs.uima.annotator.heideltime.TimexRuleMatcher;
 import de.unihd.dbs.uima.types.heideltime.Timex3;
 
@@ -63,22 +58,6 @@ public class HeidelTime extends JCasAnnotator_ImplBase {
 	int timex_counter        = 0;
 	int timex_counter_global = 0;
 
-	// COUNTER FOR TIMEX IDS
-	class TimexIdGenerator implements IdGenerator {
-		int counter = 0;
-		public String next() {
-			return "t" + counter++;
-		}
-	}
-	IdGenerator idGenerator = new TimexIdGenerator();
-
-	// PATTERNS TO READ RESOURCES "RULES" AND "NORMALIZATION"
-	Pattern paReadNormalizations = Pattern.compile("\"(.*?)\",\"(.*?)\"");
-
-	// STORE PATTERNS AND NORMALIZATIONS
-	HashMap<String, HashMap<String,String>> hmAllNormalization = new HashMap<String, HashMap<String,String>>();
-	TreeMap<String, String> hmAllRePattern                     = new TreeMap<String, String>();
-
 	// GLOBAL ACCESS TO SOME NORMALIZATION MAPPINGS (set internally)
 	HashMap<String, String> normDayInWeek        = new HashMap<String, String>();
 	HashMap<String, String> normNumber           = new HashMap<String, String>();
@@ -86,11 +65,16 @@ public class HeidelTime extends JCasAnnotator_ImplBase {
 	HashMap<String, String> normMonthInSeason    = new HashMap<String, String>();
 	HashMap<String, String> normMonthInQuarter   = new HashMap<String, String>();
 
+	// RESOURCES AND RULES, SHARED WITH OTHER INSTANCES
+	RuleModel model;
 	TimexRuleMatcher rmDate;
 	TimexRuleMatcher rmTime;
 	TimexRuleMatcher rmDuration;
 	TimexRuleMatcher rmSet;
 	FullSpecifier fullSpecifier;
+	// THE TIME OF INITIALIZATION, FROM WHICH UNSPECIFIED FIELDS ARE TAKEN;
+	// NOT SHARED, SO THAT INSTANCES CREATED LATER DO NOT USE A STALE TIME
+	TimexValue unsetTimex;
 
 	// INPUT PARAMETER HANDLING WITH UIMA
 	String PARAM_LANGUAGE         = "Language_english_german";
@@ -108,6 +92,21 @@ public class HeidelTime extends JCasAnnotator_ImplBase {
 	Boolean find_durations = true;
 	Boolean find_sets      = true;
 
+	// INPUT PARAMETER HANDLING WITH UIMA (optional: how rules are matched)
+	String PARAM_RULE_AUTOMATON   = "Rule_automaton";
+	String PARAM_MATCHING_THREADS = "Matching_threads";
+	String PARAM_RULE_STATISTICS  = "Rule_statistics";
+	String PARAM_MATCH_STEP_BUDGET = "Match_step_budget";
+	String PARAM_MATCH_WINDOW_SIZE = "Match_window_size";
+	Boolean use_rule_automaton    = false;
+	Integer matching_threads      = 1;
+	Boolean collect_statistics    = false;
+	Integer match_step_budget     = 0; // per rule and sentence; 0 for no limit
+	Integer match_window_size     = 0; // 0 to match sentences whole
+	ForkJoinPool matchingPool; // null unless matching sentences in parallel
+	RuleStatistics statistics; // null unless collecting rule statistics
+	MatchOptions matchOptions;
+
 	// FOR DEBUGGING PURPOSES (IF FALSE)
 	Boolean deleteOverlapped = true;
 	
@@ -134,38 +133,70 @@ public class HeidelTime extends JCasAnnotator_ImplBase {
 		//////////////////////////////////
 		// GET CONFIGURATION PARAMETERS //
 		//////////////////////////////////
-//		language       = (String)  aContext.getConfigParameterValue(PARAM_LANGUAGE);
-//		typeToProcess  = (String)  aContext.getConfigParameterValue(PARAM_TYPE_TO_PROCESS);
-//		find_dates     = (Boolean) aContext.getConfigParameterValue(PARAM_DATE);
-//		find_times     = (Boolean) aContext.getConfigParameterValue(PARAM_TIME);
-//		find_durations = (Boolean) aContext.getConfigParameterValue(PARAM_DURATION);
-//		find_sets      = (Boolean) aContext.getConfigParameterValue(PARAM_SET);
-	
-		////////////////////////////////////////////////////////////
-		// READ NORMALIZATION RESOURCES FROM FILES AND STORE THEM //
-		////////////////////////////////////////////////////////////
-		HashMap<String, String> hmResourcesNormalization = readResourcesFromDirectory("normalization");
-		for (String which : hmResourcesNormalization.keySet()){
-			hmAllNormalization.put(which, new HashMap<String, String>());
-		}
-		readNormalizationResources(hmResourcesNormalization);
+		if (aContext.getConfigParameterValue(PARAM_LANGUAGE) != null) {
+			language = (String) aContext.getConfigParameterValue(PARAM_LANGUAGE);
+		}
+		if (aContext.getConfigParameterValue(PARAM_TYPE_TO_PROCESS) != null) {
+			typeToProcess = (String) aContext.getConfigParameterValue(PARAM_TYPE_TO_PROCESS);
+		}
+		if (aContext.getConfigParameterValue(PARAM_DATE) != null) {
+			find_dates = (Boolean) aContext.getConfigParameterValue(PARAM_DATE);
+		}
+		if (aContext.getConfigParameterValue(PARAM_TIME) != null) {
+			find_times = (Boolean) aContext.getConfigParameterValue(PARAM_TIME);
+		}
+		if (aContext.getConfigParameterValue(PARAM_DURATION) != null) {
+			find_durations = (Boolean) aContext.getConfigParameterValue(PARAM_DURATION);
+		}
+		if (aContext.getConfigParameterValue(PARAM_SET) != null) {
+			find_sets = (Boolean) aContext.getConfigParameterValue(PARAM_SET);
+		}
+		if (aContext.getConfigParameterValue(PARAM_RULE_AUTOMATON) != null) {
+			use_rule_automaton = (Boolean) aContext.getConfigParameterValue(PARAM_RULE_AUTOMATON);
+		}
+		if (aContext.getConfigParameterValue(PARAM_MATCHING_THREADS) != null) {
+			matching_threads = (Integer) aContext.getConfigParameterValue(PARAM_MATCHING_THREADS);
+		}
+		if (aContext.getConfigParameterValue(PARAM_RULE_STATISTICS) != null) {
+			collect_statistics = (Boolean) aContext.getConfigParameterValue(PARAM_RULE_STATISTICS);
+		}
+		if (aContext.getConfigParameterValue(PARAM_MATCH_STEP_BUDGET) != null) {
+			match_step_budget = (Integer) aContext.getConfigParameterValue(PARAM_MATCH_STEP_BUDGET);
+		}
+		if (aContext.getConfigParameterValue(PARAM_MATCH_WINDOW_SIZE) != null) {
+			match_window_size = (Integer) aContext.getConfigParameterValue(PARAM_MATCH_WINDOW_SIZE);
+		}
+		if (matching_threads > 1) {
+			matchingPool = new ForkJoinPool(matching_threads);
+		}
+		if (collect_statistics) {
+			statistics = new RuleStatistics();
+		}
+		matchOptions = new MatchOptions(statistics, match_step_budget, match_window_size);
 	
-		//////////////////////////////////////////////////////
-		// READ PATTERN RESOURCES FROM FILES AND STORE THEM //
-		//////////////////////////////////////////////////////
-		HashMap<String, String> hmResourcesRePattern = readResourcesFromDirectory("repattern");
-		for (String which : hmResourcesRePattern.keySet()){
-			hmAllRePattern.put(which, "");
-		}
-		readRePatternResources(hmResourcesRePattern);
-
-		///////////////////////////////////////////////////
-		// READ RULE RESOURCES FROM FILES AND STORE THEM //
-		///////////////////////////////////////////////////
-		HashMap<String, String> hmResourcesRules = readResourcesFromDirectory("rules");
-		readRules(hmResourcesRules);
-		
-		fullSpecifier = new FullSpecifier(hmAllRePattern);
+		////////////////////////////////////////////////////////////////////
+		// GET RESOURCES AND RULES (OF THE TYPES TO BE EXTRACTED ONLY),   //
+		// READING THEM FROM FILES IF NEEDED                              //
+		////////////////////////////////////////////////////////////////////
+		model = RuleModel.get(language, use_rule_automaton);
+		try {
+			if (find_dates) {
+				rmDate = model.getDateMatcher();
+			}
+			if (find_times) {
+				rmTime = model.getTimeMatcher();
+			}
+			if (find_durations) {
+				rmDuration = model.getDurationMatcher();
+			}
+			if (find_sets) {
+				rmSet = model.getSetMatcher();
+			}
+		} catch (IllegalStateException e) {
+			throw new ResourceInitializationException(e);
+		}
+		fullSpecifier = model.getFullSpecifier();
+		unsetTimex = fullSpecifier.now();
 	
 		/////////////////////////////
 		// PRINT WHAT WILL BE DONE //
@@ -184,34 +215,6 @@ public class HeidelTime extends JCasAnnotator_ImplBase {
 		}
 	}
 
-	/**
-	 * Reads resource files of the type resourceType from the "used_resources.txt" file and returns a HashMap
-	 * containing information to access these resources.
-	 * @param resourceType
-	 * @return
-	 */
-	public HashMap<String, String> readResourcesFromDirectory(String resourceType){
-
-		HashMap<String, String> hmResources = new HashMap<String, String>();
-	
-		BufferedReader br = new BufferedReader(new InputStreamReader (this.getClass().getClassLoader().getResourceAsStream("used_resources.txt")));
-		try {
-			for ( String line; (line=br.readLine()) != null; ){
-
-				Pattern paResource = Pattern.compile("\\./"+language+"/"+resourceType+"/resources_"+resourceType+"_"+"(.*?)\\.txt");
-				for (MatchResult ro : findMatches(paResource, line)){
-					String foundResource  = ro.group(1);
-					String pathToResource = language+"/"+resourceType+"/resources_"+resourceType+"_"+foundResource+".txt";
-					hmResources.put(foundResource, pathToResource);
-				}
-			}
-		} catch (IOException e) {
-			// Auto-generated catch block
-			e.printStackTrace();
-		}
-		return hmResources;
-	}
-
 	/**
 	 * Find all the matches of a pattern in a charSequence and return the
 	 * results as list.
@@ -222,148 +225,30 @@ public class HeidelTime extends JCasAnnotator_ImplBase {
 	 */
 	public static Iterable<MatchResult> findMatches(Pattern pattern,
 			CharSequence s) {
-		List<MatchResult> results = new ArrayList<MatchResult>();
-
-		for (Matcher m = pattern.matcher(s); m.find();)
-			results.add(m.toMatchResult());
-
-		return results;
-	}
-
+		final List<MatchResult> results = new ArrayList<MatchResult>();
 
-	/**
-	 * READ THE RULES FROM THE FILES. The files have to be defined in the HashMap hmResourcesRules.
-	 * @param hmResourcesRules
-	 */
-	public void readRules(HashMap<String, String> hmResourcesRules){
-		try {
-			for (String resource : hmResourcesRules.keySet()) {
-				if (!resource.endsWith("rules")) {
-					logger.log(Level.WARNING, "Not adding resource unless it ends 'rules': " + resource);
-					continue;
-				}
-				logger.log(Level.INFO, "Adding rule resource: "+resource);
-				// timexType is prefix before "rules"
-				String timexType = resource.substring(0, resource.length() - 5).toUpperCase();
-				TimexRuleMatcher rm = new TimexRuleMatcher(timexType, new InputStreamReader (
-						this.getClass().getClassLoader().getResourceAsStream(hmResourcesRules.get(resource))),
-						hmAllRePattern, hmAllNormalization);
-				if ("DATE".equals(timexType)) {
-					rmDate = rm;
-				} else if ("TIME".equals(timexType)) {
-					rmTime = rm;
-				} else if ("DURATION".equals(timexType)) {
-					rmDuration = rm;
-				} else if ("SET".equals(timexType)) {
-					rmSet = rm;
-				}
-			
+		findMatches(pattern.matcher(s), new MatchHandler() {
+			public void handle(MatchResult r) {
+				// r is the matcher itself, whose state changes with the next match
+				results.add(((Matcher) r).toMatchResult());
 			}
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-	}
+		});
 
-	/**
-	 * READ THE REPATTERN FROM THE FILES. The files have to be defined in the HashMap hmResourcesRePattern.
-	 * @param hmResourcesRePattern
-	 */
-	public void readRePatternResources(HashMap<String, String> hmResourcesRePattern){
-	
-		//////////////////////////////////////
-		// READ REGULAR EXPRESSION PATTERNS //
-		//////////////////////////////////////
-		try {
-			for (String resource : hmResourcesRePattern.keySet()) {
-				logger.log(Level.INFO, "Adding pattern resource: "+resource);
-				// create a buffered reader for every repattern resource file
-				BufferedReader in = new BufferedReader(new InputStreamReader
-						(this.getClass().getClassLoader().getResourceAsStream(hmResourcesRePattern.get(resource)),"UTF-8"));
-				for ( String line; (line=in.readLine()) != null; ){
-					if (!(line.startsWith("//"))){
-						boolean correctLine = false;
-						if (!(line.equals(""))){
-							correctLine = true;
-							for (String which : hmAllRePattern.keySet()){
-								if (resource.equals(which)){
-									String devPattern = hmAllRePattern.get(which);
-									devPattern = devPattern + "|" + line;
-									hmAllRePattern.put(which, devPattern);
-								}
-							}
-						}
-						if ((correctLine == false) && (!(line.matches("")))){
-							logger.log(Level.WARNING, "Cannot read one of the lines of pattern resource "+resource + "\nLine: "+line);
-						}
-					}
-				}
-			}
-			////////////////////////////
-			// FINALIZE THE REPATTERN //
-			////////////////////////////
-			for (String which : hmAllRePattern.keySet()){
-				finalizeRePattern(which, hmAllRePattern.get(which));
-			}
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		return results;
 	}
 
 	/**
-	 * Pattern containing regular expression is finalized, i.e., created correctly and added to hmAllRePattern.
-	 * @param name
-	 * @param rePattern
+	 * Pass each remaining match of a matcher to the handler, without copying
+	 * the match state.
+	 *
+	 * @param m
+	 * @param handler
 	 */
-	public void finalizeRePattern(String name, String rePattern){
-		// create correct regular expression
-		rePattern = rePattern.replaceFirst("\\|", "");
-		rePattern = "(" + rePattern + ")";
-		// add rePattern to hmAllRePattern
-		hmAllRePattern.put(name, rePattern.replaceAll("\\\\", "\\\\\\\\"));
+	public static void findMatches(Matcher m, MatchHandler handler) {
+		while (m.find())
+			handler.handle(m);
 	}
 
-	/**
-	 * Read the resources (of any language) from resource files and
-	 * fill the HashMaps used for normalization tasks.
-	 * @param hmResourcesNormalization
-	 */
-	public void readNormalizationResources(HashMap<String, String> hmResourcesNormalization){
-		try {
-			for (String resource : hmResourcesNormalization.keySet()) {
-				logger.log(Level.INFO, "Adding normalization resource: "+resource);
-				// create a buffered reader for every normalization resource file
-				BufferedReader in = new BufferedReader(new InputStreamReader
-						(this.getClass().getClassLoader().getResourceAsStream(hmResourcesNormalization.get(resource)),"UTF-8"));
-				for ( String line; (line=in.readLine()) != null; ){
-					if (!(line.startsWith("//"))){
-						boolean correctLine = false;
-						// check each line for the normalization format (defined in paReadNormalizations)
-						for (MatchResult r : findMatches(paReadNormalizations, line)){
-							correctLine = true;
-							String resource_word   = r.group(1);
-							String normalized_word = r.group(2);
-							for (String which : hmAllNormalization.keySet()){
-								if (resource.equals(which)){
-									hmAllNormalization.get(which).put(resource_word,normalized_word);
-								}
-							}
-							if ((correctLine == false) && (!(line.matches("")))){
-								logger.log(Level.WARNING, "Cannot read one of the lines of normalization resource "+resource + "\nLine: "+line);
-							}
-						}
-					}
-				}
-			}
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-	}
 
 	/**
 	 * @see JCasAnnotator_ImplBase#process(JCas)
@@ -375,203 +260,274 @@ public class HeidelTime extends JCasAnnotator_ImplBase {
 		////////////////////////////////////////////
 		// CHECK SENTENCE BY SENTENCE FOR TIMEXES //
 		////////////////////////////////////////////
+		// tokens and their parts of speech are looked up by offset
+		TokenIndex tokens = new TokenIndex(jcas);
 		FSIterator sentIter = jcas.getAnnotationIndex(Sentence.type).iterator();
-		while (sentIter.hasNext()) {
-			Sentence s = (Sentence) sentIter.next();
-			if (find_dates) {
-				timex_counter += rmDate.findTimexes(s, jcas, idGenerator);
-			}
-			if (find_times) {
-				timex_counter += rmTime.findTimexes(s, jcas, idGenerator);
-			}
-			if (find_durations) {
-				timex_counter += rmDuration.findTimexes(s, jcas, idGenerator);
-			}
-			if (find_sets) {
-				timex_counter += rmSet.findTimexes(s, jcas, idGenerator);
+		// the candidates found by each matcher in each sentence, in order
+		List<TimexRuleMatcher> batchMatchers = new ArrayList<TimexRuleMatcher>();
+		List<List<TimexCandidate>> batches = new ArrayList<List<TimexCandidate>>();
+		if (matchingPool != null) {
+			findCandidatesInParallel(sentIter, tokens, batchMatchers, batches);
+		}
+		else {
+			List<TimexRuleMatcher> matchers = getMatchers();
+			while (sentIter.hasNext()) {
+				Sentence s = (Sentence) sentIter.next();
+				// the sentence text is copied once and shared by all rule matchers
+				String sentenceText = s.getCoveredText();
+				for (TimexRuleMatcher rm : matchers) {
+					batchMatchers.add(rm);
+					batches.add(rm.findCandidates(s, sentenceText, tokens, matchOptions));
+				}
 			}
 		}
 
 		/*
-		 * get longest Timex expressions only (if needed)
+		 * get longest Timex expressions only (if needed), and drop those
+		 * marked invalid, before any is added to the CAS
 		 */
-		if (deleteOverlapped == true) {
-			// could be modified to: get longest TIMEX expressions of one type, only ???
-			deleteOverlappedTimexes(jcas);
-		}
+		timex_counter += addCandidates(batchMatchers, batches, jcas);
 
 		/*
 		 * specify ambiguous values, e.g.: specific year for date values of
 		 * format UNDEF-year-01-01; specific month for values of format UNDEF-last-month
 		 */
-		fullSpecifier.process(jcas, typeToProcess);
-	
-		removeInvalids(jcas);
+		fullSpecifier.process(jcas, typeToProcess, tokens, unsetTimex);
 
 		timex_counter_global = timex_counter_global + timex_counter;
 		logger.log(Level.FINE, "Number of Timexes added to CAS: "+timex_counter + "(global: "+timex_counter_global+")");
 		saveClearTkFormat(jcas);
 	}
 
-    private void saveClearTkFormat(JCas jcas) {
-            for (Timex3 heidelTime : JCasUtil.select(jcas, Timex3.class)) {
-                    Time clearTime = new Time(jcas);
-                    clearTime.setBegin(heidelTime.getBegin());
-                    clearTime.setEnd(heidelTime.getEnd());
-                    clearTime.setFreq(heidelTime.getTimexFreq());
-                    clearTime.setMod(heidelTime.getTimexMod());
-                    clearTime.setQuant(heidelTime.getTimexQuant());
-                    clearTime.setTimeType(heidelTime.getTimexType());
-                    clearTime.setValue(heidelTime.getTimexValue());
-                    clearTime.setId(heidelTime.getTimexId());
-                    // FunctionInDocument, TemporalFunction, BeginPoint, EndPoint unset!
-                    clearTime.addToIndexes();
-            }
-    }
-
 	/**
-	 * Postprocessing: Remove invalid timex expressions. These are already
-	 * marked as invalid: timexValue().equals("REMOVE")
-	 *
-	 * @param jcas
+	 * @return the rule matchers of the timex types to be found, in the order
+	 *         in which their timexes are added
 	 */
-	public void removeInvalids(JCas jcas) {
+	private List<TimexRuleMatcher> getMatchers() {
+		List<TimexRuleMatcher> matchers = new ArrayList<TimexRuleMatcher>();
+		if (find_dates) {
+			matchers.add(rmDate);
+		}
+		if (find_times) {
+			matchers.add(rmTime);
+		}
+		if (find_durations) {
+			matchers.add(rmDuration);
+		}
+		if (find_sets) {
+			matchers.add(rmSet);
+		}
+		return matchers;
+	}
 
-		/*
-		 * Iterate over timexes and add invalids to HashSet
-		 * (invalids cannot be removed directly since iterator is used)
-		 */
-		FSIterator iterTimex = jcas.getAnnotationIndex(Timex3.type).iterator();
-		HashSet<Timex3> hsTimexToRemove = new HashSet<Timex3>();
-		while (iterTimex.hasNext()) {
-			Timex3 timex = (Timex3) iterTimex.next();
-			if (timex.getTimexValue().equals("REMOVE")) {
-				hsTimexToRemove.add(timex);
+	/**
+	 * Matches all sentences with each of the rule matchers on matchingPool,
+	 * then appends the candidates found, and the matcher that found them, in
+	 * the same order as matching them sequentially would.
+	 */
+	private void findCandidatesInParallel(FSIterator sentIter, final TokenIndex tokens,
+			List<TimexRuleMatcher> batchMatchers, List<List<TimexCandidate>> batches) {
+		List<Callable<List<TimexCandidate>>> tasks = new ArrayList<Callable<List<TimexCandidate>>>();
+		List<TimexRuleMatcher> matchers = getMatchers();
+		while (sentIter.hasNext()) {
+			final Sentence s = (Sentence) sentIter.next();
+			final String sentenceText = s.getCoveredText();
+			for (final TimexRuleMatcher rm : matchers) {
+				tasks.add(new Callable<List<TimexCandidate>>() {
+					public List<TimexCandidate> call() {
+						return rm.findCandidates(s, sentenceText, tokens, matchOptions);
+					}
+				});
+				batchMatchers.add(rm);
 			}
 		}
 
-		removeTimexes(hsTimexToRemove, "REMOVING PHASE");
-	}
-	
-	private void removeTimexes(Collection<Timex3> toRemove, String logMessage) {
-		for (Timex3 timex3 : toRemove) {
-			timex3.removeFromIndexes();
-			timex_counter--;
-			logger.log(Level.FINE, timex3.getTimexId()+" " + logMessage + ": "+"found by:"+timex3.getFoundByRule()+" text:"+timex3.getCoveredText()+" value:"+timex3.getTimexValue());
+		List<Future<List<TimexCandidate>>> results = matchingPool.invokeAll(tasks);
+		try {
+			for (Future<List<TimexCandidate>> result : results) {
+				batches.add(result.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
 		}
 	}
-	
-	abstract class OverlappedAnnotationFinder {
-		AnnotationIndex index;
-		
-		public OverlappedAnnotationFinder(AnnotationIndex index) {
-			this.index = index;
-		}
-		
-		protected void process() {
-			FSIterator iter1 = index.iterator();
-			while (iter1.hasNext()) {
-				Annotation a1 = (Annotation) iter1.next();
-				int a1End = a1.getEnd();
-				
-				FSIterator iter2 = index.iterator(a1);
-
-				while (iter2.isValid() && a1End > ((Annotation) iter2.get()).getBegin()) {
-					Annotation a2 = (Annotation) iter2.get();
-					if (!a1.equals(a2)) {
-						handle(a1, a2);
+
+	/**
+	 * Adds timex annotations for the candidates found, in order, except for
+	 * those overlapped by another (if deleteOverlapped is set) and those with
+	 * the value REMOVE. Every candidate is numbered from 0 in the document,
+	 * and the number of a timex added is rendered as its id, so that ids are
+	 * as if all were added and the others then removed.
+	 * @param batchMatchers the matcher that found each batch of candidates
+	 * @return the number of timexes added
+	 */
+	int addCandidates(List<TimexRuleMatcher> batchMatchers, List<List<TimexCandidate>> batches, JCas jcas) {
+		BitSet removed = resolveOverlaps(batchMatchers, batches);
+
+		boolean logRemovals = logger.isLoggable(Level.FINE);
+		int nAdded = 0;
+		for (int b = 0; b < batches.size(); b++) {
+			TimexRuleMatcher rm = batchMatchers.get(b);
+			for (TimexCandidate c : batches.get(b)) {
+				if (removed.get(c.id)) {
+					if (logRemovals) {
+						logger.log(Level.FINE, c.getTimexId() + " REMOVE DUPLICATE: found by:" + c.foundByRule + " value:" + c.value);
 					}
-					iter2.moveToNext();
+					continue;
+				}
+				if (statistics != null) {
+					statistics.addSurvivor(c.foundByRule);
+				}
+				if (c.value.equals("REMOVE")) {
+					if (logRemovals) {
+						logger.log(Level.FINE, c.getTimexId() + " REMOVING PHASE: found by:" + c.foundByRule + " value:" + c.value);
+					}
+					continue;
 				}
+				rm.addTimexAnnotation(c.begin, c.end, c.sentence, c.value, c.quant, c.freq, c.mod,
+						c.getTimexId(), c.foundByRule, jcas);
+				nAdded++;
 			}
 		}
-		
-		/**
-		 * Handle an overlapping pair, where a1.getBegin() <= a2.getBegin(), and where equal, a1.getEnd() >= a2.getEnd(). 
-		 * @param a1
-		 * @param a2
-		 */
-		public abstract void handle(Annotation a1, Annotation a2);
+		return nAdded;
 	}
-	
-	class OverlappedAnnotationDeduplicator extends OverlappedAnnotationFinder {
-		Set<Timex3> toRemove;
-		
-		public OverlappedAnnotationDeduplicator(JCas jcas) {
-			super(jcas.getAnnotationIndex(Timex3.type));
-		}
-		
-		public Set<Timex3> findToRemove() {
-			toRemove = new HashSet<Timex3>();
-			process();
-			toRemove.remove(null);
-			return toRemove;
-		}
-
-		@Override
-		public void handle(Annotation a1, Annotation a2) {
-			if (toRemove.contains(a1) || toRemove.contains(a2)) {
-				return;
-			}
-			Timex3 res = selectForRemoval((Timex3) a1, (Timex3) a2);
-			toRemove.add(res);
-		}
-
-		private Timex3 selectForRemoval(Timex3 t1, Timex3 t2) {
-			if (t1.getEnd() > t2.getEnd() || (t1.getEnd() == t2.getEnd() && t1.getBegin() < t2.getBegin())) {
-				// t2 covered by t1
-				return t2;
-			}
-			else if (t1.getEnd() != t2.getEnd()) {
-				logger.log(Level.WARNING, "Overlap not handled between " + t1 + " and " + t2);
-				return null;
-				
-			}
 
-			// Handle identical spans
-			assert t1.getBegin() == t2.getBegin();
-			if (t1.getTimexType().equals("SET") || t2.getTimexType().equals("SET")) {
-				return selectLowestId(t1, t2);
-			}
-			
-			boolean t1Undef = t1.getTimexValue().startsWith("UNDEF");
-			boolean t2Undef = t2.getTimexValue().startsWith("UNDEF");
-			if (t1Undef && !t2Undef) {
-				return t1;
-			}
-			else if (t2Undef && !t1Undef) {
-				return t2;
-			}
-			
-			boolean t1Explicit = t1.getFoundByRule().endsWith("explicit");
-			boolean t2Explicit = t2.getFoundByRule().endsWith("explicit");
-			if (t1Explicit && !t2Explicit) {
-				return t2;
+	/**
+	 * Numbers the candidates found from 0, in order, and chooses those
+	 * overlapped by another (if deleteOverlapped is set), with the flags
+	 * their matchers give them.
+	 * @param batchMatchers the matcher that found each batch of candidates
+	 * @return the numbers of the candidates to remove
+	 */
+	BitSet resolveOverlaps(List<TimexRuleMatcher> batchMatchers, List<List<TimexCandidate>> batches) {
+		final List<TimexCandidate> all = new ArrayList<TimexCandidate>();
+		OverlapResolver resolver = new OverlapResolver() {
+			@Override
+			protected void unhandledOverlap(int i, int j) {
+				logger.log(Level.WARNING, "Overlap not handled between " + all.get(i) + " and " + all.get(j));
 			}
-			else if (t2Explicit && !t1Explicit) {
-				return t1;
+		};
+		for (int b = 0; b < batches.size(); b++) {
+			TimexRuleMatcher rm = batchMatchers.get(b);
+			for (TimexCandidate c : batches.get(b)) {
+				c.id = all.size();
+				all.add(c);
+				if (deleteOverlapped == true) {
+					resolver.add(c.begin, c.end, c.id, rm.getOverlapFlags(c));
+				}
 			}
-			
-			return selectLowestId(t1, t2);
 		}
-		
-		private Timex3 selectLowestId(Timex3 t1, Timex3 t2) {
-			if (Integer.parseInt(t1.getTimexId().substring(1)) < Integer.parseInt(t2.getTimexId().substring(1))) {
-				return t1;
+		// could be modified to: get longest TIMEX expressions of one type, only ???
+		return resolver.resolve();
+	}
+
+	/**
+	 * Postprocessing: Remove invalid timex expressions. These are already
+	 * marked as invalid: timexValue().equals("REMOVE")
+	 *
+	 * @param jcas
+	 * @deprecated process() drops candidates with the value REMOVE before
+	 *             any is added; this is only for timexes added otherwise
+	 */
+	@Deprecated
+	public void removeInvalids(JCas jcas) {
+		List<Timex3> toRemove = new ArrayList<Timex3>();
+		for (Timex3 timex : JCasUtil.select(jcas, Timex3.class)) {
+			if (timex.getTimexValue().equals("REMOVE")) {
+				toRemove.add(timex);
 			}
-			return t2;
 		}
+		removeTimexes(toRemove, "REMOVING PHASE");
 	}
-	
-	
 
 	/**
+	 * Removes timexes overlapped by another, as process() does for the
+	 * candidates it finds: a candidate is made of each timex, numbered by
+	 * its id, and an {@link OverlapResolver} chooses those to remove.
+	 *
 	 * @param jcas
+	 * @deprecated process() resolves overlaps before any timex is added;
+	 *             this is only for timexes added otherwise
 	 */
+	@Deprecated
 	public void deleteOverlappedTimexes(JCas jcas) {
-		removeTimexes(new OverlappedAnnotationDeduplicator(jcas).findToRemove(), "REMOVE DUPLICATE");
+		final List<TimexCandidate> candidates = new ArrayList<TimexCandidate>();
+		OverlapResolver resolver = new OverlapResolver() {
+			@Override
+			protected void unhandledOverlap(int i, int j) {
+				logger.log(Level.WARNING, "Overlap not handled between " + candidates.get(i) + " and " + candidates.get(j));
+			}
+		};
+		List<Timex3> timexes = new ArrayList<Timex3>(JCasUtil.select(jcas, Timex3.class));
+		for (Timex3 t : timexes) {
+			TimexCandidate c = new TimexCandidate(t.getBegin(), t.getEnd(), null, t.getTimexValue(),
+					t.getTimexQuant(), t.getTimexFreq(), t.getTimexMod(), t.getFoundByRule());
+			c.id = Integer.parseInt(t.getTimexId().substring(1));
+			candidates.add(c);
+			resolver.add(c.begin, c.end, c.id, TimexRuleMatcher.getOverlapFlags(t.getTimexType(), c.value));
+		}
+
+		BitSet removed = resolver.resolve();
+		List<Timex3> toRemove = new ArrayList<Timex3>(removed.cardinality());
+		for (int i = removed.nextSetBit(0); i >= 0; i = removed.nextSetBit(i + 1)) {
+			toRemove.add(timexes.get(i));
+		}
+		removeTimexes(toRemove, "REMOVE DUPLICATE");
+	}
+
+	private void removeTimexes(List<Timex3> toRemove, String logMessage) {
+		for (Timex3 timex3 : toRemove) {
+			timex3.removeFromIndexes();
+			timex_counter--;
+			logger.log(Level.FINE, timex3.getTimexId()+" " + logMessage + ": "+"found by:"+timex3.getFoundByRule()+" text:"+timex3.getCoveredText()+" value:"+timex3.getTimexValue());
+		}
 	}
 
+	/**
+	 * @return the time spent on and matches found by each rule so far, or
+	 *         null unless the Rule_statistics parameter is set
+	 */
+	public RuleStatistics getRuleStatistics() {
+		return statistics;
+	}
+
+	@Override
+	public void collectionProcessComplete() throws AnalysisEngineProcessException {
+		if (statistics != null) {
+			logger.log(Level.INFO, "Rule statistics:\n" + statistics);
+		}
+		super.collectionProcessComplete();
+	}
+
+	@Override
+	public void destroy() {
+		if (matchingPool != null) {
+			matchingPool.shutdown();
+		}
+		super.destroy();
+	}
+
+    private void saveClearTkFormat(JCas jcas) {
+            for (Timex3 heidelTime : JCasUtil.select(jcas, Timex3.class)) {
+                    Time clearTime = new Time(jcas);
+                    clearTime.setBegin(heidelTime.getBegin());
+                    clearTime.setEnd(heidelTime.getEnd());
+                    clearTime.setFreq(heidelTime.getTimexFreq());
+                    clearTime.setMod(heidelTime.getTimexMod());
+                    clearTime.setQuant(heidelTime.getTimexQuant());
+                    clearTime.setTimeType(heidelTime.getTimexType());
+                    clearTime.setValue(heidelTime.getTimexValue());
+                    clearTime.setId(heidelTime.getTimexId());
+                    // FunctionInDocument, TemporalFunction, BeginPoint, EndPoint unset!
+                    clearTime.addToIndexes();
+            }
+    }
 
 	// TODO outsource and include modification to be added to Timex RULES
 	public String getModification(String modString) {
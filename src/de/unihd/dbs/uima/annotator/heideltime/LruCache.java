@@ -0,0 +1,42 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A map of limited size which drops its least recently used entry to make
+ * room for a new one. It may be used from several threads at once.
+ */
+public class LruCache<K, V> {
+	final Map<K, V> map;
+
+	public LruCache(final int capacity) {
+		map = new LinkedHashMap<K, V>(capacity * 4 / 3 + 1, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * @return the value for key, or null if not cached
+	 */
+	public synchronized V get(K key) {
+		return map.get(key);
+	}
+
+	public synchronized void put(K key, V value) {
+		map.put(key, value);
+	}
+
+	public synchronized int size() {
+		return map.size();
+	}
+
+	public synchronized void clear() {
+		map.clear();
+	}
+}
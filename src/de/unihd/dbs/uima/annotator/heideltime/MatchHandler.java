@@ -0,0 +1,11 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+import java.util.regex.MatchResult;
+
+/**
+ * Receives each match found by {@link HeidelTime#findMatches(java.util.regex.Matcher, MatchHandler)}.
+ * The MatchResult is only valid until handle returns.
+ */
+public interface MatchHandler {
+	public void handle(MatchResult m);
+}
@@ -0,0 +1,40 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+/**
+ * How a {@link TimexRuleMatcher} applies its rules to a sentence, beyond
+ * what the rules themselves say.
+ */
+public class MatchOptions {
+
+	/** No statistics, no step budget and no windows */
+	public static final MatchOptions DEFAULT = new MatchOptions(null, 0, 0);
+
+	final RuleStatistics statistics;
+	final long stepBudget;
+	final int windowSize;
+
+	/**
+	 * @param statistics where to count the matching of each rule; may be null
+	 * @param stepBudget the number of steps each rule may take on a sentence
+	 *        (or window) before it is abandoned there, or 0 for no limit
+	 * @param windowSize the length of the overlapping windows in which longer
+	 *        sentences are matched, or 0 to match sentences whole
+	 */
+	public MatchOptions(RuleStatistics statistics, long stepBudget, int windowSize) {
+		this.statistics = statistics;
+		this.stepBudget = stepBudget;
+		this.windowSize = windowSize;
+	}
+
+	public RuleStatistics getStatistics() {
+		return statistics;
+	}
+
+	public long getStepBudget() {
+		return stepBudget;
+	}
+
+	public int getWindowSize() {
+		return windowSize;
+	}
+}
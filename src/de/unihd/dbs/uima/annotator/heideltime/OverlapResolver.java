@@ -0,0 +1,168 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Chooses which of a set of overlapping timexes to remove. Each timex is
+ * added as its span, its id number and some flags, and is referred to by
+ * the order in which it was added.
+ * <p>
+ * Of two timexes where one covers the other, the covered one is removed.
+ * Of two with the same span, a SET is decided by id alone; otherwise the one
+ * with an UNDEF value, or else the one not found by an explicit rule, or else
+ * the one with the lower id is removed. Partially overlapping timexes are
+ * left to {@link #unhandledOverlap(int, int)}. Pairs are considered in order
+ * of begin, then of descending end, then of addition, and no more pairs of a
+ * timex are considered once it is to be removed.
+ */
+public class OverlapResolver {
+	public static final int SET = 1;
+	public static final int UNDEF = 2;
+	public static final int EXPLICIT = 4;
+
+	int size = 0;
+	int[] begins = new int[16];
+	int[] ends = new int[16];
+	int[] ids = new int[16];
+	byte[] flags = new byte[16];
+
+	/**
+	 * @param flags any of {@link #SET}, {@link #UNDEF} and {@link #EXPLICIT}
+	 * @return the index of the timex
+	 */
+	public int add(int begin, int end, int id, int flags) {
+		if (size == begins.length) {
+			int capacity = size * 2;
+			begins = Arrays.copyOf(begins, capacity);
+			ends = Arrays.copyOf(ends, capacity);
+			ids = Arrays.copyOf(ids, capacity);
+			this.flags = Arrays.copyOf(this.flags, capacity);
+		}
+		begins[size] = begin;
+		ends[size] = end;
+		ids[size] = id;
+		this.flags[size] = (byte) flags;
+		return size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the indices of the timexes to remove
+	 */
+	public BitSet resolve() {
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		sort(order);
+
+		BitSet removed = new BitSet(size);
+		int groupStart = 0;
+		for (int p = 0; p < size; p++) {
+			int i = order[p];
+			if (p > 0 && !sameSpan(order[p - 1], i)) {
+				groupStart = p;
+			}
+			// the timexes overlapping i which start no earlier than it,
+			// including those with the same span added before it
+			for (int q = groupStart; q < size && !removed.get(i) && begins[order[q]] < ends[i]; q++) {
+				int j = order[q];
+				if (j == i || removed.get(j)) {
+					continue;
+				}
+				int res = selectForRemoval(i, j);
+				if (res >= 0) {
+					removed.set(res);
+				}
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Called for timexes i and j which overlap but neither covers the other.
+	 */
+	protected void unhandledOverlap(int i, int j) {
+	}
+
+	/**
+	 * @return which of i and j to remove, where i comes before j in order, or
+	 *         -1 to keep both
+	 */
+	private int selectForRemoval(int i, int j) {
+		if (ends[i] > ends[j] || (ends[i] == ends[j] && begins[i] < begins[j])) {
+			// j covered by i
+			return j;
+		} else if (ends[i] != ends[j]) {
+			unhandledOverlap(i, j);
+			return -1;
+		}
+
+		// identical spans
+		if (((flags[i] | flags[j]) & SET) != 0) {
+			return selectLowestId(i, j);
+		}
+		boolean iUndef = (flags[i] & UNDEF) != 0;
+		boolean jUndef = (flags[j] & UNDEF) != 0;
+		if (iUndef != jUndef) {
+			return iUndef ? i : j;
+		}
+		boolean iExplicit = (flags[i] & EXPLICIT) != 0;
+		boolean jExplicit = (flags[j] & EXPLICIT) != 0;
+		if (iExplicit != jExplicit) {
+			return iExplicit ? j : i;
+		}
+		return selectLowestId(i, j);
+	}
+
+	/**
+	 * @return whichever of i and j has the lower id
+	 */
+	private int selectLowestId(int i, int j) {
+		return ids[i] < ids[j] ? i : j;
+	}
+
+	private boolean sameSpan(int i, int j) {
+		return begins[i] == begins[j] && ends[i] == ends[j];
+	}
+
+	private int compare(int i, int j) {
+		if (begins[i] != begins[j]) {
+			return begins[i] < begins[j] ? -1 : 1;
+		}
+		if (ends[i] != ends[j]) {
+			return ends[i] > ends[j] ? -1 : 1;
+		}
+		return i < j ? -1 : (i > j ? 1 : 0);
+	}
+
+	/**
+	 * Sorts indices by {@link #compare(int, int)} with a merge sort, which
+	 * takes linear time when they are already in order, as timexes read
+	 * from the CAS index are.
+	 */
+	private void sort(int[] order) {
+		int[] buf = new int[order.length];
+		for (int width = 1; width < order.length; width *= 2) {
+			for (int lo = 0; lo < order.length - width; lo += 2 * width) {
+				int mid = lo + width;
+				int hi = Math.min(lo + 2 * width, order.length);
+				if (compare(order[mid - 1], order[mid]) <= 0) {
+					continue;
+				}
+				System.arraycopy(order, lo, buf, lo, hi - lo);
+				for (int k = lo, a = lo, b = mid; k < hi; k++) {
+					if (b >= hi || (a < mid && compare(buf[a], buf[b]) <= 0)) {
+						order[k] = buf[a++];
+					} else {
+						order[k] = buf[b++];
+					}
+				}
+			}
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package de.unihd.dbs.uima.annotator.heideltime;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
@@ -30,14 +31,114 @@ public class PartialCalendar extends Calendar {
 		}
 	}
 	
-	public static final List<Implicature> DEFAULT_IMPLICATURES = new ArrayList<Implicature>();
+	/**
+	 * An unmodifiable list of implicatures with their closure precomputed, so
+	 * that the fields implied by a mask are found by table lookup rather than
+	 * by applying the implicatures until nothing changes.
+	 * <p>
+	 * Only the fields appearing in some condition affect which implicatures
+	 * hold, so the closure is tabulated for each subset of those fields, the
+	 * subset being found from a mask one byte at a time. Where there are too
+	 * many such fields to tabulate, the implicatures are applied as before.
+	 */
+	public static final class Implicatures extends AbstractList<Implicature> {
+
+		// the most condition fields for which the closure is tabulated
+		private static final int MAX_TABLE_BITS = 16;
+
+		private final Implicature[] implicatures;
+		private final int conditionMask;
+		// for each byte of a mask, the index in closures of its condition fields
+		private final int[] byteIndices;
+		// the fields implied by each subset of the condition fields
+		private final int[] closures;
+
+		public Implicatures(Collection<Implicature> implicatures) {
+			this.implicatures = implicatures.toArray(new Implicature[implicatures.size()]);
+			int conditionMask = 0;
+			for (Implicature impl : this.implicatures) {
+				conditionMask |= impl.condition;
+			}
+			this.conditionMask = conditionMask;
+			int nBits = Integer.bitCount(conditionMask);
+			if (nBits > MAX_TABLE_BITS) {
+				byteIndices = null;
+				closures = null;
+				return;
+			}
+
+			byteIndices = new int[4 * 256];
+			int[] conditionFields = new int[nBits];
+			for (int field = 0, bit = 0; field < 32; field++) {
+				if ((conditionMask & (1 << field)) == 0) {
+					continue;
+				}
+				conditionFields[bit] = field;
+				for (int b = 0; b < 256; b++) {
+					if ((b & (1 << (field & 7))) != 0) {
+						byteIndices[(field >>> 3) * 256 + b] |= 1 << bit;
+					}
+				}
+				bit++;
+			}
+			closures = new int[1 << nBits];
+			for (int index = 0; index < closures.length; index++) {
+				int mask = 0;
+				for (int bit = 0; bit < nBits; bit++) {
+					if ((index & (1 << bit)) != 0) {
+						mask |= 1 << conditionFields[bit];
+					}
+				}
+				closures[index] = applyUntilFixed(mask);
+			}
+		}
+
+		/**
+		 * @return fieldMask with the fields implied by it
+		 */
+		public int implied(int fieldMask) {
+			if (closures == null) {
+				return applyUntilFixed(fieldMask);
+			}
+			int mask = fieldMask & conditionMask;
+			return fieldMask | closures[byteIndices[mask & 0xFF]
+					| byteIndices[256 + ((mask >>> 8) & 0xFF)]
+					| byteIndices[512 + ((mask >>> 16) & 0xFF)]
+					| byteIndices[768 + (mask >>> 24)]];
+		}
+
+		private int applyUntilFixed(int fieldMask) {
+			int oldMask;
+			do {
+				oldMask = fieldMask;
+				for (Implicature impl : implicatures) {
+					if ((fieldMask & impl.condition) == impl.condition) {
+						fieldMask |= impl.implies;
+					}
+				}
+			} while (oldMask != fieldMask);
+			return fieldMask;
+		}
+
+		public Implicature get(int index) {
+			return implicatures[index];
+		}
+
+		public int size() {
+			return implicatures.length;
+		}
+	}
+
+	public static final Implicatures DEFAULT_IMPLICATURES;
 	static {
-		DEFAULT_IMPLICATURES.add(new Implicature(makeMask(ERA, YEAR, MONTH, DATE), makeMask(DAY_OF_WEEK, DAY_OF_WEEK_IN_MONTH, DAY_OF_YEAR, WEEK_OF_YEAR, WEEK_OF_MONTH)));
-		DEFAULT_IMPLICATURES.add(new Implicature(makeMask(ERA, YEAR, DAY_OF_YEAR), makeMask(MONTH, DATE)));
-		DEFAULT_IMPLICATURES.add(new Implicature(makeMask(ERA, YEAR, DAY_OF_WEEK, WEEK_OF_YEAR), makeMask(MONTH, DATE)));
-		DEFAULT_IMPLICATURES.add(new Implicature(makeMask(ERA, YEAR, MONTH, DAY_OF_WEEK, WEEK_OF_MONTH), makeMask(DATE)));
-		DEFAULT_IMPLICATURES.add(new Implicature(makeMask(AM_PM, HOUR), makeMask(HOUR_OF_DAY)));
-		DEFAULT_IMPLICATURES.add(new Implicature(makeMask(HOUR_OF_DAY), makeMask(AM_PM, HOUR)));
+		List<Implicature> implicatures = new ArrayList<Implicature>();
+		implicatures.add(new Implicature(makeMask(ERA, YEAR, MONTH, DATE), makeMask(DAY_OF_WEEK, DAY_OF_WEEK_IN_MONTH, DAY_OF_YEAR, WEEK_OF_YEAR, WEEK_OF_MONTH)));
+		implicatures.add(new Implicature(makeMask(ERA, YEAR, DAY_OF_YEAR), makeMask(MONTH, DATE)));
+		implicatures.add(new Implicature(makeMask(ERA, YEAR, DAY_OF_WEEK, WEEK_OF_YEAR), makeMask(MONTH, DATE)));
+		implicatures.add(new Implicature(makeMask(ERA, YEAR, MONTH, DAY_OF_WEEK, WEEK_OF_MONTH), makeMask(DATE)));
+		implicatures.add(new Implicature(makeMask(AM_PM, HOUR), makeMask(HOUR_OF_DAY)));
+		implicatures.add(new Implicature(makeMask(HOUR_OF_DAY), makeMask(AM_PM, HOUR)));
+		DEFAULT_IMPLICATURES = new Implicatures(implicatures);
 	}
 	
 	public PartialCalendar(Calendar wrapped, int... fields) {
@@ -93,6 +194,16 @@ public class PartialCalendar extends Calendar {
 	}
 	
 	protected void markImplicatures() {
+		fieldMask = implied(implicatures, fieldMask);
+	}
+	
+	/**
+	 * @return fieldMask with the fields implied by it under implicatures
+	 */
+	public static int implied(Collection<Implicature> implicatures, int fieldMask) {
+		if (implicatures instanceof Implicatures) {
+			return ((Implicatures) implicatures).implied(fieldMask);
+		}
 		int oldMask;
 		do {
 			oldMask = fieldMask;
@@ -102,6 +213,7 @@ public class PartialCalendar extends Calendar {
 				}
 			}
 		} while (oldMask != fieldMask);
+		return fieldMask;
 	}
 	
 	public boolean has(int field) {
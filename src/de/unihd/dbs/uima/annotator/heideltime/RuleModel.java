@@ -0,0 +1,552 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.util.Level;
+import org.apache.uima.util.Logger;
+
+import de.unihd.dbs.uima.annotator.heideltime.regex.AhoCorasick;
+import de.unihd.dbs.uima.annotator.heideltime.regex.AlternationTrie;
+import de.unihd.dbs.uima.annotator.heideltime.regex.RegexNode;
+import de.unihd.dbs.uima.annotator.heideltime.regex.RegexParser;
+import de.unihd.dbs.uima.annotator.heideltime.substitutions.CompiledExpression;
+import de.unihd.dbs.uima.annotator.heideltime.substitutions.Concatenation;
+import de.unihd.dbs.uima.annotator.heideltime.substitutions.Literal;
+import de.unihd.dbs.uima.annotator.heideltime.substitutions.Lowercase;
+import de.unihd.dbs.uima.annotator.heideltime.substitutions.MatchGroup;
+import de.unihd.dbs.uima.annotator.heideltime.substitutions.MatchGroups;
+import de.unihd.dbs.uima.annotator.heideltime.substitutions.Normalization;
+import de.unihd.dbs.uima.annotator.heideltime.substitutions.SubstitutionParser;
+import de.unihd.dbs.uima.annotator.heideltime.substitutions.Substring;
+import de.unihd.dbs.uima.annotator.heideltime.substitutions.Sum;
+import de.unihd.dbs.uima.annotator.heideltime.substitutions.Uppercase;
+
+/**
+ * The normalization and pattern resources of a language and the rule
+ * matchers and FullSpecifier built from them.
+ *
+ * The rules of each timex type are only read and compiled when the matcher
+ * of that type is first requested, so that instances extracting few types
+ * do not pay for compiling the others.
+ *
+ * A model is not changed once loaded (except for compiling rules), and matching keeps its mutable state
+ * per thread, so one model is shared by all HeidelTime instances in the JVM
+ * with the same settings; see {@link #get(String, boolean)}.
+ *
+ * A model may be saved as a rule bundle (see {@link #main(String[])}) and
+ * put on the classpath as &lt;language&gt;/heideltime_rules.ser, which is then
+ * read instead of the resource files: this skips reading the files, the
+ * substitution of pattern variables and the parsing of rules and
+ * normalization expressions (the regular expressions are still compiled as
+ * the bundle is read). There is no build step writing bundles; they are
+ * written by hand for a release. A bundle is rejected, and the resource
+ * files read instead, if it was written in another format, from other
+ * resource files, or by other versions of the classes generating the
+ * patterns (see {@link #GENERATOR_CLASSES}).
+ */
+public class RuleModel implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	// VERSION OF THE RULE BUNDLE FORMAT, TO BE INCREASED WITH ANY CHANGE TO THE BUNDLE HEADER
+	static final int BUNDLE_FORMAT = 2;
+
+	// CLASSES WHOSE CODE DETERMINES WHAT IS SERIALIZED IN A BUNDLE; THE CLASS
+	// FILES OF THESE AND THEIR MEMBER CLASSES ARE DIGESTED IN THE HEADER
+	static final Class<?>[] GENERATOR_CLASSES = {
+		RuleModel.class, TimexRuleMatcher.class, RulePrefilter.class,
+		AlternationTrie.class, AhoCorasick.class, RegexParser.class, RegexNode.class,
+		SubstitutionParser.class, CompiledExpression.class, MatchGroups.class, Concatenation.class,
+		Literal.class, Lowercase.class, MatchGroup.class, Normalization.class, Substring.class, Sum.class,
+		Uppercase.class};
+
+	// MODELS LOADED SO FAR, BY LANGUAGE AND MATCHING SETTINGS; EACH CACHES
+	// THE MATCHERS OF ITS TIMEX TYPES, SO THAT THESE ARE SHARED BY (LANGUAGE, TYPE)
+	static final Map<String, RuleModel> registry = new HashMap<String, RuleModel>();
+
+	// PATTERNS TO READ RESOURCES "RULES" AND "NORMALIZATION"
+	Pattern paReadNormalizations = Pattern.compile("\"(.*?)\",\"(.*?)\"");
+
+	// STORE PATTERNS AND NORMALIZATIONS
+	HashMap<String, HashMap<String,String>> hmAllNormalization = new HashMap<String, HashMap<String,String>>();
+	TreeMap<String, String> hmAllRePattern                     = new TreeMap<String, String>();
+
+	// RULE RESOURCES BY TIMEX TYPE, AND THE MATCHERS COMPILED FROM THEM SO FAR
+	HashMap<String, String> hmRuleResources  = new HashMap<String, String>();
+	HashMap<String, TimexRuleMatcher> hmRuleMatchers = new HashMap<String, TimexRuleMatcher>();
+	transient FullSpecifier fullSpecifier;
+
+	final String language;
+	boolean useAutomaton;
+
+	transient Logger logger = UIMAFramework.getLogger(RuleModel.class);
+
+	/**
+	 * @return the model for language, loading it if no instance has done so yet
+	 */
+	public static synchronized RuleModel get(String language, boolean useAutomaton) {
+		String key = language + (useAutomaton ? "+automaton" : "");
+		RuleModel res = registry.get(key);
+		if (res == null) {
+			res = readBundle(language, useAutomaton);
+			if (res == null) {
+				res = new RuleModel(language, useAutomaton);
+			}
+			registry.put(key, res);
+		}
+		return res;
+	}
+
+	/**
+	 * @return the model read from the rule bundle of language on the
+	 *         classpath, or null if there is none or it cannot be read
+	 */
+	static RuleModel readBundle(String language, boolean useAutomaton) {
+		InputStream in = RuleModel.class.getClassLoader().getResourceAsStream(getBundlePath(language));
+		if (in == null) {
+			return null;
+		}
+		try {
+			try {
+				RuleModel res = read(in);
+				if (!language.equals(res.language)) {
+					throw new IOException("Rule bundle is for language " + res.language);
+				}
+				res.setUseAutomaton(useAutomaton);
+				res.logger.log(Level.INFO, "Read rule bundle: " + getBundlePath(language));
+				return res;
+			} finally {
+				in.close();
+			}
+		} catch (InvalidClassException e) {
+			UIMAFramework.getLogger(RuleModel.class).log(Level.WARNING,
+					"Rule bundle " + getBundlePath(language) + " was written by other versions of the classes"
+					+ ", reading resources instead: " + e);
+			return null;
+		} catch (Exception e) {
+			UIMAFramework.getLogger(RuleModel.class).log(Level.WARNING,
+					"Cannot read rule bundle " + getBundlePath(language) + ", reading resources instead: " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * @return the classpath location of the rule bundle of language
+	 */
+	public static String getBundlePath(String language) {
+		return language + "/heideltime_rules.ser";
+	}
+
+	/**
+	 * Reads a model saved with {@link #write(OutputStream)}.
+	 * @throws IOException also if the model was saved in another format,
+	 *         by other versions of the generator classes or from resource
+	 *         files other than those now on the classpath
+	 */
+	public static RuleModel read(InputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream oin = new ObjectInputStream(new BufferedInputStream(in));
+		int format = oin.readInt();
+		if (format != BUNDLE_FORMAT) {
+			throw new IOException("Rule bundle has format " + format + " rather than " + BUNDLE_FORMAT);
+		}
+		if (!oin.readUTF().equals(getCodeDigest())) {
+			throw new IOException("Rule bundle was written by other versions of the rule classes");
+		}
+		String language = oin.readUTF();
+		if (!oin.readUTF().equals(getResourceDigest(language))) {
+			throw new IOException("Rule bundle was written from other resources of language " + language);
+		}
+		return (RuleModel) oin.readObject();
+	}
+
+	/**
+	 * Saves the model with the rules of all types compiled, but without the
+	 * rule automata, which are rebuilt as it is read.
+	 */
+	public synchronized void write(OutputStream out) throws IOException {
+		for (String timexType : hmRuleResources.keySet()) {
+			getMatcher(timexType);
+		}
+		ObjectOutputStream oout = new ObjectOutputStream(new BufferedOutputStream(out));
+		oout.writeInt(BUNDLE_FORMAT);
+		oout.writeUTF(getCodeDigest());
+		oout.writeUTF(language);
+		oout.writeUTF(getResourceDigest(language));
+		oout.writeObject(this);
+		oout.flush();
+	}
+
+	/**
+	 * Writes the rule bundle of a language, to be put on the classpath at
+	 * {@link #getBundlePath(String)}.
+	 * Usage: RuleModel &lt;language&gt; &lt;output file&gt;
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			throw new IllegalArgumentException("Usage: RuleModel <language> <output file>");
+		}
+		OutputStream out = new FileOutputStream(args[1]);
+		try {
+			new RuleModel(args[0], false).write(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @return a hex SHA-1 digest of the lines of used_resources.txt for
+	 *         language and of the contents of the resource files they name
+	 */
+	static String getResourceDigest(String language) throws IOException {
+		MessageDigest digest = newDigest();
+		ClassLoader loader = RuleModel.class.getClassLoader();
+		InputStream in = loader.getResourceAsStream("used_resources.txt");
+		if (in == null) {
+			throw new FileNotFoundException("used_resources.txt");
+		}
+		List<String> lines = new ArrayList<String>();
+		BufferedReader br = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+		try {
+			for (String line; (line = br.readLine()) != null; ) {
+				if (line.startsWith("./" + language + "/")) {
+					lines.add(line);
+				}
+			}
+		} finally {
+			br.close();
+		}
+		for (String line : lines) {
+			digest.update(line.getBytes("UTF-8"));
+			digest.update((byte) '\n');
+			update(digest, loader.getResourceAsStream(line.substring(2)));
+		}
+		return toHex(digest);
+	}
+
+	/**
+	 * @return a hex SHA-1 digest of the class files of
+	 *         {@link #GENERATOR_CLASSES} and their member classes
+	 */
+	static String getCodeDigest() throws IOException {
+		MessageDigest digest = newDigest();
+		List<Class<?>> classes = new ArrayList<Class<?>>();
+		for (Class<?> c : GENERATOR_CLASSES) {
+			classes.add(c);
+		}
+		for (int i = 0; i < classes.size(); i++) {
+			Class<?> c = classes.get(i);
+			String path = c.getName().replace('.', '/') + ".class";
+			InputStream in = RuleModel.class.getClassLoader().getResourceAsStream(path);
+			if (in == null) {
+				throw new FileNotFoundException(path);
+			}
+			digest.update(path.getBytes("UTF-8"));
+			update(digest, in);
+			for (Class<?> member : c.getDeclaredClasses()) {
+				classes.add(member);
+			}
+		}
+		return toHex(digest);
+	}
+
+	private static MessageDigest newDigest() throws IOException {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e.toString());
+		}
+	}
+
+	/**
+	 * Adds the contents of in, if not null, to digest and closes in.
+	 */
+	private static void update(MessageDigest digest, InputStream in) throws IOException {
+		if (in == null) {
+			return;
+		}
+		byte[] buf = new byte[8192];
+		try {
+			for (int n; (n = in.read(buf)) >= 0; ) {
+				digest.update(buf, 0, n);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private static String toHex(MessageDigest digest) {
+		StringBuilder res = new StringBuilder();
+		for (byte b : digest.digest()) {
+			res.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return res.toString();
+	}
+
+	/**
+	 * Reads all resources of the language; prefer {@link #get(String, boolean)}.
+	 */
+	public RuleModel(String language, boolean useAutomaton) {
+		this.language = language;
+		this.useAutomaton = useAutomaton;
+
+		////////////////////////////////////////////////////////////
+		// READ NORMALIZATION RESOURCES FROM FILES AND STORE THEM //
+		////////////////////////////////////////////////////////////
+		HashMap<String, String> hmResourcesNormalization = readResourcesFromDirectory("normalization");
+		for (String which : hmResourcesNormalization.keySet()){
+			hmAllNormalization.put(which, new HashMap<String, String>());
+		}
+		readNormalizationResources(hmResourcesNormalization);
+	
+		//////////////////////////////////////////////////////
+		// READ PATTERN RESOURCES FROM FILES AND STORE THEM //
+		//////////////////////////////////////////////////////
+		HashMap<String, String> hmResourcesRePattern = readResourcesFromDirectory("repattern");
+		for (String which : hmResourcesRePattern.keySet()){
+			hmAllRePattern.put(which, "");
+		}
+		readRePatternResources(hmResourcesRePattern);
+
+		/////////////////////////////////////////////////////////////////
+		// FIND RULE RESOURCES; THEY ARE READ WHEN THEIR TYPE IS NEEDED //
+		/////////////////////////////////////////////////////////////////
+		HashMap<String, String> hmResourcesRules = readResourcesFromDirectory("rules");
+		for (String resource : hmResourcesRules.keySet()) {
+			if (!resource.endsWith("rules")) {
+				logger.log(Level.WARNING, "Not adding resource unless it ends 'rules': " + resource);
+				continue;
+			}
+			// timexType is prefix before "rules"
+			String timexType = resource.substring(0, resource.length() - 5).toUpperCase();
+			hmRuleResources.put(timexType, hmResourcesRules.get(resource));
+		}
+		
+		fullSpecifier = new FullSpecifier(hmAllRePattern);
+	}
+
+	private void setUseAutomaton(boolean useAutomaton) {
+		this.useAutomaton = useAutomaton;
+		for (TimexRuleMatcher rm : hmRuleMatchers.values()) {
+			rm.setUseAutomaton(useAutomaton);
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		logger = UIMAFramework.getLogger(RuleModel.class);
+		fullSpecifier = new FullSpecifier(hmAllRePattern);
+	}
+
+	/**
+	 * @return the matcher for the rules of timexType (e.g. "DATE"), reading
+	 *         and compiling them if not done yet, or null if there are none
+	 * @throws IllegalStateException if the rules cannot be read
+	 */
+	public synchronized TimexRuleMatcher getMatcher(String timexType) {
+		TimexRuleMatcher res = hmRuleMatchers.get(timexType);
+		if (res == null && hmRuleResources.containsKey(timexType)) {
+			res = readRules(timexType, hmRuleResources.get(timexType));
+			hmRuleMatchers.put(timexType, res);
+		}
+		return res;
+	}
+
+	public TimexRuleMatcher getDateMatcher() {
+		return getMatcher("DATE");
+	}
+
+	public TimexRuleMatcher getTimeMatcher() {
+		return getMatcher("TIME");
+	}
+
+	public TimexRuleMatcher getDurationMatcher() {
+		return getMatcher("DURATION");
+	}
+
+	public TimexRuleMatcher getSetMatcher() {
+		return getMatcher("SET");
+	}
+
+	public FullSpecifier getFullSpecifier() {
+		return fullSpecifier;
+	}
+
+	/**
+	 * Reads resource files of the type resourceType from the "used_resources.txt" file and returns a HashMap
+	 * containing information to access these resources.
+	 * @param resourceType
+	 * @return
+	 */
+	private HashMap<String, String> readResourcesFromDirectory(String resourceType){
+
+		HashMap<String, String> hmResources = new HashMap<String, String>();
+	
+		BufferedReader br = new BufferedReader(new InputStreamReader (this.getClass().getClassLoader().getResourceAsStream("used_resources.txt")));
+		Pattern paResource = Pattern.compile("\\./"+language+"/"+resourceType+"/resources_"+resourceType+"_"+"(.*?)\\.txt");
+		try {
+			for ( String line; (line=br.readLine()) != null; ){
+
+				for (MatchResult ro : HeidelTime.findMatches(paResource, line)){
+					String foundResource  = ro.group(1);
+					String pathToResource = language+"/"+resourceType+"/resources_"+resourceType+"_"+foundResource+".txt";
+					hmResources.put(foundResource, pathToResource);
+				}
+			}
+		} catch (IOException e) {
+			// Auto-generated catch block
+			e.printStackTrace();
+		}
+		return hmResources;
+	}
+
+	/**
+	 * READ THE RULES OF ONE TIMEX TYPE FROM THE FILE.
+	 * @param timexType
+	 * @param path
+	 * @return the matcher
+	 * @throws IllegalStateException if the file cannot be read
+	 */
+	private TimexRuleMatcher readRules(String timexType, String path){
+		logger.log(Level.INFO, "Adding rule resource: "+path);
+		InputStream in = this.getClass().getClassLoader().getResourceAsStream(path);
+		if (in == null) {
+			logger.log(Level.SEVERE, "Cannot find rule resource: "+path);
+			throw new IllegalStateException("Cannot find rule resource: "+path);
+		}
+		try {
+			try {
+				TimexRuleMatcher rm = new TimexRuleMatcher(timexType, new InputStreamReader(in),
+						hmAllRePattern, hmAllNormalization);
+				rm.setUseAutomaton(useAutomaton);
+				return rm;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			logger.log(Level.SEVERE, "Cannot read rule resource "+path+": "+e);
+			throw new IllegalStateException("Cannot read rule resource: "+path, e);
+		}
+	}
+
+	/**
+	 * READ THE REPATTERN FROM THE FILES. The files have to be defined in the HashMap hmResourcesRePattern.
+	 * @param hmResourcesRePattern
+	 */
+	private void readRePatternResources(HashMap<String, String> hmResourcesRePattern){
+	
+		//////////////////////////////////////
+		// READ REGULAR EXPRESSION PATTERNS //
+		//////////////////////////////////////
+		HashMap<String, List<String>> hmRePatternLines = new HashMap<String, List<String>>();
+		for (String which : hmAllRePattern.keySet()){
+			hmRePatternLines.put(which, new ArrayList<String>());
+		}
+		try {
+			for (String resource : hmResourcesRePattern.keySet()) {
+				logger.log(Level.INFO, "Adding pattern resource: "+resource);
+				// create a buffered reader for every repattern resource file
+				BufferedReader in = new BufferedReader(new InputStreamReader
+						(this.getClass().getClassLoader().getResourceAsStream(hmResourcesRePattern.get(resource)),"UTF-8"));
+				for ( String line; (line=in.readLine()) != null; ){
+					if (!(line.startsWith("//"))){
+						boolean correctLine = false;
+						if (!(line.equals(""))){
+							correctLine = true;
+							for (String which : hmAllRePattern.keySet()){
+								if (resource.equals(which)){
+									hmRePatternLines.get(which).add(line);
+								}
+							}
+						}
+						if ((correctLine == false) && (!(line.matches("")))){
+							logger.log(Level.WARNING, "Cannot read one of the lines of pattern resource "+resource + "\nLine: "+line);
+						}
+					}
+				}
+			}
+			////////////////////////////
+			// FINALIZE THE REPATTERN //
+			////////////////////////////
+			for (String which : hmAllRePattern.keySet()){
+				finalizeRePattern(which, hmRePatternLines.get(which));
+			}
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Pattern containing regular expression is finalized, i.e., created correctly and added to hmAllRePattern.
+	 * The disjunction of the lines is built with common prefixes factored out.
+	 * @param name
+	 * @param rePatternLines
+	 */
+	private void finalizeRePattern(String name, List<String> rePatternLines){
+		// create correct regular expression
+		String rePattern = "(" + AlternationTrie.toRegex(rePatternLines) + ")";
+		// add rePattern to hmAllRePattern
+		hmAllRePattern.put(name, rePattern.replaceAll("\\\\", "\\\\\\\\"));
+	}
+
+	/**
+	 * Read the resources (of any language) from resource files and
+	 * fill the HashMaps used for normalization tasks.
+	 * @param hmResourcesNormalization
+	 */
+	private void readNormalizationResources(HashMap<String, String> hmResourcesNormalization){
+		try {
+			for (String resource : hmResourcesNormalization.keySet()) {
+				logger.log(Level.INFO, "Adding normalization resource: "+resource);
+				// create a buffered reader for every normalization resource file
+				BufferedReader in = new BufferedReader(new InputStreamReader
+						(this.getClass().getClassLoader().getResourceAsStream(hmResourcesNormalization.get(resource)),"UTF-8"));
+				for ( String line; (line=in.readLine()) != null; ){
+					if (!(line.startsWith("//"))){
+						boolean correctLine = false;
+						// check each line for the normalization format (defined in paReadNormalizations)
+						for (MatchResult r : HeidelTime.findMatches(paReadNormalizations, line)){
+							correctLine = true;
+							String resource_word   = r.group(1);
+							String normalized_word = r.group(2);
+							for (String which : hmAllNormalization.keySet()){
+								if (resource.equals(which)){
+									hmAllNormalization.get(which).put(resource_word,normalized_word);
+								}
+							}
+							if ((correctLine == false) && (!(line.matches("")))){
+								logger.log(Level.WARNING, "Cannot read one of the lines of normalization resource "+resource + "\nLine: "+line);
+							}
+						}
+					}
+				}
+			}
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,480 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import de.unihd.dbs.uima.annotator.heideltime.regex.AhoCorasick;
+import de.unihd.dbs.uima.annotator.heideltime.regex.RegexNode;
+import de.unihd.dbs.uima.annotator.heideltime.regex.RegexParser;
+
+/**
+ * Decides for a sentence which rules can possibly match it, so that the full
+ * extraction pattern need only be run for those.
+ *
+ * For every rule, the extraction (with %re variables left as placeholders) is
+ * analysed for parts that any match must contain: literal strings, and
+ * variables whose vocabulary must occur in the sentence. These are collected
+ * as a conjunction of clauses, each clause being a disjunction of such atoms
+ * (e.g. "(%reMonthLong|%reMonthShort) %reYear4Digit" requires a month name and
+ * a four digit year).
+ *
+ * All literals, together with the strings that every match of a rule must
+ * begin with (where there are few enough), are found in a single Aho-Corasick
+ * pass over the sentence. Variable vocabularies are only tested with their
+ * pattern if their own required literals occur, and at most once per sentence.
+ * The first occurrence of a rule's leading strings bounds where its matches
+ * can start.
+ */
+public class RulePrefilter implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	static final int UNKNOWN = 0;
+	static final int PRESENT = 1;
+	static final int ABSENT = 2;
+
+	static final int MAX_EXPANSION = 64;
+
+	// Literal strings searched for in each sentence
+	final List<String> keywords = new ArrayList<String>();
+	final Map<String, Integer> keywordIds = new HashMap<String, Integer>();
+	AhoCorasick keywordFinder;
+
+	// Atoms are literal strings (given by keyword) or variable patterns
+	final List<Integer> atomKeywords = new ArrayList<Integer>();
+	final List<Pattern> atomPatterns = new ArrayList<Pattern>();
+	final List<int[][]> atomLiteralRequirements = new ArrayList<int[][]>();
+	final Map<String, Integer> atomIds = new LinkedHashMap<String, Integer>();
+
+	// Parsed variables, only used in construction
+	final transient Map<String, RegexNode> variables = new HashMap<String, RegexNode>();
+
+	// For each rule, a list of clauses of atom ids
+	final int[][][] requirements;
+	// For each rule, keywords one of which begins every match; or null
+	final int[][] leadingKeywords;
+
+	/**
+	 * The rules which may match a given text, and where their matches may start.
+	 */
+	public class Candidates {
+		final BitSet rules;
+		final int[] starts;
+
+		Candidates(BitSet rules, int[] starts) {
+			this.rules = rules;
+			this.starts = starts;
+		}
+
+		public boolean contains(int rule) {
+			return rules.get(rule);
+		}
+
+		/**
+		 * @return the lowest offset at which a match of the candidate rule may start
+		 */
+		public int getStart(int rule) {
+			return starts[rule];
+		}
+	}
+
+	/**
+	 * @param extractions the rule extractions, in rule order, with variables
+	 *            substituted by {@link RegexParser#variable(String)}; null if unknown
+	 * @param hmAllRePattern the (finalized) values of the variables
+	 */
+	public RulePrefilter(List<String> extractions, Map<String, String> hmAllRePattern) {
+		requirements = new int[extractions.size()][][];
+		leadingKeywords = new int[extractions.size()][];
+		for (int i = 0; i < requirements.length; i++) {
+			analyse(i, extractions.get(i), hmAllRePattern);
+		}
+		keywordFinder = new AhoCorasick(keywords);
+	}
+
+	/**
+	 * @return the rules which may match text
+	 */
+	public Candidates candidates(CharSequence text) {
+		BitSet rules = new BitSet(requirements.length);
+		int[] starts = new int[requirements.length];
+		int[] occurrences = keywordFinder.firstOccurrences(text);
+		int[] atomStates = new int[atomPatterns.size()];
+		String textString = text.toString();
+		for (int atom = 0; atom < atomStates.length; atom++) {
+			Integer keyword = atomKeywords.get(atom);
+			if (keyword != null) {
+				atomStates[atom] = occurrences[keyword] >= 0 ? PRESENT : ABSENT;
+			}
+		}
+		for (int i = 0; i < requirements.length; i++) {
+			if (!satisfied(requirements[i], textString, atomStates)) {
+				continue;
+			}
+			if (leadingKeywords[i] != null) {
+				int start = -1;
+				for (int keyword : leadingKeywords[i]) {
+					int occurrence = occurrences[keyword];
+					if (occurrence >= 0 && (start < 0 || occurrence < start)) {
+						start = occurrence;
+					}
+				}
+				if (start < 0) {
+					continue;
+				}
+				starts[i] = start;
+			}
+			rules.set(i);
+		}
+		return new Candidates(rules, starts);
+	}
+
+	private boolean satisfied(int[][] clauses, String text, int[] atomStates) {
+		for (int[] clause : clauses) {
+			boolean found = false;
+			for (int atom : clause) {
+				if (atomStates[atom] == UNKNOWN) {
+					atomStates[atom] = test(atom, text, atomStates) ? PRESENT : ABSENT;
+				}
+				if (atomStates[atom] == PRESENT) {
+					found = true;
+					break;
+				}
+			}
+			if (!found) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean test(int atom, String text, int[] atomStates) {
+		// variables are only searched for if their literals are present
+		return satisfied(atomLiteralRequirements.get(atom), text, atomStates)
+				&& atomPatterns.get(atom).matcher(text).find();
+	}
+
+	private void analyse(int rule, String extraction, Map<String, String> hmAllRePattern) {
+		requirements[rule] = new int[0][];
+		if (extraction == null) {
+			return;
+		}
+		RegexNode root;
+		try {
+			RegexParser parser = new RegexParser(extraction);
+			root = parser.parse();
+			if (parser.usesFlags()) {
+				// literals might not be matched verbatim
+				return;
+			}
+		} catch (RuntimeException e) {
+			return;
+		}
+		requirements[rule] = toArray(required(root, hmAllRePattern));
+		Set<String> leading = leadingStrings(root, hmAllRePattern);
+		if (leading != null) {
+			leadingKeywords[rule] = new int[leading.size()];
+			int i = 0;
+			for (String string : leading) {
+				leadingKeywords[rule][i++] = keyword(string);
+			}
+		}
+	}
+
+	private int[][] toArray(List<Set<Integer>> clauses) {
+		int[][] res = new int[clauses.size()][];
+		for (int i = 0; i < res.length; i++) {
+			res[i] = new int[clauses.get(i).size()];
+			int j = 0;
+			for (int atom : clauses.get(i)) {
+				res[i][j++] = atom;
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * @return clauses of atoms, one of each of which must be found in any text matched by node
+	 */
+	private List<Set<Integer>> required(RegexNode node, Map<String, String> hmAllRePattern) {
+		List<Set<Integer>> res = new ArrayList<Set<Integer>>();
+		if (node instanceof RegexNode.Variable) {
+			addClause(res, variableAtom(((RegexNode.Variable) node).name, hmAllRePattern));
+		} else if (node instanceof RegexNode.Literal) {
+			addClause(res, literalAtom(String.valueOf(((RegexNode.Literal) node).value)));
+		} else if (node instanceof RegexNode.Group) {
+			res.addAll(required(((RegexNode.Group) node).child, hmAllRePattern));
+		} else if (node instanceof RegexNode.Repeat) {
+			RegexNode.Repeat repeat = (RegexNode.Repeat) node;
+			if (repeat.min > 0) {
+				res.addAll(required(repeat.child, hmAllRePattern));
+			}
+		} else if (node instanceof RegexNode.Sequence) {
+			StringBuilder run = new StringBuilder();
+			for (RegexNode item : ((RegexNode.Sequence) node).items) {
+				if (item instanceof RegexNode.Literal) {
+					run.append(((RegexNode.Literal) item).value);
+					continue;
+				}
+				boolean repeatedLiteral = item instanceof RegexNode.Repeat
+						&& ((RegexNode.Repeat) item).child instanceof RegexNode.Literal;
+				if (repeatedLiteral && ((RegexNode.Repeat) item).min > 0) {
+					// e.g. the "s" of "s+" must occur
+					run.append(((RegexNode.Literal) ((RegexNode.Repeat) item).child).value);
+				}
+				if (run.length() > 0) {
+					addClause(res, literalAtom(run.toString()));
+					run.setLength(0);
+				}
+				if (!repeatedLiteral) {
+					res.addAll(required(item, hmAllRePattern));
+				}
+			}
+			if (run.length() > 0) {
+				addClause(res, literalAtom(run.toString()));
+			}
+		} else if (node instanceof RegexNode.Alternation) {
+			// Take the most selective clause of each branch
+			Set<Integer> clause = new LinkedHashSet<Integer>();
+			for (RegexNode branch : ((RegexNode.Alternation) node).branches) {
+				Set<Integer> best = null;
+				for (Set<Integer> candidate : required(branch, hmAllRePattern)) {
+					if (best == null || score(candidate) > score(best)) {
+						best = candidate;
+					}
+				}
+				if (best == null) {
+					// one branch is unconstrained
+					return res;
+				}
+				clause.addAll(best);
+			}
+			res.add(clause);
+		}
+		return res;
+	}
+
+	/**
+	 * @return a set of strings one of which every match of node begins with, or null if unknown
+	 */
+	private Set<String> leadingStrings(RegexNode node, Map<String, String> hmAllRePattern) {
+		Set<String> res;
+		if (node instanceof RegexNode.Sequence) {
+			res = new LinkedHashSet<String>();
+			res.add("");
+			for (RegexNode item : ((RegexNode.Sequence) node).items) {
+				Set<String> next = completeStrings(item, hmAllRePattern);
+				boolean complete = next != null;
+				if (!complete) {
+					next = leadingStrings(item, hmAllRePattern);
+				}
+				if (next == null || next.size() * res.size() > MAX_EXPANSION) {
+					break;
+				}
+				res = concatenate(res, next);
+				if (!complete) {
+					break;
+				}
+			}
+		} else if (node instanceof RegexNode.Group) {
+			res = leadingStrings(((RegexNode.Group) node).child, hmAllRePattern);
+		} else if (node instanceof RegexNode.Repeat) {
+			RegexNode.Repeat repeat = (RegexNode.Repeat) node;
+			res = repeat.min > 0 ? leadingStrings(repeat.child, hmAllRePattern) : null;
+		} else if (node instanceof RegexNode.Alternation) {
+			res = new LinkedHashSet<String>();
+			for (RegexNode branch : ((RegexNode.Alternation) node).branches) {
+				Set<String> branchStrings = leadingStrings(branch, hmAllRePattern);
+				if (branchStrings == null) {
+					return null;
+				}
+				res.addAll(branchStrings);
+			}
+		} else if (node instanceof RegexNode.Variable) {
+			RegexNode value = variableNode(((RegexNode.Variable) node).name, hmAllRePattern);
+			res = value == null ? null : leadingStrings(value, hmAllRePattern);
+		} else {
+			res = completeStrings(node, hmAllRePattern);
+		}
+		if (res == null || res.isEmpty() || res.contains("") || res.size() > MAX_EXPANSION) {
+			return null;
+		}
+		return res;
+	}
+
+	/**
+	 * @return all strings which node may match (ignoring assertions), or null if unknown or too many
+	 */
+	private Set<String> completeStrings(RegexNode node, Map<String, String> hmAllRePattern) {
+		Set<String> res = new LinkedHashSet<String>();
+		if (node instanceof RegexNode.Literal) {
+			res.add(String.valueOf(((RegexNode.Literal) node).value));
+		} else if (node instanceof RegexNode.CharClass) {
+			RegexNode.CharClass charClass = (RegexNode.CharClass) node;
+			if (!charClass.exact) {
+				return null;
+			}
+			for (int i = 0; i < charClass.ranges.length; i += 2) {
+				for (int c = charClass.ranges[i]; c <= charClass.ranges[i + 1]; c++) {
+					if (res.size() >= 4) {
+						return null;
+					}
+					res.add(String.valueOf((char) c));
+				}
+			}
+		} else if (node instanceof RegexNode.Assertion) {
+			res.add("");
+		} else if (node instanceof RegexNode.Group) {
+			return completeStrings(((RegexNode.Group) node).child, hmAllRePattern);
+		} else if (node instanceof RegexNode.Sequence) {
+			res.add("");
+			for (RegexNode item : ((RegexNode.Sequence) node).items) {
+				Set<String> next = completeStrings(item, hmAllRePattern);
+				if (next == null || next.size() * res.size() > MAX_EXPANSION) {
+					return null;
+				}
+				res = concatenate(res, next);
+			}
+		} else if (node instanceof RegexNode.Alternation) {
+			for (RegexNode branch : ((RegexNode.Alternation) node).branches) {
+				Set<String> branchStrings = completeStrings(branch, hmAllRePattern);
+				if (branchStrings == null) {
+					return null;
+				}
+				res.addAll(branchStrings);
+			}
+		} else if (node instanceof RegexNode.Repeat) {
+			RegexNode.Repeat repeat = (RegexNode.Repeat) node;
+			if (repeat.min != 0 || repeat.max != 1) {
+				return null;
+			}
+			Set<String> child = completeStrings(repeat.child, hmAllRePattern);
+			if (child == null) {
+				return null;
+			}
+			res.add("");
+			res.addAll(child);
+		} else if (node instanceof RegexNode.Variable) {
+			RegexNode value = variableNode(((RegexNode.Variable) node).name, hmAllRePattern);
+			return value == null ? null : completeStrings(value, hmAllRePattern);
+		} else {
+			return null;
+		}
+		return res.size() > MAX_EXPANSION ? null : res;
+	}
+
+	private Set<String> concatenate(Set<String> prefixes, Set<String> suffixes) {
+		Set<String> res = new LinkedHashSet<String>();
+		for (String prefix : prefixes) {
+			for (String suffix : suffixes) {
+				res.add(prefix + suffix);
+			}
+		}
+		return res;
+	}
+
+	private void addClause(List<Set<Integer>> clauses, int atom) {
+		if (atom < 0) {
+			return;
+		}
+		Set<Integer> clause = new LinkedHashSet<Integer>();
+		clause.add(atom);
+		clauses.add(clause);
+	}
+
+	/**
+	 * Rough estimate of how rarely a clause is satisfied
+	 */
+	private int score(Set<Integer> clause) {
+		int res = Integer.MAX_VALUE;
+		for (int atom : clause) {
+			Integer keyword = atomKeywords.get(atom);
+			int atomScore = keyword == null ? 4 : Math.min(keywords.get(keyword).length(), 8);
+			res = Math.min(res, atomScore);
+		}
+		return res;
+	}
+
+	private int keyword(String keyword) {
+		Integer res = keywordIds.get(keyword);
+		if (res == null) {
+			res = keywords.size();
+			keywords.add(keyword);
+			keywordIds.put(keyword, res);
+		}
+		return res;
+	}
+
+	private int literalAtom(String literal) {
+		return atom("L:" + literal, keyword(literal), null, null);
+	}
+
+	/**
+	 * @return the value of the named variable as used in extraction patterns
+	 */
+	private String variableValue(String name, Map<String, String> hmAllRePattern) {
+		String value = hmAllRePattern.get(name);
+		if (value == null) {
+			return null;
+		}
+		// values are escaped for use as replacement strings, and spaces are
+		// generalised as in the extraction patterns
+		return value.replace("\\\\", "\\").replaceAll(" ", "[\\\\s]+");
+	}
+
+	private RegexNode variableNode(String name, Map<String, String> hmAllRePattern) {
+		if (!variables.containsKey(name)) {
+			String value = variableValue(name, hmAllRePattern);
+			RegexNode node = null;
+			if (value != null) {
+				try {
+					RegexParser parser = new RegexParser(value);
+					node = parser.parse();
+					if (parser.usesFlags()) {
+						node = null;
+					}
+				} catch (RuntimeException e) {
+					node = null;
+				}
+			}
+			variables.put(name, node);
+		}
+		return variables.get(name);
+	}
+
+	private int variableAtom(String name, Map<String, String> hmAllRePattern) {
+		String value = variableValue(name, hmAllRePattern);
+		if (value == null) {
+			return -1;
+		}
+		String key = "V:" + name;
+		if (atomIds.containsKey(key)) {
+			return atomIds.get(key);
+		}
+		RegexNode node = variableNode(name, hmAllRePattern);
+		int[][] literalRequirements = new int[0][];
+		if (node != null) {
+			literalRequirements = toArray(required(node, hmAllRePattern));
+		}
+		return atom(key, null, Pattern.compile(value), literalRequirements);
+	}
+
+	private int atom(String key, Integer keyword, Pattern pattern, int[][] literalRequirements) {
+		Integer res = atomIds.get(key);
+		if (res == null) {
+			res = atomPatterns.size();
+			atomKeywords.add(keyword);
+			atomPatterns.add(pattern);
+			atomLiteralRequirements.add(literalRequirements);
+			atomIds.put(key, res);
+		}
+		return res;
+	}
+}
@@ -0,0 +1,174 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts, per rule, the time spent matching it and what became of its
+ * matches, so that expensive or useless rules can be found. Counts may be
+ * added from several threads at once.
+ */
+public class RuleStatistics {
+
+	static class Counts {
+		final AtomicLong nanos = new AtomicLong();
+		final AtomicLong sentences = new AtomicLong();
+		final AtomicLong matches = new AtomicLong();
+		final AtomicLong posRejections = new AtomicLong();
+		final AtomicLong survivors = new AtomicLong();
+		final AtomicLong aborts = new AtomicLong();
+	}
+
+	/**
+	 * The counts of one rule at the time of a {@link RuleStatistics#snapshot()}.
+	 */
+	public static class Entry {
+		final String rule;
+		final long nanos;
+		final long sentences;
+		final long matches;
+		final long posRejections;
+		final long survivors;
+		final long aborts;
+
+		Entry(String rule, Counts counts) {
+			this.rule = rule;
+			this.nanos = counts.nanos.get();
+			this.sentences = counts.sentences.get();
+			this.matches = counts.matches.get();
+			this.posRejections = counts.posRejections.get();
+			this.survivors = counts.survivors.get();
+			this.aborts = counts.aborts.get();
+		}
+
+		public String getRule() {
+			return rule;
+		}
+
+		/**
+		 * @return the time spent finding matches of the rule, in nanoseconds
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * @return the number of sentences the rule was matched against (after
+		 *         prefiltering)
+		 */
+		public long getSentences() {
+			return sentences;
+		}
+
+		/**
+		 * @return the number of matches of the rule's pattern
+		 */
+		public long getMatches() {
+			return matches;
+		}
+
+		/**
+		 * @return the number of matches rejected by the rule's POS constraint
+		 */
+		public long getPosRejections() {
+			return posRejections;
+		}
+
+		/**
+		 * @return the number of timexes found by the rule which were kept
+		 *         when removing overlapping timexes
+		 */
+		public long getSurvivors() {
+			return survivors;
+		}
+
+		/**
+		 * @return the number of sentences on which matching the rule was
+		 *         abandoned for exceeding the step budget
+		 */
+		public long getAborts() {
+			return aborts;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-30s %10.3f ms %8d sentences %8d matches %8d POS rejections %8d kept %8d aborted",
+					rule, nanos / 1e6, sentences, matches, posRejections, survivors, aborts);
+		}
+	}
+
+	final ConcurrentMap<String, Counts> counts = new ConcurrentHashMap<String, Counts>();
+
+	private Counts get(String rule) {
+		Counts res = counts.get(rule);
+		if (res == null) {
+			Counts added = counts.putIfAbsent(rule, res = new Counts());
+			if (added != null) {
+				res = added;
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Records the matching of a rule against one sentence.
+	 */
+	public void addScan(String rule, long nanos, int matches, int posRejections, boolean aborted) {
+		Counts c = get(rule);
+		if (aborted) {
+			c.aborts.incrementAndGet();
+		}
+		c.nanos.addAndGet(nanos);
+		c.sentences.incrementAndGet();
+		c.matches.addAndGet(matches);
+		c.posRejections.addAndGet(posRejections);
+	}
+
+	/**
+	 * Records a timex found by rule that was not removed as overlapping.
+	 */
+	public void addSurvivor(String rule) {
+		get(rule).survivors.incrementAndGet();
+	}
+
+	/**
+	 * @return the current counts, by rule name
+	 */
+	public SortedMap<String, Entry> snapshot() {
+		SortedMap<String, Entry> res = new TreeMap<String, Entry>();
+		for (Map.Entry<String, Counts> entry : counts.entrySet()) {
+			res.put(entry.getKey(), new Entry(entry.getKey(), entry.getValue()));
+		}
+		return res;
+	}
+
+	public void reset() {
+		counts.clear();
+	}
+
+	/**
+	 * @return the current counts, one rule per line, most time-consuming first
+	 */
+	@Override
+	public String toString() {
+		List<Entry> entries = new ArrayList<Entry>(snapshot().values());
+		Collections.sort(entries, new Comparator<Entry>() {
+			public int compare(Entry e1, Entry e2) {
+				return e1.nanos < e2.nanos ? 1 : (e1.nanos > e2.nanos ? -1 : 0);
+			}
+		});
+		StringBuilder res = new StringBuilder();
+		for (Entry entry : entries) {
+			res.append(entry).append('\n');
+		}
+		return res.toString();
+	}
+}
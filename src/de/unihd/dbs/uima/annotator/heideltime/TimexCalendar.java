@@ -1,14 +1,13 @@
 package de.unihd.dbs.uima.annotator.heideltime;
 
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.GregorianCalendar;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
-public class TimexCalendar extends PartialCalendar {
+public class TimexCalendar extends PartialCalendar implements TimexFields {
 
 	/**
 	 * 
@@ -63,14 +62,15 @@ public class TimexCalendar extends PartialCalendar {
 	public static final int SOUTHERN_FALL = NORTHERN_SPRING;
 	public static final int SOUTHERN_WINTER = NORTHERN_SUMMER;
 	
-	public static final List<Implicature> TIMEX_IMPLICATURES = new ArrayList<Implicature>();
+	public static final Implicatures TIMEX_IMPLICATURES;
 	static {
-		TIMEX_IMPLICATURES.addAll(DEFAULT_IMPLICATURES);
-		TIMEX_IMPLICATURES.add(new Implicature(makeMask(YEAR), makeMask(CENTURY, DECADE, YEAR_UNIT)));
-		TIMEX_IMPLICATURES.add(new Implicature(makeMask(CENTURY, DECADE, YEAR_UNIT), makeMask(YEAR)));
-		TIMEX_IMPLICATURES.add(new Implicature(makeMask(MONTH), makeMask(HALF_YEAR, QUARTER_YEAR, SEASON)));
-		TIMEX_IMPLICATURES.add(new Implicature(makeMask(HOUR), makeMask(PART_OF_DAY)));
-		TIMEX_IMPLICATURES.add(new Implicature(makeMask(DAY_OF_WEEK), makeMask(PART_OF_WEEK)));
+		List<Implicature> implicatures = new ArrayList<Implicature>(DEFAULT_IMPLICATURES);
+		implicatures.add(new Implicature(makeMask(YEAR), makeMask(CENTURY, DECADE, YEAR_UNIT)));
+		implicatures.add(new Implicature(makeMask(CENTURY, DECADE, YEAR_UNIT), makeMask(YEAR)));
+		implicatures.add(new Implicature(makeMask(MONTH), makeMask(HALF_YEAR, QUARTER_YEAR, SEASON)));
+		implicatures.add(new Implicature(makeMask(HOUR), makeMask(PART_OF_DAY)));
+		implicatures.add(new Implicature(makeMask(DAY_OF_WEEK), makeMask(PART_OF_WEEK)));
+		TIMEX_IMPLICATURES = new Implicatures(implicatures);
 	}
 	
 	private static final int PART_OF_YEAR_MASK = makeMask(MONTH, HALF_YEAR, QUARTER_YEAR, SEASON, WEEK_OF_YEAR);
@@ -117,50 +117,64 @@ public class TimexCalendar extends PartialCalendar {
 	}
 	
 	/**
-	 * 
+	 * Sets the fields given in a TIMEX3 value, scanning it once from the
+	 * left: [year]-[month, week, half, quarter or season]-[day or WE]T[hour
+	 * or part of day]:[minute]. Parts of the year may be given by digit,
+	 * with X for those unknown.
 	 * @param value
 	 * @return the field id of the lowest field parsed (even if unset)
 	 */
 	public int parseTimex(String value) {
-		if (value.matches("^\\d{4}.*")) {
-			set(YEAR, Integer.parseInt(value.substring(0, 4)));
+		return parseTimex(value, this, seasonOffset);
+	}
+	
+	/**
+	 * Sets the fields given in a TIMEX3 value on fields, as
+	 * {@link #parseTimex(String)} does.
+	 * @return the field id of the lowest field parsed (even if unset)
+	 */
+	static int parseTimex(String value, TimexFields fields, int seasonOffset) {
+		int n = value.length();
+		if (isDigits(value, 0, 4)) {
+			fields.set(YEAR, parseDigits(value, 0, 4));
 		}
 		else {
-			if (value.matches("^\\d{2}.*")) {
-				set(CENTURY, Integer.parseInt(value.substring(0, 2)));
+			if (isDigits(value, 0, 2)) {
+				fields.set(CENTURY, parseDigits(value, 0, 2));
 			}
-			if (value.matches("^[X0-9]{2}\\d.*")) {
-				set(DECADE, Integer.parseInt(value.substring(2, 3)));
+			if (isYearDigits(value, 0, 2) && isDigits(value, 2, 1)) {
+				fields.set(DECADE, parseDigits(value, 2, 1));
 			}
-			if (value.matches("^[X0-9]{3}\\d.*")) {
-				set(YEAR_UNIT, Integer.parseInt(value.substring(3, 4)));
+			if (isYearDigits(value, 0, 3) && isDigits(value, 3, 1)) {
+				fields.set(YEAR_UNIT, parseDigits(value, 3, 1));
 			}
 		}
-		if (value.length() < 5) {
+		if (n < 5) {
 			return YEAR;
 		}
 		
-		// Trim off processed data
-		value = value.substring(5);
-		if (value.matches("^\\d{2}.*")) {
-			set(MONTH, Integer.parseInt(value.substring(0, 2)) - 1);
+		// Skip the year and its separator
+		int i = 5;
+		if (isDigits(value, i, 2)) {
+			fields.set(MONTH, parseDigits(value, i, 2) - 1);
 		}
-		else if (value.matches("^W\\d{2}.*")) {
-			set(WEEK_OF_YEAR, Integer.parseInt(value.substring(1, 3)));
+		else if (isChar(value, i, 'W') && isDigits(value, i + 1, 2)) {
+			fields.set(WEEK_OF_YEAR, parseDigits(value, i + 1, 2));
 		}
-		else if (value.matches("^H[1-2].*")) {
-			set(HALF_YEAR, "1".equals(value.substring(1, 2)) ? H1 : H2);
+		else if (isChar(value, i, 'H') && (isChar(value, i + 1, '1') || isChar(value, i + 1, '2'))) {
+			fields.set(HALF_YEAR, value.charAt(i + 1) == '1' ? H1 : H2);
 		}
-		else if (value.matches("^Q[1-4].*")) {
-			set(QUARTER_YEAR, Integer.parseInt(value.substring(1, 2)));
+		else if (isChar(value, i, 'Q') && i + 1 < n && value.charAt(i + 1) >= '1' && value.charAt(i + 1) <= '4') {
+			fields.set(QUARTER_YEAR, value.charAt(i + 1) - '0');
 		}
-		else if (value.matches("^(SP|SU|FA|WI)")) {
-			set(SEASON, seasonToInt(value.substring(0, 2)));
+		else if (n == i + 2 && indexOfCode(seasonCodes, value, i) >= 0) {
+			fields.set(SEASON, (indexOfCode(seasonCodes, value, i) + seasonOffset) % 4);
 			return SEASON;
 		}
 		
-		if (value.indexOf('-') < 0) {
-			switch(value.charAt(0)) {
+		int dash = value.indexOf('-', i);
+		if (dash < 0) {
+			switch(value.charAt(i)) {
 			case 'H':
 				return HALF_YEAR;
 			case 'Q':
@@ -172,29 +186,32 @@ public class TimexCalendar extends PartialCalendar {
 			}
 		}
 		
-		// Trim off processed data
-		value = value.substring(value.indexOf('-') + 1);
-		if (value.matches("^\\d{2}.*")) {
-			set(DAY_OF_MONTH, Integer.parseInt(value.substring(0, 2)));
+		// Skip to the day
+		i = dash + 1;
+		if (isDigits(value, i, 2)) {
+			fields.set(DAY_OF_MONTH, parseDigits(value, i, 2));
 		}
-		if (value.matches("WE.*")) {
-			set(PART_OF_WEEK, WEEKEND);
+		if (value.startsWith("WE", i)) {
+			fields.set(PART_OF_WEEK, WEEKEND);
 			return PART_OF_WEEK;
 		}
-		value = value.substring(2);
+		i += 2;
+		if (i > n) {
+			throw new StringIndexOutOfBoundsException("No day in timex value: " + value);
+		}
 		
-		if (!value.startsWith("T")) {
+		if (!isChar(value, i, 'T')) {
 			return DATE;
 		}
-		if (value.matches("^T\\d{2}.*")) {
-			set(HOUR_OF_DAY, Integer.parseInt(value.substring(1, 3)));
+		if (isDigits(value, i + 1, 2)) {
+			fields.set(HOUR_OF_DAY, parseDigits(value, i + 1, 2));
 		}
-		else if (value.matches("^T(MO|MD|AF|EV|NI).*")) {
-			set(PART_OF_DAY, partOfDayToInt(value.substring(1, 3)));
+		else if (indexOfCode(partOfDayCodes, value, i + 1) >= 0) {
+			fields.set(PART_OF_DAY, indexOfCode(partOfDayCodes, value, i + 1));
 			return PART_OF_DAY;
 		}
-		if (value.matches("^T\\d{2}:\\d{2}.*")) {
-			set(MINUTE, Integer.parseInt(value.substring(4, 6)));
+		if (isDigits(value, i + 1, 2) && isChar(value, i + 3, ':') && isDigits(value, i + 4, 2)) {
+			fields.set(MINUTE, parseDigits(value, i + 4, 2));
 		}
 		else {
 			return HOUR_OF_DAY;
@@ -202,6 +219,62 @@ public class TimexCalendar extends PartialCalendar {
 		// TODO: handle second, millisecond
 		return MINUTE;
 	}
+
+	private static boolean isChar(String value, int i, char c) {
+		return i < value.length() && value.charAt(i) == c;
+	}
+
+	/**
+	 * @return whether value has length ASCII digits at start
+	 */
+	private static boolean isDigits(String value, int start, int length) {
+		if (start + length > value.length()) {
+			return false;
+		}
+		for (int i = start; i < start + length; i++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return whether value has length digits or Xs at start
+	 */
+	private static boolean isYearDigits(String value, int start, int length) {
+		if (start + length > value.length()) {
+			return false;
+		}
+		for (int i = start; i < start + length; i++) {
+			char c = value.charAt(i);
+			if ((c < '0' || c > '9') && c != 'X') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int parseDigits(String value, int start, int length) {
+		int res = 0;
+		for (int i = start; i < start + length; i++) {
+			res = res * 10 + (value.charAt(i) - '0');
+		}
+		return res;
+	}
+
+	/**
+	 * @return the index of the two-letter code at start of value in codes, or -1
+	 */
+	private static int indexOfCode(List<String> codes, String value, int start) {
+		for (int i = 0; i < codes.size(); i++) {
+			if (value.startsWith(codes.get(i), start)) {
+				return i;
+			}
+		}
+		return -1;
+	}
 	
 	public void update(TimexCalendar other, int lowestField) {
 		parseTimex(other.toString(lowestField));
@@ -224,6 +297,10 @@ public class TimexCalendar extends PartialCalendar {
 	}
 	
 	public String seasonToString(int value) {
+		return seasonToString(value, seasonOffset);
+	}
+	
+	static String seasonToString(int value, int seasonOffset) {
 		value += (4 - seasonOffset);
 		return seasonCodes.get(value % 4); 
 	}
@@ -232,121 +309,225 @@ public class TimexCalendar extends PartialCalendar {
 		return partOfDayCodes.get(value); 
 	}
 	
-	private String pad2(int val) {
-		return String.format("%02d", val);
+	/**
+	 * Appends value in decimal, padded with zeros to width characters, as
+	 * String.format("%0<width>d", value) would.
+	 */
+	static void appendPadded(StringBuilder out, int value, int width) {
+		long v = value;
+		if (v < 0) {
+			out.append('-');
+			v = -v;
+			width--;
+		}
+		int digits = 1;
+		for (long power = 10; power <= v; power *= 10) {
+			digits++;
+		}
+		for (; digits < width; digits++) {
+			out.append('0');
+		}
+		out.append(v);
+	}
+	
+	private static boolean has(int mask, int field) {
+		return (mask & (1 << field)) != 0;
 	}
 	
 	public String toFullString() {
-		StringBuilder res = new StringBuilder();
-		if (has(YEAR)) {
-			res.append(String.format("%04d", get(YEAR)));
+		StringBuilder res = new StringBuilder(19);
+		appendFull(res, this, fieldMask, seasonOffset);
+		return res.toString();
+	}
+	
+	/**
+	 * Appends the value of all fields in mask, with X for those not in it.
+	 */
+	private static void appendFull(StringBuilder res, TimexFields fields, int mask, int seasonOffset) {
+		if (has(mask, YEAR)) {
+			appendPadded(res, fields.get(YEAR), 4);
 		}
 		else {
-			res.append(has(CENTURY) ? pad2(get(CENTURY)) : "XX");
-			res.append(has(DECADE) ? get(DECADE) : "X");
-			res.append(has(YEAR_UNIT) ? get(YEAR_UNIT) : "X");
+			if (has(mask, CENTURY)) {
+				appendPadded(res, fields.get(CENTURY), 2);
+			}
+			else {
+				res.append("XX");
+			}
+			if (has(mask, DECADE)) {
+				res.append(fields.get(DECADE));
+			}
+			else {
+				res.append('X');
+			}
+			if (has(mask, YEAR_UNIT)) {
+				res.append(fields.get(YEAR_UNIT));
+			}
+			else {
+				res.append('X');
+			}
 		}
 		res.append('-');
-		if (has(MONTH)) {
-			res.append(pad2(get(MONTH) + 1));
+		if (has(mask, MONTH)) {
+			appendPadded(res, fields.get(MONTH) + 1, 2);
 		}
-		else if (has(WEEK_OF_YEAR)) {
-			res.append("W" + pad2(get(WEEK_OF_YEAR)));
-			if (has(PART_OF_WEEK) && get(PART_OF_WEEK) == WEEKEND) { 
+		else if (has(mask, WEEK_OF_YEAR)) {
+			res.append('W');
+			appendPadded(res, fields.get(WEEK_OF_YEAR), 2);
+			if (has(mask, PART_OF_WEEK) && fields.get(PART_OF_WEEK) == WEEKEND) { 
 				res.append("-WE");
 			}
-			return res.toString();
+			return;
 		}
-		else if (has(SEASON)) {
-			res.append(seasonToString(get(SEASON)));
-			return res.toString();
+		else if (has(mask, SEASON)) {
+			res.append(seasonToString(fields.get(SEASON), seasonOffset));
+			return;
 		}
-		else if (has(QUARTER_YEAR)) {
-			res.append("Q" + get(QUARTER_YEAR));
-			return res.toString();
+		else if (has(mask, QUARTER_YEAR)) {
+			res.append('Q').append(fields.get(QUARTER_YEAR));
+			return;
 		}
-		else if (has(HALF_YEAR)) {
-			res.append("H" + get(HALF_YEAR));
-			return res.toString();
+		else if (has(mask, HALF_YEAR)) {
+			res.append('H').append(fields.get(HALF_YEAR));
+			return;
 		}
 		else {
 			res.append("XX");
 		}
 
-		res.append('-' + (has(DATE) ? pad2(get(DATE)) : "XX"));
+		res.append('-');
+		appendPaddedOrX(res, fields, mask, DATE);
 		
-		if (has(HOUR_OF_DAY)) {
-			res.append('T' + pad2(get(HOUR_OF_DAY)));
+		if (has(mask, HOUR_OF_DAY)) {
+			res.append('T');
+			appendPadded(res, fields.get(HOUR_OF_DAY), 2);
 		}
-		else if (has(PART_OF_DAY)) {
-			res.append("T" + partOfDayToString(get(PART_OF_DAY)));
-			return res.toString();
+		else if (has(mask, PART_OF_DAY)) {
+			res.append('T').append(partOfDayCodes.get(fields.get(PART_OF_DAY)));
+			return;
 		}
 		else {
 			res.append("TXX");
 		}
 		
-		res.append(':' + (has(MINUTE) ? pad2(get(MINUTE)) : "XX"));
-		res.append(':' + (has(SECOND) ? pad2(get(SECOND)) : "XX"));
-		return res.toString();
+		res.append(':');
+		appendPaddedOrX(res, fields, mask, MINUTE);
+		res.append(':');
+		appendPaddedOrX(res, fields, mask, SECOND);
+	}
+	
+	private static void appendPaddedOrX(StringBuilder res, TimexFields fields, int mask, int field) {
+		if (has(mask, field)) {
+			appendPadded(res, fields.get(field), 2);
+		}
+		else {
+			res.append("XX");
+		}
 	}
 	
 	public String toString() {
 		return toString(lowestField);
 	}
 	
-	private static final Map<Integer, Integer> endOffset;
+	// the length of the value down to each field, or 0 where it varies
+	private static final int[] endOffset = new int[FIELD_COUNT + 8];
 	static {
-		endOffset = new HashMap<Integer, Integer>();
-		endOffset.put(CENTURY, 2);
-		endOffset.put(DECADE, 3);
-		endOffset.put(YEAR, 4);
-		endOffset.put(YEAR_UNIT, 4);
-		endOffset.put(MONTH, 7);
-		endOffset.put(DATE, 10);
-		endOffset.put(DAY_OF_WEEK, 10); //?
-		endOffset.put(HOUR_OF_DAY, 13);
-		endOffset.put(MINUTE, 16);
-	}
-	
-	private String toStringMasked(int mask) {
-		int tmpFieldMask = fieldMask;
-		fieldMask &= mask;
-		String res = toFullString();
-		fieldMask = tmpFieldMask;
-		return res;
+		endOffset[CENTURY] = 2;
+		endOffset[DECADE] = 3;
+		endOffset[YEAR] = 4;
+		endOffset[YEAR_UNIT] = 4;
+		endOffset[MONTH] = 7;
+		endOffset[DATE] = 10;
+		endOffset[DAY_OF_WEEK] = 10; //?
+		endOffset[HOUR_OF_DAY] = 13;
+		endOffset[MINUTE] = 16;
 	}
 	
 	public String toString(int lowestField) {
+		StringBuilder res = new StringBuilder(19);
+		appendTo(res, lowestField);
+		return res.toString();
+	}
+	
+	/**
+	 * Appends the value of this calendar down to its lowest field to out.
+	 * @return out
+	 */
+	public StringBuilder appendTo(StringBuilder out) {
+		return appendTo(out, lowestField);
+	}
+	
+	/**
+	 * Appends the value of this calendar down to lowestField to out, as
+	 * {@link #toString(int)} returns it.
+	 * @return out
+	 */
+	public StringBuilder appendTo(StringBuilder out, int lowestField) {
+		return appendTo(out, this, fieldMask, lowestField, seasonOffset);
+	}
+	
+	/**
+	 * Appends the value of fields down to lowestField to out, as
+	 * {@link #appendTo(StringBuilder, int)} does for a calendar with the
+	 * given fieldMask.
+	 * @return out
+	 */
+	static StringBuilder appendTo(StringBuilder out, TimexFields fields, int fieldMask, int lowestField,
+			int seasonOffset) {
+		int start = out.length();
 		int lowestMask = makeMask(lowestField);
-		if (endOffset.containsKey(lowestField)) {
-			return toStringMasked(~EARLY_END_MASK).substring(0, endOffset.get(lowestField));
+		if (lowestField < endOffset.length && endOffset[lowestField] > 0) {
+			appendFull(out, fields, fieldMask & ~EARLY_END_MASK, seasonOffset);
+			out.setLength(start + endOffset[lowestField]);
 		}
 		else if ((lowestMask & PART_OF_YEAR_MASK) != 0) {
-			String res = toStringMasked(~(PART_OF_YEAR_MASK | PART_OF_WEEK_MASK) | lowestMask);
-			if (res.charAt(5) == 'X') {
+			appendFull(out, fields, fieldMask & (~(PART_OF_YEAR_MASK | PART_OF_WEEK_MASK) | lowestMask), seasonOffset);
+			if (out.charAt(start + 5) == 'X') {
 				switch (lowestField) {
 				case WEEK_OF_YEAR:
-					return res.substring(0, 5) + "WXX";
+					out.setLength(start + 5);
+					out.append("WXX");
+					break;
 				case SEASON:
-					return res.substring(0, 5) + "XX"; // ??
+					out.setLength(start + 5);
+					out.append("XX"); // ??
+					break;
 				case HALF_YEAR:
-					return res.substring(0, 5) + "HX";
+					out.setLength(start + 5);
+					out.append("HX");
+					break;
 				case QUARTER_YEAR:
-					return res.substring(0, 5) + "QX";
+					out.setLength(start + 5);
+					out.append("QX");
+					break;
 				}
 			}
-			return res;
 		}
 		else if (lowestField == PART_OF_WEEK) {
-			return toStringMasked(~(PART_OF_YEAR_MASK | PART_OF_WEEK_MASK) | (1 << WEEK_OF_YEAR) | lowestMask);
+			appendFull(out, fields, fieldMask & (~(PART_OF_YEAR_MASK | PART_OF_WEEK_MASK) | (1 << WEEK_OF_YEAR) | lowestMask), seasonOffset);
 		}
 		else if ((lowestMask & PART_OF_DAY_MASK) != 0) {
-			String res = toStringMasked(~(PART_OF_DAY_MASK) | lowestMask);
 			// ??
-			return res;
+			appendFull(out, fields, fieldMask & (~(PART_OF_DAY_MASK) | lowestMask), seasonOffset);
 		}
-		throw new IllegalArgumentException("Unsupported lowest field: " + lowestField);
+		else {
+			throw new IllegalArgumentException("Unsupported lowest field: " + lowestField);
+		}
+		return out;
+	}
+	
+	/**
+	 * Appends the value of this calendar down to its lowest field to out.
+	 * @return out
+	 */
+	public Appendable appendTo(Appendable out) throws IOException {
+		if (out instanceof StringBuilder) {
+			appendTo((StringBuilder) out);
+		}
+		else {
+			out.append(appendTo(new StringBuilder(19)));
+		}
+		return out;
 	}
 	
 	/* Note: compares only on commonly set fields */
@@ -537,6 +718,7 @@ public class TimexCalendar extends PartialCalendar {
 				else if (value == WEEKEND) {
 					super.set(DAY_OF_WEEK, SATURDAY);
 				}
+				break;
 				
 			case PART_OF_DAY:
 				switch (value) {
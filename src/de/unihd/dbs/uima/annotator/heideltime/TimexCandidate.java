@@ -0,0 +1,70 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+import org.cleartk.token.type.Sentence;
+
+/**
+ * A temporal expression found by a rule, before it is added to the CAS.
+ */
+public class TimexCandidate {
+	final int begin;
+	final int end;
+	final Sentence sentence;
+	final String value;
+	final String quant;
+	final String freq;
+	final String mod;
+	final String foundByRule;
+	/**
+	 * The number of the candidate in its document, which orders candidates
+	 * and is rendered as the timex id, or -1 until numbered.
+	 */
+	int id = -1;
+
+	public TimexCandidate(int begin, int end, Sentence sentence, String value, String quant,
+			String freq, String mod, String foundByRule) {
+		this.begin = begin;
+		this.end = end;
+		this.sentence = sentence;
+		this.value = value;
+		this.quant = quant;
+		this.freq = freq;
+		this.mod = mod;
+		this.foundByRule = foundByRule;
+	}
+
+	public int getBegin() {
+		return begin;
+	}
+
+	public int getEnd() {
+		return end;
+	}
+
+	public String getValue() {
+		return value;
+	}
+
+	public String getFoundByRule() {
+		return foundByRule;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @return the id of the timex annotation for this candidate
+	 */
+	public String getTimexId() {
+		return formatTimexId(id);
+	}
+
+	public static String formatTimexId(int id) {
+		return "t" + id;
+	}
+
+	@Override
+	public String toString() {
+		return "TimexCandidate[" + begin + ", " + end + ", " + value + ", " + foundByRule + "]";
+	}
+}
@@ -0,0 +1,12 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+/**
+ * The fields of a date and time which a TIMEX3 value is parsed into or
+ * formatted from, numbered as in {@link TimexCalendar}.
+ */
+interface TimexFields {
+
+	int get(int field);
+
+	void set(int field, int value);
+}
@@ -3,7 +3,10 @@ package de.unihd.dbs.uima.annotator.heideltime;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -13,19 +16,25 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.uima.UIMAFramework;
-import org.apache.uima.cas.FSIterator;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.util.Level;
 import org.apache.uima.util.Logger;
 
-import org.cleartk.token.type.Token;
 import org.cleartk.token.type.Sentence;
 
+import de.unihd.dbs.uima.annotator.heideltime.regex.BacktrackingRisk;
+import de.unihd.dbs.uima.annotator.heideltime.regex.BudgetedCharSequence;
+import de.unihd.dbs.uima.annotator.heideltime.regex.RegexParser;
+import de.unihd.dbs.uima.annotator.heideltime.regex.RuleAutomaton;
+import de.unihd.dbs.uima.annotator.heideltime.substitutions.CompiledExpression;
 import de.unihd.dbs.uima.annotator.heideltime.substitutions.Expression;
+import de.unihd.dbs.uima.annotator.heideltime.substitutions.MatchGroups;
 import de.unihd.dbs.uima.annotator.heideltime.substitutions.SubstitutionParser;
 import de.unihd.dbs.uima.types.heideltime.Timex3;
 
-public class TimexRuleMatcher {
+public class TimexRuleMatcher implements Serializable {
+	private static final long serialVersionUID = 1L;
+
 	String timexType;
 	List<RulePattern> patterns; // Sorted by value
 	Map<String, Expression>  hmNormalization;
@@ -34,22 +43,200 @@ public class TimexRuleMatcher {
 	Map<String, Expression>  hmMod;
 	Map<String, List<PosConstraint>>  hmPosConstraint;
 	Map<String, OffsetPair>  hmOffset;
-	Logger logger;
+	RulePrefilter prefilter; // may be null
+	transient RuleNormalizer[] normalizers; // for each of patterns
+	transient RuleAutomaton automaton; // may be null; not kept in rule bundles
+	transient ThreadLocal<MatchState> matchState = newMatchState();
+	transient Logger logger;
 	
-	class RulePattern implements Comparable<RulePattern> {
+	class RulePattern implements Comparable<RulePattern>, Serializable {
+		private static final long serialVersionUID = 1L;
 		Pattern pattern;
 		String name;
+		String extraction; // with variables marked for analysis; may be null
 		public RulePattern(String name, Pattern pattern) {
+			this(name, pattern, null);
+		}
+		
+		public RulePattern(String name, Pattern pattern, String extraction) {
 			this.name = name;
 			this.pattern = pattern;
+			this.extraction = extraction;
 		}
 		
 		public int compareTo(RulePattern other) {
 			return this.name.compareTo(other.name);
 		}
 	}
+
+	/**
+	 * The normalization, constraints and offset of one rule, looked up once
+	 * rather than by rule name for each match. Normalized attributes are
+	 * cached by the text of the match groups they read, since the same
+	 * expressions recur throughout a collection, and are otherwise evaluated
+	 * by their compiled expressions where possible.
+	 */
+	class RuleNormalizer {
+		final String name;
+		final Expression value; // may be null
+		final Expression quant; // may be null, as may freq and mod
+		final Expression freq;
+		final Expression mod;
+		final List<PosConstraint> posConstraints; // may be null
+		final OffsetPair offset; // may be null
+		final int[] groups; // read by the attributes; null if they may not be cached
+		final LruCache<String, String[]> cache;
+		// value, quant, freq and mod, each compiled if possible
+		final Expression[] attributes;
+
+		RuleNormalizer(String name) {
+			this.name = name;
+			value = hmNormalization.get(name);
+			quant = hmQuant.get(name);
+			freq = hmFreq.get(name);
+			mod = hmMod.get(name);
+			attributes = new Expression[] {value, quant, freq, mod};
+			for (int k = 0; k < attributes.length; k++) {
+				CompiledExpression compiled = attributes[k] == null ? null : CompiledExpression.compile(attributes[k]);
+				if (compiled != null) {
+					attributes[k] = compiled;
+				}
+			}
+			posConstraints = hmPosConstraint.get(name);
+			offset = hmOffset.get(name);
+
+			BitSet read = new BitSet();
+			boolean cacheable = true;
+			for (Expression e : new Expression[] {value, quant, freq, mod}) {
+				if (e != null && !MatchGroups.collect(e, read)) {
+					cacheable = false;
+				}
+			}
+			if (cacheable) {
+				groups = new int[read.cardinality()];
+				for (int g = read.nextSetBit(0), k = 0; g >= 0; g = read.nextSetBit(g + 1)) {
+					groups[k++] = g;
+				}
+				cache = new LruCache<String, String[]>(NORMALIZATION_CACHE_SIZE);
+			} else {
+				groups = null;
+				cache = null;
+			}
+		}
+
+		/**
+		 * @param buffer may be used in evaluating the attributes
+		 * @return the value, quant, freq and mod of the timex for a match of
+		 *         a rule with a value expression
+		 */
+		String[] normalize(MatchResult r, StringBuilder buffer) {
+			if (cache == null) {
+				return evaluate(r, buffer);
+			}
+			String key = getCacheKey(r);
+			String[] res = cache.get(key);
+			if (res == null) {
+				res = evaluate(r, buffer);
+				cache.put(key, res);
+			}
+			return res;
+		}
+
+		private String[] evaluate(MatchResult r, StringBuilder buffer) {
+			String[] res = new String[attributes.length];
+			for (int k = 0; k < attributes.length; k++) {
+				Expression e = attributes[k];
+				if (e == null) {
+					res[k] = "";
+				} else if (e instanceof CompiledExpression) {
+					buffer.setLength(0);
+					((CompiledExpression) e).appendTo(r, buffer);
+					res[k] = buffer.toString();
+				} else {
+					res[k] = e.evaluate(r).toString();
+				}
+			}
+			res[0] = correctDurationValue(res[0]);
+			return res;
+		}
+
+		private String getCacheKey(MatchResult r) {
+			StringBuilder key = new StringBuilder();
+			for (int g : groups) {
+				String text = r.group(g);
+				if (text == null) {
+					key.append('-');
+				} else {
+					key.append(text.length()).append(':').append(text);
+				}
+			}
+			return key.toString();
+		}
+	}
+
+	/**
+	 * The mutable state used in matching, kept per thread so that sentences
+	 * may be matched concurrently.
+	 */
+	class MatchState {
+		Matcher[] matchers = new Matcher[patterns.size()];
+		RuleAutomaton automaton = TimexRuleMatcher.this.automaton == null ? null : TimexRuleMatcher.this.automaton.copy();
+		BudgetedCharSequence budgeted = new BudgetedCharSequence();
+		StringBuilder normalized = new StringBuilder(); // for evaluating normalizations
+
+		/**
+		 * @return a matcher for the i-th rule over text finding matches
+		 *         within start and end, while lookaround and boundaries
+		 *         still see the text around them
+		 */
+		Matcher matcher(int i, CharSequence text, int start, int end) {
+			Matcher matcher = matchers[i];
+			if (matcher == null) {
+				matcher = matchers[i] = patterns.get(i).pattern.matcher(text);
+				matcher.useTransparentBounds(true);
+				matcher.useAnchoringBounds(false);
+			} else {
+				matcher.reset(text);
+			}
+			matcher.region(start, end);
+			return matcher;
+		}
+	}
+
+	/**
+	 * Collects a timex candidate for each match of a rule in a sentence.
+	 */
+	class RuleMatchHandler implements MatchHandler {
+		final Sentence s;
+		final TokenIndex tokens;
+		final List<TimexCandidate> candidates = new ArrayList<TimexCandidate>();
+		final StringBuilder buffer;
+		RuleNormalizer rule;
+		// Counts for the current rule
+		int matches;
+		int posRejections;
+
+		public RuleMatchHandler(Sentence s, TokenIndex tokens, StringBuilder buffer) {
+			this.s = s;
+			this.tokens = tokens;
+			this.buffer = buffer;
+		}
+
+		public void handle(MatchResult r) {
+			matches++;
+			if (!checkPosConstraint(s, rule.posConstraints, r, tokens)) {
+				posRejections++;
+				return;
+			}
+			TimexCandidate candidate = processRuleMatch(rule, r, s, buffer);
+			if (candidate != null) {
+				candidates.add(candidate);
+			}
+		}
+	}
 	
-	class PosConstraint {
+	class PosConstraint implements Serializable {
+		private static final long serialVersionUID = 1L;
 		int group;
 		String pos;
 
@@ -59,7 +246,8 @@ public class TimexRuleMatcher {
 		}
 	}
 
-	class OffsetPair {
+	class OffsetPair implements Serializable {
+		private static final long serialVersionUID = 1L;
 		int beginGroup;
 		int endGroup;
 		
@@ -83,6 +271,12 @@ public class TimexRuleMatcher {
 	static final Pattern paReadRules = Pattern.compile("RULENAME=\"(.*?)\",EXTRACTION=\"(.*?)\",NORM_VALUE=\"(.*?)\"(.*)");
 	static final Pattern paPosConstraint = Pattern.compile("group\\(([0-9]+)\\):(.*?):");
 	static final Pattern paOffsetPair = Pattern.compile("group\\(([0-9]+)\\)-group\\(([0-9]+)\\)");
+	static final int NORMALIZATION_CACHE_SIZE = 64; // per rule
+	/**
+	 * The fewest characters by which the windows a sentence is matched in
+	 * overlap, which is more than the longest timex of the rules provided.
+	 */
+	public static final int MIN_WINDOW_OVERLAP = 64;
 	
 	public TimexRuleMatcher(String timexType, List<RulePattern> patterns,
 			Map<String, Expression> hmNormalization,
@@ -99,6 +293,7 @@ public class TimexRuleMatcher {
 		this.hmMod = hmMod;
 		this.hmPosConstraint = hmPosConstraint;
 		logger = UIMAFramework.getLogger(TimexRuleMatcher.class);
+		compileNormalizers();
 	}
 
 	private TimexRuleMatcher(String timexType) {
@@ -113,6 +308,10 @@ public class TimexRuleMatcher {
 	throws IOException {
 		this(timexType);
 		SubstitutionParser subParser = new SubstitutionParser(hmAllNormalization);
+		Map<String, String> hmVariables = new HashMap<String, String>();
+		for (String name : hmAllRePattern.keySet()) {
+			hmVariables.put(name, RegexParser.variable(name));
+		}
 		BufferedReader br = new BufferedReader(istream);
 		for ( String line; (line=br.readLine()) != null; ){
 			if (line.startsWith("//") || line.equals("")) {
@@ -120,25 +319,90 @@ public class TimexRuleMatcher {
 			}
 			logger.log(Level.FINE, "DEBUGGING: reading rules..."+ line);
 			// check each line for the name, extraction, and normalization part
-			if (!readRule(line, hmAllRePattern, subParser)) {
+			if (!readRule(line, hmAllRePattern, hmVariables, subParser)) {
 				logger.log(Level.WARNING, "Cannot read the following line of " + timexType + "rules \nLine: "+line);
 			}
 		}
 		Collections.sort(patterns);
+		compileNormalizers();
+		
+		List<String> extractions = new ArrayList<String>();
+		for (RulePattern rulePattern : patterns) {
+			extractions.add(rulePattern.extraction);
+		}
+		prefilter = new RulePrefilter(extractions, hmAllRePattern);
+
+		for (RulePattern rulePattern : patterns) {
+			String risk = null;
+			try {
+				risk = BacktrackingRisk.find(RegexParser.parse(rulePattern.pattern.pattern()));
+			} catch (IllegalArgumentException e) {
+				// not analysable
+			}
+			if (risk != null) {
+				logger.log(Level.WARNING, "Rule " + rulePattern.name
+						+ " may backtrack excessively on long runs of characters: " + risk);
+			}
+		}
 	}
 	
-	private Pattern buildExtractionPattern(String rule_extraction, Map<String, String> hmAllRePattern) {
-		// Substitute %xxxx expressions
+	/**
+	 * Whether to scan each sentence with a single automaton compiled from all
+	 * rules, and run only those rules' patterns which it finds may match.
+	 */
+	public void setUseAutomaton(boolean useAutomaton) {
+		if (!useAutomaton) {
+			automaton = null;
+		} else {
+			List<String> regexes = new ArrayList<String>();
+			for (RulePattern rulePattern : patterns) {
+				regexes.add(rulePattern.pattern.pattern());
+			}
+			automaton = new RuleAutomaton(regexes);
+		}
+		matchState.remove();
+	}
+
+	private ThreadLocal<MatchState> newMatchState() {
+		return new ThreadLocal<MatchState>() {
+			@Override
+			protected MatchState initialValue() {
+				return new MatchState();
+			}
+		};
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		matchState = newMatchState();
+		logger = UIMAFramework.getLogger(TimexRuleMatcher.class);
+		compileNormalizers();
+	}
+
+	private void compileNormalizers() {
+		normalizers = new RuleNormalizer[patterns.size()];
+		for (int i = 0; i < patterns.size(); i++) {
+			normalizers[i] = new RuleNormalizer(patterns.get(i).name);
+		}
+	}
+	
+	/**
+	 * Substitutes %xxxx expressions and generalises spaces to match all whitespace.
+	 */
+	static String expandExtraction(String rule_extraction, Map<String, String> hmValues) {
 		for (MatchResult mr : HeidelTime.findMatches(paVariable, rule_extraction)){
-			logger.log(Level.FINE, "DEBUGGING: replacing patterns..."+ mr.group());
-			String repl = hmAllRePattern.get(mr.group(1));
+			String repl = hmValues.get(mr.group(1));
 			if (repl == null) {
 				throw new IllegalArgumentException("Pattern not found: " + mr.group(1));
 			}
-			rule_extraction = rule_extraction.replaceAll("%"+mr.group(1), hmAllRePattern.get(mr.group(1)));
+			rule_extraction = rule_extraction.replaceAll("%"+mr.group(1), repl);
 		}
 		// Spaces match all whitespace
-		rule_extraction = rule_extraction.replaceAll(" ", "[\\\\s]+");
+		return rule_extraction.replaceAll(" ", "[\\\\s]+");
+	}
+	
+	private Pattern buildExtractionPattern(String rule_extraction, Map<String, String> hmAllRePattern) {
+		rule_extraction = expandExtraction(rule_extraction, hmAllRePattern);
 		
 		// Ensure word boundaries
 		rule_extraction = "\\b" + rule_extraction + "\\b(?![\\.,]\\d)";
@@ -147,7 +411,8 @@ public class TimexRuleMatcher {
 		return Pattern.compile(rule_extraction);
 	}
 
-	private boolean readRule(String line, Map<String, String> hmAllRePattern, SubstitutionParser subParser) {
+	private boolean readRule(String line, Map<String, String> hmAllRePattern, Map<String, String> hmVariables,
+			SubstitutionParser subParser) {
 		Matcher r = paReadRules.matcher(line);
 		if (!r.find()) {
 			return false;
@@ -164,7 +429,8 @@ public class TimexRuleMatcher {
 	
 		// get extraction part
 		try {
-				patterns.add(new RulePattern(rule_name, buildExtractionPattern(rule_extraction, hmAllRePattern)));	
+				patterns.add(new RulePattern(rule_name, buildExtractionPattern(rule_extraction, hmAllRePattern),
+						expandExtraction(rule_extraction, hmVariables)));
 		} catch (RuntimeException e) {
 			logger.log(Level.SEVERE, "Error constructing extraction pattern for rule " + rule_name);
 			throw e;
@@ -218,48 +484,223 @@ public class TimexRuleMatcher {
 	 * @return the number of timexes found
 	 */
 	public int findTimexes(Sentence s, JCas jcas, IdGenerator idGen) {
-		int nAdded = 0;
+		return findTimexes(s, s.getCoveredText(), new TokenIndex(jcas, s), jcas, idGen);
+	}
+
+	/**
+	 * Apply the extraction rules, normalization rules
+	 * @param s
+	 * @param text the covered text of s, which may be shared between matchers
+	 * @param tokens an index including the tokens of s
+	 * @param jcas
+	 * @return the number of timexes found
+	 */
+	public int findTimexes(Sentence s, String text, TokenIndex tokens, JCas jcas, IdGenerator idGen) {
+		return findTimexes(s, text, tokens, jcas, idGen, MatchOptions.DEFAULT);
+	}
+
+	/**
+	 * Apply the extraction rules, normalization rules, with the given options.
+	 * @param s
+	 * @param text the covered text of s, which may be shared between matchers
+	 * @param tokens an index including the tokens of s
+	 * @param jcas
+	 * @param options
+	 * @return the number of timexes found
+	 */
+	public int findTimexes(Sentence s, String text, TokenIndex tokens, JCas jcas, IdGenerator idGen,
+			MatchOptions options) {
+		List<TimexCandidate> found = findCandidates(s, text, tokens, options);
+		addTimexes(found, jcas, idGen);
+		return found.size();
+	}
+
+	/**
+	 * Apply the extraction rules, normalization rules, without changing the CAS.
+	 * This may be called concurrently from different threads.
+	 * @param s
+	 * @param text the covered text of s
+	 * @param tokens an index including the tokens of s
+	 * @return the timexes found, in the order in which they should be added
+	 */
+	public List<TimexCandidate> findCandidates(Sentence s, String text, TokenIndex tokens) {
+		return findCandidates(s, text, tokens, MatchOptions.DEFAULT);
+	}
+
+	/**
+	 * Apply the extraction rules, normalization rules, with the given options,
+	 * without changing the CAS.
+	 * This may be called concurrently from different threads.
+	 *
+	 * If the sentence is longer than the window size, each rule is matched in
+	 * windows overlapping by a quarter of their size, but by at least
+	 * {@link #MIN_WINDOW_OVERLAP} characters, so that windows may be larger
+	 * than asked for. A window only keeps the matches starting before the
+	 * next window, and the next window resumes after the end of the last
+	 * match kept, so a match is only found once. Where matching reached the
+	 * end of a window, so that a match found, or one not found, might be
+	 * longer in the whole sentence, that match is not kept and the next
+	 * window resumes from there, though from no earlier than the start of
+	 * this window. Matches are thus as in the whole sentence as long as they
+	 * are no longer than a window. Lookaround and boundaries still see the
+	 * text beyond a window.
+	 * @param s
+	 * @param text the covered text of s
+	 * @param tokens an index including the tokens of s
+	 * @param options
+	 * @return the timexes found, in the order in which they should be added
+	 */
+	public List<TimexCandidate> findCandidates(Sentence s, String text, TokenIndex tokens, MatchOptions options) {
+		MatchState state = matchState.get();
+		RuleMatchHandler handler = new RuleMatchHandler(s, tokens, state.normalized);
 		// Iterator over the rules by sorted by the name of the rules
 		// this is important since later, the timexId will be used to
 		// decide which of two expressions shall be removed if both
 		// have the same offset
-		for (RulePattern rulePattern : patterns) {
-			for (MatchResult r : HeidelTime.findMatches(rulePattern.pattern, s.getCoveredText())) {
-				if (processRuleMatch(rulePattern.name, r, s, jcas, idGen)) {
-					nAdded++;
+		RulePrefilter.Candidates candidates = null;
+		if (prefilter != null) {
+			candidates = prefilter.candidates(text);
+		}
+		BitSet matching = null;
+		if (state.automaton != null) {
+			matching = state.automaton.matchingRules(text);
+		}
+		CharSequence input = options.stepBudget > 0 ? state.budgeted : text;
+		int windowSize = options.windowSize > 0 && text.length() > options.windowSize ? options.windowSize : text.length();
+		int overlap = Math.max(windowSize / 4, MIN_WINDOW_OVERLAP);
+		int step = Math.max(windowSize - overlap, overlap);
+		for (int i = 0; i < patterns.size(); i++) {
+			if (candidates != null && !candidates.contains(i)) {
+				continue;
+			}
+			if (matching != null && !matching.get(i)) {
+				continue;
+			}
+			RulePattern rulePattern = patterns.get(i);
+			handler.rule = normalizers[i];
+			handler.matches = 0;
+			handler.posRejections = 0;
+			long startTime = options.statistics == null ? 0 : System.nanoTime();
+			boolean aborted = false;
+			// where the next match may start
+			int from = candidates == null ? 0 : candidates.getStart(i);
+			boolean lastWindow;
+			int windowStart = 0;
+			do {
+				int windowEnd = Math.min(windowStart + step + overlap, text.length());
+				lastWindow = windowEnd == text.length();
+				int nextWindowStart = lastWindow ? text.length() : windowStart + step;
+				if (from >= nextWindowStart) {
+					windowStart += step;
+					continue;
+				}
+				int nFound = handler.candidates.size();
+				int nMatches = handler.matches;
+				int nPosRejections = handler.posRejections;
+				try {
+					if (options.stepBudget > 0) {
+						state.budgeted.reset(text, options.stepBudget);
+					}
+					// from is before windowStart where matching is resumed from the last window
+					Matcher m = state.matcher(i, input, from, windowEnd);
+					while (m.find() && m.start() < nextWindowStart
+							&& (lastWindow || !m.hitEnd() || m.start() < windowStart)) {
+						handler.handle(m);
+						from = m.end();
+					}
+					if (!lastWindow && m.hitEnd()) {
+						// what was found from here may be cut short by the end of the window
+						from = Math.max(from, windowStart);
+					} else {
+						from = Math.max(from, nextWindowStart);
+					}
+				} catch (BudgetedCharSequence.BudgetExceededException e) {
+					// drop what the rule found in this window, rather than stall
+					aborted = true;
+					handler.candidates.subList(nFound, handler.candidates.size()).clear();
+					handler.matches = nMatches;
+					handler.posRejections = nPosRejections;
+					from = nextWindowStart;
+					logger.log(Level.WARNING, "Rule " + rulePattern.name + " exceeded the budget of " + options.stepBudget
+							+ " steps on the text at offset " + (s.getBegin() + windowStart) + "; its matches there are ignored");
 				}
+				windowStart += step;
+			} while (!lastWindow);
+			if (options.statistics != null) {
+				options.statistics.addScan(rulePattern.name, System.nanoTime() - startTime,
+						handler.matches, handler.posRejections, aborted);
 			}
 		}
-		return nAdded;
+		return handler.candidates;
+	}
+
+	/**
+	 * Adds timex annotations for candidates found by this matcher, in order.
+	 */
+	public void addTimexes(List<TimexCandidate> candidates, JCas jcas, IdGenerator idGen) {
+		for (TimexCandidate c : candidates) {
+			addTimexAnnotation(c.begin, c.end, c.sentence, c.value, c.quant, c.freq, c.mod,
+					idGen.next(), c.foundByRule, jcas);
+		}
 	}
 	
-	private boolean processRuleMatch(String ruleName, MatchResult r, Sentence s, JCas jcas, IdGenerator idGen) {
-		if (!checkPosConstraint(s, hmPosConstraint.get(ruleName), r, jcas)) {
-			return false;
+	/**
+	 * @return whether a DATE or TIME value needs to be specified relative to
+	 *         another date, so that its rule is marked "-relative", not "-explicit"
+	 */
+	private static boolean isRelative(String timexValue) {
+		return timexValue.startsWith("X") || timexValue.startsWith("UNDEF");
+	}
+
+	/**
+	 * @return the flags by which an {@link OverlapResolver} chooses between
+	 *         c and a candidate with the same span, as for the timex
+	 *         annotation c would be added as
+	 */
+	public int getOverlapFlags(TimexCandidate c) {
+		return getOverlapFlags(timexType, c.value);
+	}
+
+	/**
+	 * @return the flags by which an {@link OverlapResolver} chooses between
+	 *         a timex of timexType and value and another with the same span
+	 */
+	static int getOverlapFlags(String timexType, String value) {
+		int flags = 0;
+		if (timexType.equals("SET")) {
+			flags |= OverlapResolver.SET;
 		}
+		if (value.startsWith("UNDEF")) {
+			flags |= OverlapResolver.UNDEF;
+		}
+		if ((timexType.equals("DATE") || timexType.equals("TIME")) && !isRelative(value)) {
+			flags |= OverlapResolver.EXPLICIT;
+		}
+		return flags;
+	}
+
+	/**
+	 * @return the timex for a match satisfying the rule's POS constraint, or null
+	 */
+	private TimexCandidate processRuleMatch(RuleNormalizer rule, MatchResult r, Sentence s, StringBuilder buffer) {
 		// Offset of timex expression (in the checked sentence)
 		int timexStart = r.start();
 		int timexEnd   = r.end();
 	
 		// Any offset parameter?
-		if (hmOffset.containsKey(ruleName)){
-			OffsetPair offset = hmOffset.get(ruleName);
-			timexStart = r.start(offset.beginGroup);
-			timexEnd   = r.end(offset.endGroup);
+		if (rule.offset != null){
+			timexStart = r.start(rule.offset.beginGroup);
+			timexEnd   = r.end(rule.offset.endGroup);
 		}
 	
 		// Normalization Parameter
-		if (!hmNormalization.containsKey(ruleName)) {
-			logger.log(Level.WARNING, "SOMETHING REALLY WRONG HERE (could not find normalization pattern): "+ruleName);
-			return false;
+		if (rule.value == null) {
+			logger.log(Level.WARNING, "SOMETHING REALLY WRONG HERE (could not find normalization pattern): "+rule.name);
+			return null;
 		}
-		addTimexAnnotation(timexStart + s.getBegin(), timexEnd + s.getBegin(), s,
-				correctDurationValue(evaluateAttribute(hmNormalization, ruleName, r)),
-				evaluateAttribute(hmQuant, ruleName, r),
-				evaluateAttribute(hmFreq, ruleName, r),
-				evaluateAttribute(hmMod, ruleName, r),
-				idGen.next(), ruleName, jcas);
-		return true;
+		String[] attributes = rule.normalize(r, buffer);
+		return new TimexCandidate(timexStart + s.getBegin(), timexEnd + s.getBegin(), s,
+				attributes[0], attributes[1], attributes[2], attributes[3], rule.name);
 	}
 	
 	public List<PosConstraint> parsePosConstraintList(String input) {
@@ -279,6 +720,21 @@ public class TimexRuleMatcher {
 	 * @return
 	 */
 	public boolean checkPosConstraint(Sentence s, List<PosConstraint> constraints, MatchResult m, JCas jcas){
+		if (constraints == null) {
+			return true;
+		}
+		return checkPosConstraint(s, constraints, m, new TokenIndex(jcas, s));
+	}
+
+	/**
+	 * Check whether the part of speech constraint defined in a rule is satisfied.
+	 * @param s
+	 * @param posConstraint
+	 * @param m
+	 * @param tokens an index including the tokens of s
+	 * @return
+	 */
+	public boolean checkPosConstraint(Sentence s, List<PosConstraint> constraints, MatchResult m, TokenIndex tokens){
 		if (constraints == null) {
 			return true;
 		}
@@ -286,7 +742,7 @@ public class TimexRuleMatcher {
 		for (PosConstraint constraint : constraints) {
 			int tokenBegin = s.getBegin() + m.start(constraint.group);
 			int tokenEnd   = s.getBegin() + m.end(constraint.group);
-			String actualPos = getPosFromMatchResult(tokenBegin, tokenEnd, s, jcas);
+			String actualPos = getPosFromMatchResult(tokenBegin, tokenEnd, s, tokens);
 			if (constraint.pos.equals(actualPos)){
 				logger.log(Level.FINE, "POS CONSTRAINT IS VALID: pos should be "+ constraint.pos +" and is "+actualPos);
 			}
@@ -297,46 +753,12 @@ public class TimexRuleMatcher {
 		return true;
 	}
 
-	private String evaluateAttribute(Map<String, Expression> hm, String rule, MatchResult m){
-		if (hm.containsKey(rule)){
-			return hm.get(rule).evaluate(m).toString();
-		}
-		return "";
-	}
-
 	/**
 	 * Durations of a finer granularity are mapped to a coarser one if possible, e.g., "PT24H" -> "P1D".
-	 * One may add several further corrections.
+	 * @see DurationValue#normalize(String)
 	 */
 	public String correctDurationValue(String value) {
-		if (value.matches("PT[0-9]+H")){
-			for (MatchResult mr : HeidelTime.findMatches(Pattern.compile("PT([0-9]+)H"), value)){
-				int hours = Integer.parseInt(mr.group(1));
-				if ((hours % 24) == 0){
-					int days = hours / 24;
-					value = "P"+days+"D";
-				}
-			}
-		}
-		else if (value.matches("PT[0-9]+M")){
-			for (MatchResult mr : HeidelTime.findMatches(Pattern.compile("PT([0-9]+)M"), value)){
-				int minutes = Integer.parseInt(mr.group(1));
-				if ((minutes % 60) == 0){
-					int hours = minutes / 60;
-					value = "PT"+hours+"H";
-				}
-			}
-		}
-		else if (value.matches("P[0-9]+M")){
-			for (MatchResult mr : HeidelTime.findMatches(Pattern.compile("P([0-9]+)M"), value)){
-				int months = Integer.parseInt(mr.group(1));
-				if ((months % 12) == 0){
-					int years = months / 12;
-					value = "P"+years+"Y";
-				}
-			}
-		}
-		return value;
+		return DurationValue.normalize(value);
 	}
 
 	/**
@@ -348,13 +770,21 @@ public class TimexRuleMatcher {
 	 * @return
 	 */
 	public String getPosFromMatchResult(int tokBegin, int tokEnd, Sentence s, JCas jcas){
-		// TODO: precalculate tok.getBegin() -> tok.getPos() mapping for entire jcas to avoid repeated iteration
-		FSIterator iterTok = jcas.getAnnotationIndex(Token.type).subiterator(s);
-		while (iterTok.hasNext()){
-			Token token = (Token) iterTok.next();
-			if (token.getBegin() == tokBegin) {
-				return token.getPos();
-			}
+		return getPosFromMatchResult(tokBegin, tokEnd, s, new TokenIndex(jcas, s));
+	}
+
+	/**
+	 * Identify the part of speech (POS) of a MatchResult.
+	 * @param tokBegin
+	 * @param tokEnd
+	 * @param s
+	 * @param tokens an index including the tokens of s
+	 * @return
+	 */
+	public String getPosFromMatchResult(int tokBegin, int tokEnd, Sentence s, TokenIndex tokens){
+		int i = tokens.indexOfBegin(tokBegin);
+		if (i >= 0) {
+			return tokens.getPos(i);
 		}
 		logger.log(Level.WARNING, "POS not found at " + tokBegin + " in: \"" + s.getCoveredText() + "\"");
 		return "";
@@ -400,7 +830,7 @@ public class TimexRuleMatcher {
 		annotation.setTimexId(timexId);
 		annotation.setFoundByRule(foundByRule);
 		if ((timexType.equals("DATE")) || (timexType.equals("TIME"))){
-			if ((timexValue.startsWith("X")) || (timexValue.startsWith("UNDEF"))){
+			if (isRelative(timexValue)){
 				annotation.setFoundByRule(foundByRule+"-relative");
 			}else{
 				annotation.setFoundByRule(foundByRule+"-explicit");
@@ -0,0 +1,688 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * An immutable date and time of which only some fields are known, as given
+ * by a TIMEX3 value. It has the operations of {@link TimexCalendar} which are
+ * used to specify underspecified values, with fields numbered as there, but
+ * rather than wrapping a GregorianCalendar it packs its fields into two
+ * longs: one for the date and time, and one for which fields are set, the
+ * lowest field and the season offset.
+ * <p>
+ * Fields which are not set are taken from the time at which the value was
+ * created. Setting and adding to fields works as in a lenient
+ * GregorianCalendar with the week rules of the default locale, except that
+ * the time is local, without a time zone, seconds are not kept, and years
+ * before 1582 are Gregorian rather than Julian.
+ */
+public final class TimexValue {
+
+	static final int ERA = Calendar.ERA;
+	static final int YEAR = Calendar.YEAR;
+	static final int MONTH = Calendar.MONTH;
+	static final int WEEK_OF_YEAR = Calendar.WEEK_OF_YEAR;
+	static final int WEEK_OF_MONTH = Calendar.WEEK_OF_MONTH;
+	static final int DATE = Calendar.DATE;
+	static final int DAY_OF_YEAR = Calendar.DAY_OF_YEAR;
+	static final int DAY_OF_WEEK = Calendar.DAY_OF_WEEK;
+	static final int DAY_OF_WEEK_IN_MONTH = Calendar.DAY_OF_WEEK_IN_MONTH;
+	static final int AM_PM = Calendar.AM_PM;
+	static final int HOUR = Calendar.HOUR;
+	static final int HOUR_OF_DAY = Calendar.HOUR_OF_DAY;
+	static final int MINUTE = Calendar.MINUTE;
+	static final int CENTURY = TimexCalendar.CENTURY;
+	static final int DECADE = TimexCalendar.DECADE;
+	static final int YEAR_UNIT = TimexCalendar.YEAR_UNIT;
+	static final int HALF_YEAR = TimexCalendar.HALF_YEAR;
+	static final int QUARTER_YEAR = TimexCalendar.QUARTER_YEAR;
+	static final int SEASON = TimexCalendar.SEASON;
+	static final int PART_OF_DAY = TimexCalendar.PART_OF_DAY;
+	static final int PART_OF_WEEK = TimexCalendar.PART_OF_WEEK;
+
+	private static final int FIRST_DAY_OF_WEEK;
+	private static final int MINIMAL_DAYS_IN_FIRST_WEEK;
+	static {
+		Calendar cal = new GregorianCalendar();
+		FIRST_DAY_OF_WEEK = cal.getFirstDayOfWeek();
+		MINIMAL_DAYS_IN_FIRST_WEEK = cal.getMinimalDaysInFirstWeek();
+	}
+
+	private static final long MINUTES_PER_DAY = 24 * 60;
+	// the days from 0000-03-01 to 1970-01-01
+	private static final long EPOCH_OFFSET = 719468;
+	private static final long DAYS_PER_400_YEARS = 146097;
+
+	// year << 32 | month << 16 | day << 11 | hour << 6 | minute
+	private final long dateTime;
+	// seasonOffset << 40 | lowestField << 32 | fieldMask
+	private final long state;
+
+	private TimexValue(long dateTime, long state) {
+		this.dateTime = dateTime;
+		this.state = state;
+	}
+
+	/**
+	 * @return a value with only the era set, and the lowest field YEAR
+	 */
+	public static TimexValue now(boolean northernSeasons) {
+		long millis = System.currentTimeMillis();
+		long minutes = floorDiv(millis + TimeZone.getDefault().getOffset(millis), 60 * 1000);
+		int minuteOfDay = (int) floorMod(minutes, MINUTES_PER_DAY);
+		long dateTime = packDate(floorDiv(minutes, MINUTES_PER_DAY)) | (minuteOfDay / 60) << 6 | minuteOfDay % 60;
+		int fieldMask = TimexCalendar.TIMEX_IMPLICATURES.implied(1 << ERA);
+		return new TimexValue(dateTime, packState(fieldMask, YEAR, northernSeasons ? 0 : 2));
+	}
+
+	/**
+	 * @return the value given by a TIMEX3 value, as a new TimexCalendar
+	 *         would have it
+	 */
+	public static TimexValue parse(String timexValue, boolean northernSeasons) {
+		return now(northernSeasons).parse(timexValue);
+	}
+
+	/**
+	 * @return this value with the fields given by a TIMEX3 value set, and
+	 *         the lowest field given by it
+	 */
+	public TimexValue parse(String timexValue) {
+		Fields fields = new Fields(this);
+		fields.lowestField = TimexCalendar.parseTimex(timexValue, fields, getSeasonOffset());
+		return fields.toValue();
+	}
+
+	/**
+	 * @return this value with the fields of other down to lowestField set
+	 */
+	public TimexValue update(TimexValue other, int lowestField) {
+		Fields fields = new Fields(this);
+		TimexCalendar.parseTimex(other.toString(lowestField), fields, getSeasonOffset());
+		return fields.toValue();
+	}
+
+	public int getLowestField() {
+		return (int) (state >>> 32) & 0xFF;
+	}
+
+	public TimexValue withLowestField(int lowestField) {
+		return new TimexValue(dateTime, packState(getFieldMask(), lowestField, getSeasonOffset()));
+	}
+
+	public int getSeasonOffset() {
+		return (int) (state >>> 40) & 0xFF;
+	}
+
+	int getFieldMask() {
+		return (int) state;
+	}
+
+	public boolean has(int field) {
+		return (getFieldMask() & (1 << field)) != 0;
+	}
+
+	public int get(int field) {
+		return get(field, year(dateTime), month(dateTime), day(dateTime), hour(dateTime), minute(dateTime));
+	}
+
+	/**
+	 * @return this value with field set to value, and the fields it implies
+	 *         marked as set
+	 */
+	public TimexValue set(int field, int value) {
+		Fields fields = new Fields(this);
+		fields.set(field, value);
+		return fields.toValue();
+	}
+
+	/**
+	 * @return this value with amount added to field, as Calendar.add does;
+	 *         which fields are set is unchanged
+	 */
+	public TimexValue add(int field, int amount) {
+		if (amount == 0) {
+			return this;
+		}
+		switch (field) {
+		case CENTURY:
+			return addMonths(amount * 1200L);
+		case DECADE:
+			return addMonths(amount * 120L);
+		case YEAR:
+			return addMonths(amount * 12L);
+		case HALF_YEAR:
+			return addMonths(amount * 6L);
+		case QUARTER_YEAR:
+		case SEASON:
+			return addMonths(amount * 3L);
+		case MONTH:
+			return addMonths(amount);
+		case WEEK_OF_YEAR:
+		case WEEK_OF_MONTH:
+		case DAY_OF_WEEK_IN_MONTH:
+			return addMinutes(amount * 7 * MINUTES_PER_DAY);
+		case DATE:
+		case DAY_OF_YEAR:
+		case DAY_OF_WEEK:
+			return addMinutes(amount * MINUTES_PER_DAY);
+		case AM_PM:
+			return addMinutes(amount * 12 * 60L);
+		case HOUR:
+		case HOUR_OF_DAY:
+			return addMinutes(amount * 60L);
+		case MINUTE:
+			return addMinutes(amount);
+		default:
+			throw new IllegalArgumentException("Unhandled field: " + field);
+		}
+	}
+
+	/**
+	 * Adds months, keeping the day within the month.
+	 */
+	private TimexValue addMonths(long months) {
+		long total = year(dateTime) * 12L + month(dateTime) + months;
+		int year = (int) floorDiv(total, 12);
+		int month = (int) floorMod(total, 12);
+		int day = Math.min(day(dateTime), monthLength(year, month));
+		return new TimexValue(packDateTime(year, month, day, hour(dateTime), minute(dateTime)), state);
+	}
+
+	private TimexValue addMinutes(long minutes) {
+		long total = toEpochDay(year(dateTime), month(dateTime), day(dateTime)) * MINUTES_PER_DAY
+				+ hour(dateTime) * 60 + minute(dateTime) + minutes;
+		int minuteOfDay = (int) floorMod(total, MINUTES_PER_DAY);
+		return new TimexValue(packDate(floorDiv(total, MINUTES_PER_DAY)) | (minuteOfDay / 60) << 6 | minuteOfDay % 60,
+				state);
+	}
+
+	/**
+	 * Compares the given fields in turn, skipping those not set in both.
+	 */
+	public int compareFieldsTo(TimexValue other, int... fields) {
+		for (int field : fields) {
+			if (has(field) && other.has(field)) {
+				int thisVal = get(field);
+				int otherVal = other.get(field);
+				if (thisVal > otherVal) {
+					return 1;
+				}
+				else if (otherVal > thisVal) {
+					return -1;
+				}
+			}
+		}
+		return 0;
+	}
+
+	public String toString() {
+		return toString(getLowestField());
+	}
+
+	public String toString(int lowestField) {
+		return appendTo(new StringBuilder(19), lowestField).toString();
+	}
+
+	/**
+	 * Appends this value down to its lowest field to out.
+	 * @return out
+	 */
+	public StringBuilder appendTo(StringBuilder out) {
+		return appendTo(out, getLowestField());
+	}
+
+	/**
+	 * Appends this value down to lowestField to out, as
+	 * {@link TimexCalendar#toString(int)} would.
+	 * @return out
+	 */
+	public StringBuilder appendTo(StringBuilder out, int lowestField) {
+		return TimexCalendar.appendTo(out, new Fields(this), getFieldMask(), lowestField, getSeasonOffset());
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof TimexValue)) {
+			return false;
+		}
+		TimexValue other = (TimexValue) obj;
+		return dateTime == other.dateTime && state == other.state;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (dateTime ^ (dateTime >>> 32)) * 31 + (int) (state ^ (state >>> 32));
+	}
+
+	private static int get(int field, int year, int month, int day, int hour, int minute) {
+		switch (field) {
+		case ERA:
+			return GregorianCalendar.AD;
+		case YEAR:
+			return year;
+		case MONTH:
+			return month;
+		case DATE:
+			return day;
+		case HOUR_OF_DAY:
+			return hour;
+		case HOUR:
+			return hour % 12;
+		case AM_PM:
+			return hour / 12;
+		case MINUTE:
+			return minute;
+		case DAY_OF_WEEK:
+			return dayOfWeek(toEpochDay(year, month, day));
+		case DAY_OF_YEAR:
+			return (int) (toEpochDay(year, month, day) - toEpochDay(year, 0, 1)) + 1;
+		case DAY_OF_WEEK_IN_MONTH:
+			return (day - 1) / 7 + 1;
+		case WEEK_OF_MONTH:
+			return weekNumber(toEpochDay(year, month, 1), toEpochDay(year, month, day));
+		case WEEK_OF_YEAR:
+			return weekOfYear(year, toEpochDay(year, month, day));
+		case CENTURY:
+			return year / 100;
+		case DECADE:
+			return (year % 100) / 10;
+		case YEAR_UNIT:
+			return year % 10;
+		case HALF_YEAR:
+			return month < Calendar.JULY ? TimexCalendar.H1 : TimexCalendar.H2;
+		case QUARTER_YEAR:
+			return month / 3 + TimexCalendar.Q1;
+		case SEASON:
+			return ((month + 10) / 3) % 4;
+		case PART_OF_WEEK:
+			int dow = dayOfWeek(toEpochDay(year, month, day));
+			return dow == Calendar.SATURDAY || dow == Calendar.SUNDAY ? TimexCalendar.WEEKEND : TimexCalendar.WEEKDAY;
+		case PART_OF_DAY:
+			if (hour < 11) {
+				return TimexCalendar.MORNING;
+			} else if (hour < 13) {
+				return TimexCalendar.MIDDAY;
+			} else if (hour < 17) {
+				return TimexCalendar.AFTERNOON;
+			} else if (hour < 20) {
+				return TimexCalendar.EVENING;
+			} else {
+				return TimexCalendar.NIGHT;
+			}
+		}
+		throw new IllegalArgumentException("Unhandled field: " + field);
+	}
+
+	/**
+	 * The fields of a value being changed. As in a lenient Calendar, the
+	 * fields set are only resolved to a date and time when one is read, so
+	 * that those of a TIMEX3 value are resolved together: setting the day
+	 * after the month does not depend on the length of the month before.
+	 */
+	private static final class Fields implements TimexFields {
+		int year;
+		int month;
+		int day;
+		int hour;
+		int minute;
+		// whether the fields above are a valid date and time
+		boolean resolved = true;
+		// the day of the week when last resolved
+		int dayOfWeek;
+		// whether the date is to be resolved from week and dayOfWeek
+		boolean byWeek = false;
+		int week;
+		// the fields set; toValue adds those they imply
+		int fieldMask;
+		int lowestField;
+		final int seasonOffset;
+
+		Fields(TimexValue value) {
+			long dateTime = value.dateTime;
+			year = year(dateTime);
+			month = month(dateTime);
+			day = day(dateTime);
+			hour = hour(dateTime);
+			minute = minute(dateTime);
+			dayOfWeek = dayOfWeek(toEpochDay(year, month, day));
+			fieldMask = value.getFieldMask();
+			lowestField = value.getLowestField();
+			seasonOffset = value.getSeasonOffset();
+		}
+
+		void resolve() {
+			if (resolved) {
+				return;
+			}
+			long epochDay;
+			if (byWeek) {
+				long weekStart = firstWeekStart(toEpochDay(year, 0, 1));
+				if (dayOfWeek != FIRST_DAY_OF_WEEK) {
+					weekStart = onOrBefore(weekStart + 6, dayOfWeek);
+				}
+				epochDay = weekStart + 7L * (week - 1);
+				byWeek = false;
+			}
+			else {
+				epochDay = toEpochDay(year, month, day);
+			}
+			long minutes = hour * 60L + minute;
+			setDate(epochDay + floorDiv(minutes, MINUTES_PER_DAY));
+			int minuteOfDay = (int) floorMod(minutes, MINUTES_PER_DAY);
+			hour = minuteOfDay / 60;
+			minute = minuteOfDay % 60;
+			resolved = true;
+		}
+
+		private void setDate(long epochDay) {
+			long date = packDate(epochDay);
+			year = year(date);
+			month = month(date);
+			day = day(date);
+			dayOfWeek = dayOfWeek(epochDay);
+		}
+
+		/**
+		 * Moves to the given day in the same week.
+		 */
+		private void setDayOfWeek(int value) {
+			resolve();
+			long weekStart = onOrBefore(toEpochDay(year, month, day), FIRST_DAY_OF_WEEK);
+			setDate(onOrBefore(weekStart + 6, value));
+		}
+
+		public int get(int field) {
+			resolve();
+			return TimexValue.get(field, year, month, day, hour, minute);
+		}
+
+		public void set(int field, int value) {
+			switch (field) {
+			case ERA:
+				if (value != GregorianCalendar.AD) {
+					throw new IllegalArgumentException("Unhandled era: " + value);
+				}
+				break;
+
+			case YEAR:
+				year = value;
+				resolved = false;
+				break;
+
+			case MONTH:
+				month = value;
+				resolved = false;
+				break;
+
+			case DATE:
+				day = value;
+				byWeek = false;
+				resolved = false;
+				break;
+
+			case WEEK_OF_YEAR:
+				week = value;
+				byWeek = true;
+				resolved = false;
+				break;
+
+			case DAY_OF_WEEK:
+				setDayOfWeek(value);
+				break;
+
+			case HOUR_OF_DAY:
+				hour = value;
+				resolved = false;
+				break;
+
+			case MINUTE:
+				minute = value;
+				resolved = false;
+				break;
+
+			case CENTURY:
+				resolve();
+				year = year % 100 + value * 100;
+				resolved = false;
+				break;
+
+			case DECADE:
+				resolve();
+				year = (year / 100) * 100 + value * 10 + year % 10;
+				resolved = false;
+				break;
+
+			case YEAR_UNIT:
+				resolve();
+				year = (year / 10) * 10 + value;
+				resolved = false;
+				break;
+
+			case HALF_YEAR:
+				resolve();
+				if (value == TimexCalendar.H1 && month > Calendar.JUNE) {
+					month = Calendar.JANUARY;
+				}
+				else if (value == TimexCalendar.H2 && month < Calendar.JULY) {
+					month = Calendar.JULY;
+				}
+				resolved = false;
+				break;
+
+			case QUARTER_YEAR:
+				resolve();
+				// always set to a 31-day month
+				if (value == TimexCalendar.Q1 && month > Calendar.MARCH) {
+					month = Calendar.JANUARY;
+				}
+				else if (value == TimexCalendar.Q2 && (month < Calendar.APRIL || month > Calendar.JUNE)) {
+					month = Calendar.MAY;
+				}
+				else if (value == TimexCalendar.Q3 && (month < Calendar.JULY || month > Calendar.SEPTEMBER)) {
+					month = Calendar.JULY;
+				}
+				else if (value == TimexCalendar.Q4 && month < Calendar.OCTOBER) {
+					month = Calendar.OCTOBER;
+				}
+				resolved = false;
+				break;
+
+			case SEASON:
+				resolve();
+				int seasonStart = value * 3 + 2;
+				if (month < seasonStart || month > seasonStart + 2) {
+					month = seasonStart;
+				}
+				resolved = false;
+				break;
+
+			case PART_OF_WEEK:
+				resolve();
+				if (dayOfWeek == Calendar.SATURDAY || dayOfWeek == Calendar.SUNDAY) {
+					if (value == TimexCalendar.WEEKDAY) {
+						setDayOfWeek(Calendar.MONDAY);
+					}
+				}
+				else if (value == TimexCalendar.WEEKEND) {
+					setDayOfWeek(Calendar.SATURDAY);
+				}
+				break;
+
+			case PART_OF_DAY:
+				switch (value) {
+				case TimexCalendar.MORNING:
+					hour = 9; break;
+				case TimexCalendar.MIDDAY:
+					hour = 12; break;
+				case TimexCalendar.AFTERNOON:
+					hour = 16; break;
+				case TimexCalendar.EVENING:
+					hour = 18; break;
+				case TimexCalendar.NIGHT:
+					hour = 22; break;
+				}
+				resolved = false;
+				break;
+
+			default:
+				throw new IllegalArgumentException("Unhandled field: " + field);
+			}
+			fieldMask |= 1 << field;
+		}
+
+		TimexValue toValue() {
+			resolve();
+			int impliedMask = TimexCalendar.TIMEX_IMPLICATURES.implied(fieldMask);
+			return new TimexValue(packDateTime(year, month, day, hour, minute),
+					packState(impliedMask, lowestField, seasonOffset));
+		}
+	}
+
+	private static long packDateTime(int year, int month, int day, int hour, int minute) {
+		return (long) year << 32 | month << 16 | day << 11 | hour << 6 | minute;
+	}
+
+	private static long packState(int fieldMask, int lowestField, int seasonOffset) {
+		return (long) seasonOffset << 40 | (long) lowestField << 32 | (fieldMask & 0xFFFFFFFFL);
+	}
+
+	private static int year(long dateTime) {
+		return (int) (dateTime >> 32);
+	}
+
+	private static int month(long dateTime) {
+		return (int) (dateTime >>> 16) & 0xF;
+	}
+
+	private static int day(long dateTime) {
+		return (int) (dateTime >>> 11) & 0x1F;
+	}
+
+	private static int hour(long dateTime) {
+		return (int) (dateTime >>> 6) & 0x1F;
+	}
+
+	private static int minute(long dateTime) {
+		return (int) dateTime & 0x3F;
+	}
+
+	/**
+	 * @return the days from 1970-01-01 to the given date, where month and
+	 *         day may be out of range
+	 */
+	static long toEpochDay(long year, long month, long day) {
+		year += floorDiv(month, 12);
+		month = floorMod(month, 12);
+		// count from March, so that the leap day ends the year
+		if (month < Calendar.MARCH) {
+			year--;
+			month += 12;
+		}
+		long era = floorDiv(year, 400);
+		long yearOfEra = year - era * 400;
+		long dayOfYear = (153 * (month - Calendar.MARCH) + 2) / 5;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * DAYS_PER_400_YEARS + dayOfEra - EPOCH_OFFSET + day - 1;
+	}
+
+	/**
+	 * @return the date epochDay days from 1970-01-01, packed at midnight
+	 */
+	private static long packDate(long epochDay) {
+		long days = epochDay + EPOCH_OFFSET;
+		long era = floorDiv(days, DAYS_PER_400_YEARS);
+		long dayOfEra = days - era * DAYS_PER_400_YEARS;
+		long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		long dayOfYear = dayOfEra - (yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100);
+		long monthFromMarch = (5 * dayOfYear + 2) / 153;
+		int day = (int) (dayOfYear - (153 * monthFromMarch + 2) / 5) + 1;
+		int month = (int) (monthFromMarch < 10 ? monthFromMarch + Calendar.MARCH : monthFromMarch - 10);
+		long year = yearOfEra + era * 400 + (month < Calendar.MARCH ? 1 : 0);
+		return packDateTime((int) year, month, day, 0, 0);
+	}
+
+	private static boolean isLeapYear(int year) {
+		return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+	}
+
+	private static int monthLength(int year, int month) {
+		switch (month) {
+		case Calendar.FEBRUARY:
+			return isLeapYear(year) ? 29 : 28;
+		case Calendar.APRIL:
+		case Calendar.JUNE:
+		case Calendar.SEPTEMBER:
+		case Calendar.NOVEMBER:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+
+	/**
+	 * @return the day of the week, from Calendar.SUNDAY to Calendar.SATURDAY
+	 */
+	private static int dayOfWeek(long epochDay) {
+		// 1970-01-01 was a Thursday
+		return (int) floorMod(epochDay + Calendar.THURSDAY - 1, 7) + 1;
+	}
+
+	/**
+	 * @return the last day on or before epochDay which is dayOfWeek
+	 */
+	private static long onOrBefore(long epochDay, int dayOfWeek) {
+		return epochDay - floorMod(dayOfWeek(epochDay) - dayOfWeek, 7);
+	}
+
+	/**
+	 * @return the first day of week 1 of the year or month beginning at day1
+	 */
+	private static long firstWeekStart(long day1) {
+		long weekStart = onOrBefore(day1 + 6, FIRST_DAY_OF_WEEK);
+		if (weekStart - day1 >= MINIMAL_DAYS_IN_FIRST_WEEK) {
+			weekStart -= 7;
+		}
+		return weekStart;
+	}
+
+	/**
+	 * @return the week of the year or month beginning at day1 which epochDay
+	 *         is in, counting the week before week 1 as 0
+	 */
+	private static int weekNumber(long day1, long epochDay) {
+		return (int) floorDiv(epochDay - firstWeekStart(day1), 7) + 1;
+	}
+
+	private static int weekOfYear(int year, long epochDay) {
+		long jan1 = toEpochDay(year, 0, 1);
+		int week = weekNumber(jan1, epochDay);
+		if (week == 0) {
+			// the last week of the year before
+			return weekNumber(toEpochDay(year - 1, 0, 1), jan1 - 1);
+		}
+		if (week >= 52) {
+			long nextJan1 = toEpochDay(year + 1, 0, 1);
+			long nextWeekStart = onOrBefore(nextJan1 + 6, FIRST_DAY_OF_WEEK);
+			if (nextWeekStart - nextJan1 >= MINIMAL_DAYS_IN_FIRST_WEEK && epochDay >= nextWeekStart - 7) {
+				// the first week of the year after
+				return 1;
+			}
+		}
+		return week;
+	}
+
+	private static long floorDiv(long x, long y) {
+		long q = x / y;
+		if ((x % y != 0) && ((x ^ y) < 0)) {
+			q--;
+		}
+		return q;
+	}
+
+	private static long floorMod(long x, long y) {
+		return x - floorDiv(x, y) * y;
+	}
+}
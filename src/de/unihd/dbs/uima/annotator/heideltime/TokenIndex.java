@@ -0,0 +1,109 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.cas.FSIterator;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+
+import org.cleartk.token.type.Token;
+
+/**
+ * The tokens of a document (or of a span of it) in index order, with their
+ * offsets and parts of speech in arrays, so that the token at an offset is
+ * found by binary search rather than by iterating over the annotation index.
+ */
+public class TokenIndex {
+	final Token[] tokens;
+	final int[] begins;
+	final int[] ends;
+	final String[] pos;
+
+	/**
+	 * Indexes all tokens of the document.
+	 */
+	public TokenIndex(JCas jcas) {
+		this(jcas.getAnnotationIndex(Token.type).iterator());
+	}
+
+	/**
+	 * Indexes the tokens within the given annotation.
+	 */
+	public TokenIndex(JCas jcas, Annotation covering) {
+		this(jcas.getAnnotationIndex(Token.type).subiterator(covering));
+	}
+
+	private TokenIndex(FSIterator iterTok) {
+		List<Token> list = new ArrayList<Token>();
+		while (iterTok.hasNext()) {
+			list.add((Token) iterTok.next());
+		}
+		tokens = list.toArray(new Token[list.size()]);
+		begins = new int[tokens.length];
+		ends = new int[tokens.length];
+		pos = new String[tokens.length];
+		for (int i = 0; i < tokens.length; i++) {
+			begins[i] = tokens[i].getBegin();
+			ends[i] = tokens[i].getEnd();
+			pos[i] = tokens[i].getPos();
+		}
+	}
+
+	public int size() {
+		return tokens.length;
+	}
+
+	public Token getToken(int i) {
+		return tokens[i];
+	}
+
+	public int getBegin(int i) {
+		return begins[i];
+	}
+
+	public int getEnd(int i) {
+		return ends[i];
+	}
+
+	public String getPos(int i) {
+		return pos[i];
+	}
+
+	/**
+	 * @return the index of the first token beginning at or after offset, or size() if none
+	 */
+	public int firstAtOrAfter(int offset) {
+		int lo = 0;
+		int hi = begins.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (begins[mid] < offset) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * @return the index of the first token beginning at offset, or -1 if none
+	 */
+	public int indexOfBegin(int offset) {
+		int i = firstAtOrAfter(offset);
+		return i < begins.length && begins[i] == offset ? i : -1;
+	}
+
+	/**
+	 * @return the index after the last token within the span ending at end,
+	 *         among those from first onwards
+	 */
+	public int endOfSpan(int first, int end) {
+		int res = firstAtOrAfter(end);
+		while (res > first && ends[res - 1] > end) {
+			res--;
+		}
+		return res;
+	}
+}
@@ -0,0 +1,123 @@
+package de.unihd.dbs.uima.annotator.heideltime.regex;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Finds occurrences of a fixed set of keywords in a single pass over a text.
+ */
+public class AhoCorasick implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	// Per state: sorted transition labels and targets
+	final char[][] labels;
+	final int[][] targets;
+	final int[] fail;
+	// Keywords ending at a state, and the nearest state on the fail chain with output
+	final int[][] output;
+	final int[] outputLink;
+	final int[] keywordLengths;
+
+	public AhoCorasick(List<String> keywords) {
+		// Build the trie
+		List<Map<Character, Integer>> trie = new ArrayList<Map<Character, Integer>>();
+		List<List<Integer>> ends = new ArrayList<List<Integer>>();
+		trie.add(new TreeMap<Character, Integer>());
+		ends.add(new ArrayList<Integer>());
+		keywordLengths = new int[keywords.size()];
+		for (int k = 0; k < keywords.size(); k++) {
+			String keyword = keywords.get(k);
+			keywordLengths[k] = keyword.length();
+			int state = 0;
+			for (int i = 0; i < keyword.length(); i++) {
+				Integer next = trie.get(state).get(keyword.charAt(i));
+				if (next == null) {
+					next = trie.size();
+					trie.add(new TreeMap<Character, Integer>());
+					ends.add(new ArrayList<Integer>());
+					trie.get(state).put(keyword.charAt(i), next);
+				}
+				state = next;
+			}
+			ends.get(state).add(k);
+		}
+
+		int nStates = trie.size();
+		labels = new char[nStates][];
+		targets = new int[nStates][];
+		output = new int[nStates][];
+		for (int state = 0; state < nStates; state++) {
+			Map<Character, Integer> transitions = trie.get(state);
+			labels[state] = new char[transitions.size()];
+			targets[state] = new int[transitions.size()];
+			int i = 0;
+			for (Map.Entry<Character, Integer> entry : transitions.entrySet()) {
+				labels[state][i] = entry.getKey();
+				targets[state][i] = entry.getValue();
+				i++;
+			}
+			output[state] = new int[ends.get(state).size()];
+			for (i = 0; i < output[state].length; i++) {
+				output[state][i] = ends.get(state).get(i);
+			}
+		}
+
+		// Breadth-first computation of failure and output links
+		fail = new int[nStates];
+		outputLink = new int[nStates];
+		Arrays.fill(outputLink, -1);
+		LinkedList<Integer> queue = new LinkedList<Integer>();
+		for (int child : targets[0]) {
+			queue.add(child);
+		}
+		while (!queue.isEmpty()) {
+			int state = queue.removeFirst();
+			for (int i = 0; i < labels[state].length; i++) {
+				int child = targets[state][i];
+				int f = fail[state];
+				int next;
+				while ((next = transition(f, labels[state][i])) < 0 && f != 0) {
+					f = fail[f];
+				}
+				fail[child] = (next >= 0 && next != child) ? next : 0;
+				outputLink[child] = output[fail[child]].length > 0 ? fail[child] : outputLink[fail[child]];
+				queue.add(child);
+			}
+		}
+	}
+
+	private int transition(int state, char c) {
+		int i = Arrays.binarySearch(labels[state], c);
+		return i < 0 ? -1 : targets[state][i];
+	}
+
+	/**
+	 * @return for each keyword, the offset of its first occurrence in text, or -1
+	 */
+	public int[] firstOccurrences(CharSequence text) {
+		int[] res = new int[keywordLengths.length];
+		Arrays.fill(res, -1);
+		int state = 0;
+		for (int pos = 0; pos < text.length(); pos++) {
+			char c = text.charAt(pos);
+			int next;
+			while ((next = transition(state, c)) < 0 && state != 0) {
+				state = fail[state];
+			}
+			state = next < 0 ? 0 : next;
+			for (int out = state; out >= 0; out = outputLink[out]) {
+				for (int k : output[out]) {
+					if (res[k] < 0) {
+						res[k] = pos + 1 - keywordLengths[k];
+					}
+				}
+			}
+		}
+		return res;
+	}
+}
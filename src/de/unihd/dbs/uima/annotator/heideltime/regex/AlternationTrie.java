@@ -0,0 +1,212 @@
+package de.unihd.dbs.uima.annotator.heideltime.regex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds a regular expression equivalent to the alternation of a list of
+ * regular expressions, with common prefixes factored out as in a trie (e.g.
+ * "[Jj]an\.|[Jj]an|[Ff]eb" becomes "[Jj]an(?:\.|)|[Ff]eb"), so that a failing
+ * prefix is only tested once. Alternatives consisting of a single character
+ * or character class are merged into a class.
+ *
+ * Only prefixes of characters and classes which match exactly one character
+ * are factored, and only between adjacent alternatives, so the order in which
+ * java.util.regex tries alternatives (and hence what it matches) is unchanged.
+ * No capturing groups are added.
+ */
+public class AlternationTrie {
+
+	static class Alternative {
+		// Leading single-character tokens, and the remainder of the expression
+		final List<String> tokens = new ArrayList<String>();
+		final String rest;
+
+		Alternative(String regex) {
+			int pos = 0;
+			if (!hasTopLevelBar(regex)) {
+				for (int end; (end = tokenEnd(regex, pos)) > pos; pos = end) {
+					tokens.add(regex.substring(pos, end));
+				}
+			}
+			rest = regex.substring(pos);
+		}
+	}
+
+	/**
+	 * @return an expression matching the same as alternatives joined with "|"
+	 */
+	public static String toRegex(List<String> alternatives) {
+		List<Alternative> parsed = new ArrayList<Alternative>();
+		for (String alternative : alternatives) {
+			parsed.add(new Alternative(alternative));
+		}
+		return join(factor(parsed, 0));
+	}
+
+	private static List<String> factor(List<Alternative> alternatives, int depth) {
+		List<String> branches = new ArrayList<String>();
+		int i = 0;
+		while (i < alternatives.size()) {
+			Alternative first = alternatives.get(i);
+			if (first.tokens.size() <= depth) {
+				branches.add(first.rest);
+				i++;
+				continue;
+			}
+			String token = first.tokens.get(depth);
+			int j = i + 1;
+			while (j < alternatives.size() && alternatives.get(j).tokens.size() > depth
+					&& alternatives.get(j).tokens.get(depth).equals(token)) {
+				j++;
+			}
+			if (j == i + 1) {
+				StringBuilder branch = new StringBuilder();
+				for (String suffixToken : first.tokens.subList(depth, first.tokens.size())) {
+					branch.append(suffixToken);
+				}
+				branches.add(branch.append(first.rest).toString());
+			} else {
+				List<String> suffixes = factor(alternatives.subList(i, j), depth + 1);
+				if (suffixes.size() == 1) {
+					branches.add(token + suffixes.get(0));
+				} else {
+					branches.add(token + "(?:" + join(suffixes) + ")");
+				}
+			}
+			i = j;
+		}
+		return mergeCharacters(branches);
+	}
+
+	/**
+	 * Replaces runs of adjacent single-character branches with a class
+	 */
+	private static List<String> mergeCharacters(List<String> branches) {
+		List<String> res = new ArrayList<String>();
+		int i = 0;
+		while (i < branches.size()) {
+			int j = i;
+			StringBuilder classContents = new StringBuilder();
+			for (String contents; j < branches.size() && (contents = classContents(branches.get(j))) != null; j++) {
+				classContents.append(contents);
+			}
+			if (j - i > 1) {
+				res.add("[" + classContents + "]");
+				i = j;
+			} else {
+				res.add(branches.get(i));
+				i++;
+			}
+		}
+		return res;
+	}
+
+	private static String join(List<String> branches) {
+		StringBuilder res = new StringBuilder();
+		for (int i = 0; i < branches.size(); i++) {
+			if (i > 0) {
+				res.append('|');
+			}
+			res.append(branches.get(i));
+		}
+		return res.toString();
+	}
+
+	/**
+	 * @return what may be put inside a character class to match the same as
+	 *         the single-character expression token, or null if not possible
+	 */
+	private static String classContents(String token) {
+		if (token.length() == 1) {
+			char c = token.charAt(0);
+			if (Character.isLetterOrDigit(c)) {
+				return token;
+			}
+			return null;
+		}
+		if (token.length() == 2 && token.charAt(0) == '\\' && !Character.isLetterOrDigit(token.charAt(1))) {
+			return token;
+		}
+		if (token.length() > 2 && token.charAt(0) == '[' && tokenEnd(token, 0) == token.length()) {
+			String contents = token.substring(1, token.length() - 1);
+			if (contents.startsWith("^") || contents.startsWith("-") || contents.startsWith("]")
+					|| (contents.endsWith("-") && !contents.endsWith("\\-"))
+					|| contents.contains("[") || contents.contains("&&")) {
+				return null;
+			}
+			return contents;
+		}
+		return null;
+	}
+
+	/**
+	 * @return the end of the token at pos if it matches exactly one character
+	 *         (and is not quantified), or pos otherwise
+	 */
+	static int tokenEnd(String regex, int pos) {
+		if (pos >= regex.length()) {
+			return pos;
+		}
+		int end;
+		char c = regex.charAt(pos);
+		if (c == '\\') {
+			if (pos + 1 >= regex.length() || Character.isLetterOrDigit(regex.charAt(pos + 1))) {
+				return pos;
+			}
+			end = pos + 2;
+		} else if (c == '[') {
+			end = pos + 1;
+			if (end < regex.length() && regex.charAt(end) == '^') {
+				end++;
+			}
+			if (end < regex.length() && regex.charAt(end) == ']') {
+				end++;
+			}
+			while (end < regex.length() && regex.charAt(end) != ']') {
+				char d = regex.charAt(end);
+				if (d == '[') {
+					return pos;
+				}
+				end += d == '\\' ? 2 : 1;
+			}
+			if (end >= regex.length()) {
+				return pos;
+			}
+			end++;
+		} else if ("()|?*+{}^$".indexOf(c) >= 0) {
+			return pos;
+		} else {
+			end = pos + 1;
+		}
+		if (end < regex.length() && "?*+{".indexOf(regex.charAt(end)) >= 0) {
+			return pos;
+		}
+		return end;
+	}
+
+	static boolean hasTopLevelBar(String regex) {
+		int depth = 0;
+		boolean inClass = false;
+		for (int i = 0; i < regex.length(); i++) {
+			char c = regex.charAt(i);
+			if (c == '\\') {
+				i++;
+			} else if (inClass) {
+				inClass = c != ']';
+			} else if (c == '[') {
+				inClass = true;
+				if (i + 1 < regex.length() && regex.charAt(i + 1) == ']') {
+					i++;
+				}
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if (c == '|' && depth == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
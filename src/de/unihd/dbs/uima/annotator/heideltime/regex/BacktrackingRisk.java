@@ -0,0 +1,189 @@
+package de.unihd.dbs.uima.annotator.heideltime.regex;
+
+import java.util.List;
+
+/**
+ * Finds constructs on which a backtracking matcher such as java.util.regex
+ * may take time exponential, or polynomial of high degree, in the length of
+ * a run of characters, e.g. of digits or whitespace:
+ * <ul>
+ * <li>an unbounded repetition containing another, as in (\d+)+ or ([\s]+\w)*</li>
+ * <li>unbounded repetitions of overlapping characters separated only by
+ * optional expressions, as in \d+[\s]*\d+ or [\s]+(,)?[\s]+</li>
+ * </ul>
+ * These are warnings, not errors: such a pattern is only slow on texts in
+ * which the repetitions can divide a long run between them without matching.
+ */
+public class BacktrackingRisk {
+
+	/**
+	 * @return a description of the first risky construct in node, or null if none
+	 */
+	public static String find(RegexNode node) {
+		if (node instanceof RegexNode.Repeat) {
+			RegexNode.Repeat repeat = (RegexNode.Repeat) node;
+			if (repeat.max < 0 && containsUnboundedRepeat(repeat.child)) {
+				return "nested unbounded repetition " + repeat;
+			}
+			return find(repeat.child);
+		} else if (node instanceof RegexNode.Group) {
+			return find(((RegexNode.Group) node).child);
+		} else if (node instanceof RegexNode.Alternation) {
+			for (RegexNode branch : ((RegexNode.Alternation) node).branches) {
+				String res = find(branch);
+				if (res != null) {
+					return res;
+				}
+			}
+		} else if (node instanceof RegexNode.Sequence) {
+			RegexNode.Sequence sequence = (RegexNode.Sequence) node;
+			String res = findAdjacentRepeats(sequence);
+			if (res != null) {
+				return res;
+			}
+			for (RegexNode item : sequence.items) {
+				res = find(item);
+				if (res != null) {
+					return res;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static String findAdjacentRepeats(RegexNode.Sequence sequence) {
+		for (int i = 0; i < sequence.items.size(); i++) {
+			RegexNode.Repeat first = unboundedCharacterRepeat(sequence.items.get(i), false);
+			if (first == null) {
+				continue;
+			}
+			for (int j = i + 1; j < sequence.items.size(); j++) {
+				RegexNode item = sequence.items.get(j);
+				RegexNode.Repeat second = unboundedCharacterRepeat(item, true);
+				if (second != null && overlap(single(first.child), single(second.child))) {
+					return "adjacent unbounded repetitions " + first + " and " + second;
+				}
+				if (!nullable(item)) {
+					break;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the unbounded repetition of a single character with which node
+	 *         begins (or ends), or null
+	 */
+	private static RegexNode.Repeat unboundedCharacterRepeat(RegexNode node, boolean leading) {
+		while (true) {
+			if (node instanceof RegexNode.Group) {
+				node = ((RegexNode.Group) node).child;
+			} else if (node instanceof RegexNode.Sequence && !((RegexNode.Sequence) node).items.isEmpty()) {
+				List<RegexNode> items = ((RegexNode.Sequence) node).items;
+				node = items.get(leading ? 0 : items.size() - 1);
+			} else {
+				break;
+			}
+		}
+		if (node instanceof RegexNode.Repeat) {
+			RegexNode.Repeat repeat = (RegexNode.Repeat) node;
+			if (repeat.max < 0 && single(repeat.child) != null) {
+				return repeat;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the literal or class node matches a single character of, or null
+	 */
+	private static RegexNode single(RegexNode node) {
+		while (node instanceof RegexNode.Group) {
+			node = ((RegexNode.Group) node).child;
+		}
+		if (node instanceof RegexNode.Literal || node instanceof RegexNode.CharClass) {
+			return node;
+		}
+		return null;
+	}
+
+	private static boolean overlap(RegexNode a, RegexNode b) {
+		if (a instanceof RegexNode.Literal) {
+			return matches(b, ((RegexNode.Literal) a).value);
+		}
+		if (b instanceof RegexNode.Literal) {
+			return matches(a, ((RegexNode.Literal) b).value);
+		}
+		RegexNode.CharClass ca = (RegexNode.CharClass) a;
+		RegexNode.CharClass cb = (RegexNode.CharClass) b;
+		if (!ca.exact || !cb.exact) {
+			return true;
+		}
+		for (int i = 0; i < ca.ranges.length; i += 2) {
+			for (int j = 0; j < cb.ranges.length; j += 2) {
+				if (ca.ranges[i] <= cb.ranges[j + 1] && cb.ranges[j] <= ca.ranges[i + 1]) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean matches(RegexNode node, char c) {
+		if (node instanceof RegexNode.Literal) {
+			return ((RegexNode.Literal) node).value == c;
+		}
+		RegexNode.CharClass cc = (RegexNode.CharClass) node;
+		return !cc.exact || cc.contains(c);
+	}
+
+	private static boolean containsUnboundedRepeat(RegexNode node) {
+		if (node instanceof RegexNode.Repeat) {
+			RegexNode.Repeat repeat = (RegexNode.Repeat) node;
+			return repeat.max < 0 || containsUnboundedRepeat(repeat.child);
+		} else if (node instanceof RegexNode.Group) {
+			return containsUnboundedRepeat(((RegexNode.Group) node).child);
+		} else if (node instanceof RegexNode.Alternation) {
+			for (RegexNode branch : ((RegexNode.Alternation) node).branches) {
+				if (containsUnboundedRepeat(branch)) {
+					return true;
+				}
+			}
+		} else if (node instanceof RegexNode.Sequence) {
+			for (RegexNode item : ((RegexNode.Sequence) node).items) {
+				if (containsUnboundedRepeat(item)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return whether node may match the empty string
+	 */
+	static boolean nullable(RegexNode node) {
+		if (node instanceof RegexNode.Repeat) {
+			RegexNode.Repeat repeat = (RegexNode.Repeat) node;
+			return repeat.min == 0 || nullable(repeat.child);
+		} else if (node instanceof RegexNode.Group) {
+			return nullable(((RegexNode.Group) node).child);
+		} else if (node instanceof RegexNode.Alternation) {
+			for (RegexNode branch : ((RegexNode.Alternation) node).branches) {
+				if (nullable(branch)) {
+					return true;
+				}
+			}
+			return false;
+		} else if (node instanceof RegexNode.Sequence) {
+			for (RegexNode item : ((RegexNode.Sequence) node).items) {
+				if (!nullable(item)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return node instanceof RegexNode.Assertion;
+	}
+}
@@ -0,0 +1,56 @@
+package de.unihd.dbs.uima.annotator.heideltime.regex;
+
+/**
+ * A view of a text which allows a limited number of reads of its characters,
+ * so that a regular expression matching it can be stopped: once the budget
+ * is spent, {@link #charAt(int)} throws a {@link BudgetExceededException}.
+ * Since a backtracking matcher reads a character at every step, the budget
+ * bounds the steps taken, and the result does not depend on machine load.
+ * An instance may be reused for different texts, but not by several threads.
+ */
+public class BudgetedCharSequence implements CharSequence {
+
+	/**
+	 * Thrown from a read of the text once the budget is spent.
+	 */
+	public static class BudgetExceededException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		public BudgetExceededException(long budget) {
+			super("Budget of " + budget + " character reads exceeded");
+		}
+	}
+
+	CharSequence text = "";
+	long budget;
+	long remaining;
+
+	/**
+	 * Sets the text to be read, and the number of reads allowed.
+	 */
+	public void reset(CharSequence text, long budget) {
+		this.text = text;
+		this.budget = budget;
+		this.remaining = budget;
+	}
+
+	public char charAt(int index) {
+		if (--remaining < 0) {
+			throw new BudgetExceededException(budget);
+		}
+		return text.charAt(index);
+	}
+
+	public int length() {
+		return text.length();
+	}
+
+	public CharSequence subSequence(int start, int end) {
+		return text.subSequence(start, end);
+	}
+
+	@Override
+	public String toString() {
+		return text.toString();
+	}
+}
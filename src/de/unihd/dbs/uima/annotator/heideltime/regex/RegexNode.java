@@ -0,0 +1,182 @@
+package de.unihd.dbs.uima.annotator.heideltime.regex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A node of the parse tree produced by {@link RegexParser}. Only the structure
+ * needed to reason about rule patterns is represented; constructs whose exact
+ * semantics do not matter for that purpose (e.g. lookaround contents) are
+ * reduced to zero-width assertions.
+ */
+public abstract class RegexNode {
+
+	/**
+	 * A sequence of nodes, each of which must match in turn.
+	 */
+	public static class Sequence extends RegexNode {
+		public final List<RegexNode> items = new ArrayList<RegexNode>();
+
+		@Override
+		public String toString() {
+			StringBuilder res = new StringBuilder();
+			for (RegexNode item : items) {
+				res.append(item);
+			}
+			return res.toString();
+		}
+	}
+
+	/**
+	 * An ordered choice between branches.
+	 */
+	public static class Alternation extends RegexNode {
+		public final List<RegexNode> branches = new ArrayList<RegexNode>();
+
+		@Override
+		public String toString() {
+			StringBuilder res = new StringBuilder();
+			for (RegexNode branch : branches) {
+				if (res.length() > 0) {
+					res.append('|');
+				}
+				res.append(branch);
+			}
+			return res.toString();
+		}
+	}
+
+	/**
+	 * A parenthesised group, capturing or not.
+	 */
+	public static class Group extends RegexNode {
+		public final RegexNode child;
+		public final boolean capturing;
+
+		public Group(RegexNode child, boolean capturing) {
+			this.child = child;
+			this.capturing = capturing;
+		}
+
+		@Override
+		public String toString() {
+			return (capturing ? "(" : "(?:") + child + ")";
+		}
+	}
+
+	/**
+	 * A quantified node; max is -1 if unbounded.
+	 */
+	public static class Repeat extends RegexNode {
+		public final RegexNode child;
+		public final int min;
+		public final int max;
+
+		public Repeat(RegexNode child, int min, int max) {
+			this.child = child;
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		public String toString() {
+			return child + "{" + min + "," + (max < 0 ? "" : "" + max) + "}";
+		}
+	}
+
+	/**
+	 * A single literal character.
+	 */
+	public static class Literal extends RegexNode {
+		public final char value;
+
+		public Literal(char value) {
+			this.value = value;
+		}
+
+		@Override
+		public String toString() {
+			return String.valueOf(value);
+		}
+	}
+
+	/**
+	 * A character class, given as sorted, non-overlapping inclusive ranges.
+	 * A class whose contents could not be interpreted is marked inexact and
+	 * matches any character.
+	 */
+	public static class CharClass extends RegexNode {
+		public final char[] ranges;
+		public final boolean exact;
+
+		public CharClass(char[] ranges, boolean exact) {
+			this.ranges = ranges;
+			this.exact = exact;
+		}
+
+		public boolean contains(char c) {
+			for (int i = 0; i < ranges.length; i += 2) {
+				if (c < ranges[i]) {
+					return false;
+				}
+				if (c <= ranges[i + 1]) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public String toString() {
+			return exact ? "[class]" : "[?]";
+		}
+	}
+
+	/**
+	 * A zero-width assertion (word boundary, anchor or lookaround).
+	 */
+	public static class Assertion extends RegexNode {
+		public final String kind;
+
+		public Assertion(String kind) {
+			this.kind = kind;
+		}
+
+		@Override
+		public String toString() {
+			return kind;
+		}
+	}
+
+	/**
+	 * A back reference to a capturing group.
+	 */
+	public static class BackReference extends RegexNode {
+		public final int group;
+
+		public BackReference(int group) {
+			this.group = group;
+		}
+
+		@Override
+		public String toString() {
+			return "\\" + group;
+		}
+	}
+
+	/**
+	 * A placeholder for a named sub-pattern (a %re variable of the rule language).
+	 */
+	public static class Variable extends RegexNode {
+		public final String name;
+
+		public Variable(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String toString() {
+			return "%" + name;
+		}
+	}
+}
@@ -0,0 +1,506 @@
+package de.unihd.dbs.uima.annotator.heideltime.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses the subset of java.util.regex syntax used by HeidelTime rules into a
+ * {@link RegexNode} tree. Variables of the rule language may be embedded as
+ * VARIABLE_START name VARIABLE_END (see {@link #variable(String)}).
+ *
+ * The parser is lenient: anything it does not understand is represented
+ * conservatively (e.g. as a class matching any character), and the use of
+ * inline flags is reported through {@link #usesFlags()}.
+ */
+public class RegexParser {
+
+	public static final char VARIABLE_START = '\u0001';
+	public static final char VARIABLE_END = '\u0002';
+
+	static final char[] DIGIT = {'0', '9'};
+	// \s is [ \t\n\x0B\f\r]
+	static final char[] SPACE = {'\t', '\r', ' ', ' '};
+	static final char[] WORD = {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+	static final char[] LINE_TERMINATORS = {'\n', '\n', '\r', '\r', (char) 0x85, (char) 0x85, (char) 0x2028, (char) 0x2029};
+	static final char[] ANY = {Character.MIN_VALUE, Character.MAX_VALUE};
+
+	final String input;
+	int pos = 0;
+	boolean usesFlags = false;
+	boolean usesBackReferences = false;
+	int groupCount = 0;
+	final Map<String, Integer> groupNames = new HashMap<String, Integer>();
+
+	public RegexParser(String input) {
+		this.input = input;
+	}
+
+	/**
+	 * @return the placeholder for the named variable, to be substituted into a pattern before parsing
+	 */
+	public static String variable(String name) {
+		return VARIABLE_START + name + VARIABLE_END;
+	}
+
+	/**
+	 * Parses the entire input.
+	 */
+	public RegexNode parse() {
+		RegexNode res = parseAlternation();
+		if (pos < input.length()) {
+			throw error("Unbalanced ')'");
+		}
+		return res;
+	}
+
+	public static RegexNode parse(String input) {
+		return new RegexParser(input).parse();
+	}
+
+	/**
+	 * @return whether inline flags such as (?i) occur, which change the meaning of literals
+	 */
+	public boolean usesFlags() {
+		return usesFlags;
+	}
+
+	public boolean usesBackReferences() {
+		return usesBackReferences;
+	}
+
+	public int getGroupCount() {
+		return groupCount;
+	}
+
+	private IllegalArgumentException error(String msg) {
+		return new IllegalArgumentException(msg + " at index " + pos + " in: " + input);
+	}
+
+	private boolean more() {
+		return pos < input.length();
+	}
+
+	private char peek() {
+		return input.charAt(pos);
+	}
+
+	private RegexNode parseAlternation() {
+		RegexNode first = parseSequence();
+		if (!more() || peek() != '|') {
+			return first;
+		}
+		RegexNode.Alternation res = new RegexNode.Alternation();
+		res.branches.add(first);
+		while (more() && peek() == '|') {
+			pos++;
+			res.branches.add(parseSequence());
+		}
+		return res;
+	}
+
+	private RegexNode parseSequence() {
+		RegexNode.Sequence res = new RegexNode.Sequence();
+		while (more() && peek() != '|' && peek() != ')') {
+			RegexNode atom = parseAtom();
+			if (atom == null) {
+				continue;
+			}
+			res.items.add(parseQuantifier(atom));
+		}
+		if (res.items.size() == 1) {
+			return res.items.get(0);
+		}
+		return res;
+	}
+
+	private RegexNode parseQuantifier(RegexNode atom) {
+		while (more()) {
+			char c = peek();
+			int min;
+			int max;
+			if (c == '?') {
+				min = 0;
+				max = 1;
+				pos++;
+			} else if (c == '*') {
+				min = 0;
+				max = -1;
+				pos++;
+			} else if (c == '+') {
+				min = 1;
+				max = -1;
+				pos++;
+			} else if (c == '{' && isCountedQuantifier()) {
+				pos++;
+				min = parseNumber();
+				max = min;
+				if (peek() == ',') {
+					pos++;
+					max = peek() == '}' ? -1 : parseNumber();
+				}
+				pos++; // '}'
+			} else {
+				return atom;
+			}
+			// lazy and possessive modifiers do not change what can match
+			if (more() && (peek() == '?' || peek() == '+')) {
+				pos++;
+			}
+			atom = new RegexNode.Repeat(atom, min, max);
+		}
+		return atom;
+	}
+
+	private boolean isCountedQuantifier() {
+		int end = input.indexOf('}', pos);
+		return end > pos + 1 && input.substring(pos + 1, end).matches("[0-9]+(,[0-9]*)?");
+	}
+
+	private int parseNumber() {
+		int start = pos;
+		while (more() && Character.isDigit(peek())) {
+			pos++;
+		}
+		return Integer.parseInt(input.substring(start, pos));
+	}
+
+	/**
+	 * @return the next atom, or null if only flags were consumed
+	 */
+	private RegexNode parseAtom() {
+		char c = input.charAt(pos++);
+		switch (c) {
+		case '(':
+			return parseGroup();
+		case '[':
+			return parseClass();
+		case '\\':
+			return parseEscape();
+		case '.':
+			return new RegexNode.CharClass(complement(LINE_TERMINATORS), true);
+		case '^':
+			return new RegexNode.Assertion("^");
+		case '$':
+			return new RegexNode.Assertion("$");
+		case VARIABLE_START:
+			int end = input.indexOf(VARIABLE_END, pos);
+			if (end < 0) {
+				throw error("Unterminated variable");
+			}
+			String name = input.substring(pos, end);
+			pos = end + 1;
+			return new RegexNode.Variable(name);
+		default:
+			return new RegexNode.Literal(c);
+		}
+	}
+
+	private RegexNode parseGroup() {
+		boolean capturing = true;
+		String lookaround = null;
+		if (input.startsWith("?", pos)) {
+			capturing = false;
+			if (input.startsWith("?:", pos) || input.startsWith("?>", pos)) {
+				pos += 2;
+			} else if (input.startsWith("?=", pos) || input.startsWith("?!", pos)) {
+				lookaround = input.substring(pos - 1, pos + 2);
+				pos += 2;
+			} else if (input.startsWith("?<=", pos) || input.startsWith("?<!", pos)) {
+				lookaround = input.substring(pos - 1, pos + 3);
+				pos += 3;
+			} else if (input.startsWith("?<", pos)) {
+				// named group
+				capturing = true;
+				int end = input.indexOf('>', pos);
+				if (end < 0) {
+					throw error("Unterminated group name");
+				}
+				groupNames.put(input.substring(pos + 2, end), groupCount + 1);
+				pos = end + 1;
+			} else {
+				// inline flags: (?idmsux-idmsux) or (?idmsux-idmsux:X)
+				usesFlags = true;
+				pos++;
+				while (more() && peek() != ')' && peek() != ':') {
+					pos++;
+				}
+				if (!more()) {
+					throw error("Unterminated flags");
+				}
+				if (peek() == ')') {
+					pos++;
+					return null;
+				}
+				pos++;
+			}
+		}
+		if (capturing) {
+			groupCount++;
+		}
+		RegexNode child = parseAlternation();
+		if (!more() || peek() != ')') {
+			throw error("Unbalanced '('");
+		}
+		pos++;
+		if (lookaround != null) {
+			return new RegexNode.Assertion(lookaround + child + ")");
+		}
+		return new RegexNode.Group(child, capturing);
+	}
+
+	private RegexNode parseEscape() {
+		if (!more()) {
+			throw error("Trailing backslash");
+		}
+		char c = input.charAt(pos++);
+		switch (c) {
+		case 'd':
+			return new RegexNode.CharClass(DIGIT, true);
+		case 'D':
+			return new RegexNode.CharClass(complement(DIGIT), true);
+		case 's':
+			return new RegexNode.CharClass(SPACE, true);
+		case 'S':
+			return new RegexNode.CharClass(complement(SPACE), true);
+		case 'w':
+			return new RegexNode.CharClass(WORD, true);
+		case 'W':
+			return new RegexNode.CharClass(complement(WORD), true);
+		case 'b':
+		case 'B':
+		case 'A':
+		case 'z':
+		case 'Z':
+		case 'G':
+			return new RegexNode.Assertion("\\" + c);
+		case 'Q':
+			int end = input.indexOf("\\E", pos);
+			if (end < 0) {
+				end = input.length();
+			}
+			RegexNode.Sequence quoted = new RegexNode.Sequence();
+			for (int i = pos; i < end; i++) {
+				quoted.items.add(new RegexNode.Literal(input.charAt(i)));
+			}
+			pos = Math.min(end + 2, input.length());
+			return new RegexNode.Group(quoted, false);
+		case 'p':
+		case 'P':
+			if (more() && peek() == '{') {
+				pos = input.indexOf('}', pos) + 1;
+			} else {
+				pos++;
+			}
+			return new RegexNode.CharClass(ANY, false);
+		case 'h':
+		case 'H':
+		case 'v':
+		case 'V':
+			return new RegexNode.CharClass(ANY, false);
+		case 'R':
+			// a line break, which may be \r\n
+			return new RegexNode.Repeat(new RegexNode.CharClass(ANY, false), 1, 2);
+		case 'X':
+			// a grapheme cluster
+			return new RegexNode.Repeat(new RegexNode.CharClass(ANY, false), 1, -1);
+		case 'k':
+			// named back reference: \k<name>
+			int nameEnd = input.indexOf('>', pos);
+			if (!more() || peek() != '<' || nameEnd < 0) {
+				throw error("Bad named back reference");
+			}
+			Integer group = groupNames.get(input.substring(pos + 1, nameEnd));
+			if (group == null) {
+				throw error("Unknown group name");
+			}
+			pos = nameEnd + 1;
+			usesBackReferences = true;
+			return new RegexNode.BackReference(group);
+		default:
+			if (c >= '1' && c <= '9') {
+				usesBackReferences = true;
+				return new RegexNode.BackReference(c - '0');
+			}
+			pos--;
+			return new RegexNode.Literal(parseEscapedChar());
+		}
+	}
+
+	/**
+	 * Parses the character escaped by a preceding backslash (already consumed).
+	 */
+	private char parseEscapedChar() {
+		char c = input.charAt(pos++);
+		switch (c) {
+		case 't':
+			return '\t';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 'f':
+			return '\f';
+		case 'a':
+			return '\u0007';
+		case 'e':
+			return '\u001B';
+		case 'x':
+			pos += 2;
+			return (char) Integer.parseInt(input.substring(pos - 2, pos), 16);
+		case 'u':
+			pos += 4;
+			return (char) Integer.parseInt(input.substring(pos - 4, pos), 16);
+		case '0':
+			int start = pos;
+			while (more() && pos - start < 3 && peek() >= '0' && peek() <= '7') {
+				pos++;
+			}
+			return (char) Integer.parseInt(input.substring(start, pos), 8);
+		default:
+			return c;
+		}
+	}
+
+	private RegexNode parseClass() {
+		boolean negated = false;
+		boolean exact = true;
+		if (more() && peek() == '^') {
+			negated = true;
+			pos++;
+		}
+		List<char[]> parts = new ArrayList<char[]>();
+		boolean first = true;
+		while (true) {
+			if (!more()) {
+				throw error("Unterminated character class");
+			}
+			char c = input.charAt(pos++);
+			if (c == ']' && !first) {
+				break;
+			}
+			first = false;
+			char lo;
+			if (c == '[' || (c == '&' && more() && peek() == '&')) {
+				// nested classes and intersections are not interpreted
+				exact = false;
+				skipClass(c == '[' ? 1 : 0);
+				break;
+			} else if (c == '\\') {
+				char e = input.charAt(pos);
+				char[] predefined = null;
+				switch (e) {
+				case 'd': predefined = DIGIT; break;
+				case 'D': predefined = complement(DIGIT); break;
+				case 's': predefined = SPACE; break;
+				case 'S': predefined = complement(SPACE); break;
+				case 'w': predefined = WORD; break;
+				case 'W': predefined = complement(WORD); break;
+				case 'p':
+				case 'P':
+					exact = false;
+					predefined = ANY;
+					if (input.charAt(pos + 1) == '{') {
+						pos = input.indexOf('}', pos);
+					}
+					break;
+				}
+				if (predefined != null) {
+					pos++;
+					parts.add(predefined);
+					continue;
+				}
+				lo = parseEscapedChar();
+			} else {
+				lo = c;
+			}
+			char hi = lo;
+			if (more() && peek() == '-' && pos + 1 < input.length() && input.charAt(pos + 1) != ']') {
+				pos++;
+				hi = input.charAt(pos++);
+				if (hi == '\\') {
+					hi = parseEscapedChar();
+				}
+			}
+			parts.add(new char[] {lo, hi});
+		}
+		if (!exact) {
+			return new RegexNode.CharClass(ANY, false);
+		}
+		char[] ranges = union(parts);
+		if (negated) {
+			ranges = complement(ranges);
+		}
+		return new RegexNode.CharClass(ranges, true);
+	}
+
+	/**
+	 * Skips to the end of the enclosing character class, given the current nesting depth.
+	 */
+	private void skipClass(int depth) {
+		while (more()) {
+			char c = input.charAt(pos++);
+			if (c == '\\') {
+				pos++;
+			} else if (c == '[') {
+				depth++;
+			} else if (c == ']') {
+				if (depth == 0) {
+					return;
+				}
+				depth--;
+			}
+		}
+		throw error("Unterminated character class");
+	}
+
+	static char[] union(List<char[]> parts) {
+		List<int[]> ranges = new ArrayList<int[]>();
+		for (char[] part : parts) {
+			for (int i = 0; i < part.length; i += 2) {
+				ranges.add(new int[] {part[i], part[i + 1]});
+			}
+		}
+		int[][] sorted = ranges.toArray(new int[ranges.size()][]);
+		Arrays.sort(sorted, new java.util.Comparator<int[]>() {
+			public int compare(int[] a, int[] b) {
+				return a[0] - b[0];
+			}
+		});
+		StringBuilder res = new StringBuilder();
+		int curLo = -1;
+		int curHi = -2;
+		for (int[] range : sorted) {
+			if (range[0] > curHi + 1) {
+				if (curLo >= 0) {
+					res.append((char) curLo).append((char) curHi);
+				}
+				curLo = range[0];
+				curHi = range[1];
+			} else if (range[1] > curHi) {
+				curHi = range[1];
+			}
+		}
+		if (curLo >= 0) {
+			res.append((char) curLo).append((char) curHi);
+		}
+		return res.toString().toCharArray();
+	}
+
+	static char[] complement(char[] ranges) {
+		StringBuilder res = new StringBuilder();
+		int next = Character.MIN_VALUE;
+		for (int i = 0; i < ranges.length; i += 2) {
+			if (ranges[i] > next) {
+				res.append((char) next).append((char) (ranges[i] - 1));
+			}
+			next = ranges[i + 1] + 1;
+		}
+		if (next <= Character.MAX_VALUE) {
+			res.append((char) next).append(Character.MAX_VALUE);
+		}
+		return res.toString().toCharArray();
+	}
+}
@@ -0,0 +1,426 @@
+package de.unihd.dbs.uima.annotator.heideltime.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Determines in a single linear scan which of a list of patterns have a match
+ * somewhere in a text.
+ *
+ * All patterns are compiled into one nondeterministic automaton whose
+ * accepting states are tagged with the pattern's index, which is determinised
+ * lazily while scanning. Zero-width assertions (word boundaries, lookaround)
+ * are treated as always succeeding, so a pattern reported may yet fail to
+ * match; one not reported certainly does not match. Patterns which cannot be
+ * represented (e.g. with back references or inline flags) are always reported.
+ *
+ * Instances cache the states of the deterministic automaton as they are
+ * discovered, and are therefore not thread safe; see {@link #copy()}.
+ */
+public class RuleAutomaton {
+
+	// Limits on unrolling counted repetitions and on the size of the state cache
+	static final int MAX_REPEAT = 16;
+	static final int MAX_DFA_STATES = 10000;
+
+	static final int EPSILON = 0;
+	static final int CONSUME = 1;
+	static final int ACCEPT = 2;
+
+	// The nondeterministic automaton
+	final List<Integer> kinds;
+	final List<int[]> epsilonTargets;
+	final List<BitSet> consumeClasses;
+	final List<Integer> consumeTargets;
+	final List<Integer> acceptRules;
+	int start;
+
+	// Characters are mapped to classes which no pattern distinguishes
+	int[] classBoundaries;
+	int[] asciiClasses;
+
+	final BitSet alwaysMatching;
+
+	// The deterministic automaton, built on demand
+	final Map<StateSet, Integer> dfaIndex = new HashMap<StateSet, Integer>();
+	final List<int[]> dfaSets = new ArrayList<int[]>();
+	final List<int[]> dfaTransitions = new ArrayList<int[]>();
+	final List<int[]> dfaAccepts = new ArrayList<int[]>();
+	int generation = 0;
+
+	static class StateSet {
+		final int[] states;
+		final int hash;
+
+		StateSet(int[] states) {
+			this.states = states;
+			this.hash = Arrays.hashCode(states);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof StateSet && Arrays.equals(states, ((StateSet) other).states);
+		}
+	}
+
+	/**
+	 * @param patterns regular expressions in java.util.regex syntax; null entries are always reported
+	 */
+	public RuleAutomaton(List<String> patterns) {
+		kinds = new ArrayList<Integer>();
+		epsilonTargets = new ArrayList<int[]>();
+		consumeClasses = new ArrayList<BitSet>();
+		consumeTargets = new ArrayList<Integer>();
+		acceptRules = new ArrayList<Integer>();
+		asciiClasses = new int[128];
+		alwaysMatching = new BitSet();
+		List<RegexNode> trees = new ArrayList<RegexNode>();
+		for (int i = 0; i < patterns.size(); i++) {
+			RegexNode tree = null;
+			if (patterns.get(i) != null) {
+				try {
+					RegexParser parser = new RegexParser(patterns.get(i));
+					tree = parser.parse();
+					if (parser.usesFlags() || parser.usesBackReferences() || !isSupported(tree)) {
+						tree = null;
+					}
+				} catch (IllegalArgumentException e) {
+					tree = null;
+				}
+			}
+			if (tree == null) {
+				alwaysMatching.set(i);
+			}
+			trees.add(tree);
+		}
+
+		TreeSet<Integer> boundaries = new TreeSet<Integer>();
+		boundaries.add(0);
+		for (RegexNode tree : trees) {
+			if (tree != null) {
+				collectBoundaries(tree, boundaries);
+			}
+		}
+		classBoundaries = new int[boundaries.size()];
+		int i = 0;
+		for (int boundary : boundaries) {
+			classBoundaries[i++] = boundary;
+		}
+		for (char c = 0; c < asciiClasses.length; c++) {
+			asciiClasses[c] = lookupClass(c);
+		}
+
+		start = newState(EPSILON);
+		int[] starts = new int[trees.size()];
+		int nStarts = 0;
+		for (i = 0; i < trees.size(); i++) {
+			if (trees.get(i) == null) {
+				continue;
+			}
+			int accept = newState(ACCEPT);
+			acceptRules.set(accept, i);
+			starts[nStarts++] = build(trees.get(i), accept);
+		}
+		epsilonTargets.set(start, Arrays.copyOf(starts, nStarts));
+		resetCache();
+	}
+
+	private RuleAutomaton(RuleAutomaton other) {
+		kinds = other.kinds;
+		epsilonTargets = other.epsilonTargets;
+		consumeClasses = other.consumeClasses;
+		consumeTargets = other.consumeTargets;
+		acceptRules = other.acceptRules;
+		start = other.start;
+		classBoundaries = other.classBoundaries;
+		asciiClasses = other.asciiClasses;
+		alwaysMatching = other.alwaysMatching;
+		resetCache();
+	}
+
+	/**
+	 * @return an automaton for the same patterns with its own state cache,
+	 *         for use in another thread
+	 */
+	public RuleAutomaton copy() {
+		return new RuleAutomaton(this);
+	}
+
+	/**
+	 * @return the indices of patterns which may match somewhere in text
+	 */
+	public BitSet matchingRules(CharSequence text) {
+		BitSet res = (BitSet) alwaysMatching.clone();
+		int state = 0;
+		addAccepts(res, state);
+		for (int pos = 0; pos < text.length(); pos++) {
+			int charClass = charClass(text.charAt(pos));
+			int next = dfaTransitions.get(state)[charClass];
+			if (next < 0) {
+				int before = generation;
+				next = dfaState(step(dfaSets.get(state), charClass));
+				if (generation == before) {
+					dfaTransitions.get(state)[charClass] = next;
+				}
+			}
+			state = next;
+			addAccepts(res, state);
+		}
+		return res;
+	}
+
+	private void addAccepts(BitSet res, int state) {
+		for (int rule : dfaAccepts.get(state)) {
+			res.set(rule);
+		}
+	}
+
+	private int charClass(char c) {
+		return c < asciiClasses.length ? asciiClasses[c] : lookupClass(c);
+	}
+
+	private int lookupClass(char c) {
+		int i = Arrays.binarySearch(classBoundaries, c);
+		return i >= 0 ? i : -i - 2;
+	}
+
+	private void collectBoundaries(RegexNode node, TreeSet<Integer> boundaries) {
+		if (node instanceof RegexNode.Literal) {
+			char c = ((RegexNode.Literal) node).value;
+			boundaries.add((int) c);
+			boundaries.add(c + 1);
+		} else if (node instanceof RegexNode.CharClass) {
+			RegexNode.CharClass charClass = (RegexNode.CharClass) node;
+			if (charClass.exact) {
+				for (int i = 0; i < charClass.ranges.length; i += 2) {
+					boundaries.add((int) charClass.ranges[i]);
+					boundaries.add(charClass.ranges[i + 1] + 1);
+				}
+			}
+		} else if (node instanceof RegexNode.Sequence) {
+			for (RegexNode item : ((RegexNode.Sequence) node).items) {
+				collectBoundaries(item, boundaries);
+			}
+		} else if (node instanceof RegexNode.Alternation) {
+			for (RegexNode branch : ((RegexNode.Alternation) node).branches) {
+				collectBoundaries(branch, boundaries);
+			}
+		} else if (node instanceof RegexNode.Group) {
+			collectBoundaries(((RegexNode.Group) node).child, boundaries);
+		} else if (node instanceof RegexNode.Repeat) {
+			collectBoundaries(((RegexNode.Repeat) node).child, boundaries);
+		}
+	}
+
+	private int newState(int kind) {
+		kinds.add(kind);
+		epsilonTargets.add(null);
+		consumeClasses.add(null);
+		consumeTargets.add(-1);
+		acceptRules.add(-1);
+		return kinds.size() - 1;
+	}
+
+	private int newEpsilon(int... targets) {
+		int res = newState(EPSILON);
+		epsilonTargets.set(res, targets);
+		return res;
+	}
+
+	/**
+	 * @return whether {@link #build(RegexNode, int)} can compile node
+	 */
+	private static boolean isSupported(RegexNode node) {
+		if (node instanceof RegexNode.Literal || node instanceof RegexNode.CharClass
+				|| node instanceof RegexNode.Assertion) {
+			return true;
+		} else if (node instanceof RegexNode.Group) {
+			return isSupported(((RegexNode.Group) node).child);
+		} else if (node instanceof RegexNode.Repeat) {
+			return isSupported(((RegexNode.Repeat) node).child);
+		} else if (node instanceof RegexNode.Sequence) {
+			for (RegexNode item : ((RegexNode.Sequence) node).items) {
+				if (!isSupported(item)) {
+					return false;
+				}
+			}
+			return true;
+		} else if (node instanceof RegexNode.Alternation) {
+			for (RegexNode branch : ((RegexNode.Alternation) node).branches) {
+				if (!isSupported(branch)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Adds states matching node, which must be supported, and continuing to next
+	 * @return the first of these states
+	 */
+	private int build(RegexNode node, int next) {
+		if (node instanceof RegexNode.Literal) {
+			BitSet classes = new BitSet();
+			classes.set(lookupClass(((RegexNode.Literal) node).value));
+			return newConsume(classes, next);
+		} else if (node instanceof RegexNode.CharClass) {
+			RegexNode.CharClass charClass = (RegexNode.CharClass) node;
+			BitSet classes = new BitSet();
+			if (charClass.exact) {
+				for (int i = 0; i < charClass.ranges.length; i += 2) {
+					classes.set(lookupClass(charClass.ranges[i]), lookupClass(charClass.ranges[i + 1]) + 1);
+				}
+			} else {
+				classes.set(0, classBoundaries.length);
+			}
+			return newConsume(classes, next);
+		} else if (node instanceof RegexNode.Assertion) {
+			return next;
+		} else if (node instanceof RegexNode.Group) {
+			return build(((RegexNode.Group) node).child, next);
+		} else if (node instanceof RegexNode.Sequence) {
+			List<RegexNode> items = ((RegexNode.Sequence) node).items;
+			for (int i = items.size() - 1; i >= 0; i--) {
+				next = build(items.get(i), next);
+			}
+			return next;
+		} else if (node instanceof RegexNode.Alternation) {
+			List<RegexNode> branches = ((RegexNode.Alternation) node).branches;
+			int[] targets = new int[branches.size()];
+			for (int i = 0; i < targets.length; i++) {
+				targets[i] = build(branches.get(i), next);
+			}
+			return newEpsilon(targets);
+		} else if (node instanceof RegexNode.Repeat) {
+			RegexNode.Repeat repeat = (RegexNode.Repeat) node;
+			int min = repeat.min;
+			int max = repeat.max;
+			if (min > MAX_REPEAT || max > MAX_REPEAT) {
+				// accept more than the pattern does
+				min = Math.min(min, MAX_REPEAT);
+				max = -1;
+			}
+			if (max < 0) {
+				int loop = newEpsilon();
+				epsilonTargets.set(loop, new int[] {build(repeat.child, loop), next});
+				next = loop;
+			} else {
+				int end = next;
+				for (int i = min; i < max; i++) {
+					next = newEpsilon(build(repeat.child, next), end);
+				}
+			}
+			for (int i = 0; i < min; i++) {
+				next = build(repeat.child, next);
+			}
+			return next;
+		}
+		throw new IllegalArgumentException("Cannot compile " + node);
+	}
+
+	private int newConsume(BitSet classes, int next) {
+		int res = newState(CONSUME);
+		consumeClasses.set(res, classes);
+		consumeTargets.set(res, next);
+		return res;
+	}
+
+	/**
+	 * @return the sorted consuming and accepting states reachable from states
+	 *         (and from the start, to find matches at any offset)
+	 */
+	private int[] closure(int[] states, int nStates) {
+		BitSet visited = new BitSet(kinds.size());
+		BitSet res = new BitSet(kinds.size());
+		int[] stack = new int[kinds.size()];
+		int top = 0;
+		stack[top++] = start;
+		visited.set(start);
+		for (int i = 0; i < nStates; i++) {
+			if (!visited.get(states[i])) {
+				visited.set(states[i]);
+				stack[top++] = states[i];
+			}
+		}
+		while (top > 0) {
+			int state = stack[--top];
+			if (kinds.get(state) != EPSILON) {
+				res.set(state);
+				continue;
+			}
+			for (int target : epsilonTargets.get(state)) {
+				if (!visited.get(target)) {
+					visited.set(target);
+					stack[top++] = target;
+				}
+			}
+		}
+		int[] sorted = new int[res.cardinality()];
+		int i = 0;
+		for (int state = res.nextSetBit(0); state >= 0; state = res.nextSetBit(state + 1)) {
+			sorted[i++] = state;
+		}
+		return sorted;
+	}
+
+	private int[] step(int[] set, int charClass) {
+		int[] targets = new int[set.length];
+		int nTargets = 0;
+		for (int state : set) {
+			if (kinds.get(state) == CONSUME && consumeClasses.get(state).get(charClass)) {
+				targets[nTargets++] = consumeTargets.get(state);
+			}
+		}
+		return closure(targets, nTargets);
+	}
+
+	private void resetCache() {
+		dfaIndex.clear();
+		dfaSets.clear();
+		dfaTransitions.clear();
+		dfaAccepts.clear();
+		generation++;
+		dfaState(closure(new int[0], 0));
+	}
+
+	/**
+	 * @return the id of the deterministic state for set, adding it if necessary
+	 */
+	private int dfaState(int[] set) {
+		StateSet key = new StateSet(set);
+		Integer res = dfaIndex.get(key);
+		if (res != null) {
+			return res;
+		}
+		if (dfaSets.size() >= MAX_DFA_STATES) {
+			resetCache();
+		}
+		res = dfaSets.size();
+		dfaIndex.put(key, res);
+		dfaSets.add(set);
+		int[] transitions = new int[classBoundaries.length];
+		Arrays.fill(transitions, -1);
+		dfaTransitions.add(transitions);
+		int nAccepts = 0;
+		int[] accepts = new int[set.length];
+		for (int state : set) {
+			if (kinds.get(state) == ACCEPT) {
+				accepts[nAccepts++] = acceptRules.get(state);
+			}
+		}
+		dfaAccepts.add(Arrays.copyOf(accepts, nAccepts));
+		return res;
+	}
+}
@@ -0,0 +1,256 @@
+package de.unihd.dbs.uima.annotator.heideltime.substitutions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.MatchResult;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.util.Level;
+
+/**
+ * An expression flattened into a list of operations which append its value
+ * to a StringBuilder, so that it can be evaluated into a reused buffer
+ * rather than building a CharSequence for each sub-expression. A function's
+ * argument is appended to the buffer first, and then replaced by the
+ * function's value. The value is the same as that of the expression
+ * compiled, and it fails with the same kinds of exception.
+ */
+public class CompiledExpression implements Expression {
+	private static final long serialVersionUID = 1L;
+
+	// operations, each followed by its operands in code
+	static final int LITERAL = 0; // constant: append it
+	static final int GROUP = 1; // group: append it, or "null" if it did not match
+	static final int STRICT_GROUP = 2; // group: append it, which must have matched
+	static final int MARK = 3; // slot: record the buffer length
+	static final int NORMALIZE = 4; // slot, constant: replace from mark by its normalization
+	static final int NORMALIZE_GROUP = 5; // group, constant: append the normalization of the group
+	static final int SUBSTRING = 6; // slot, start, end: replace from mark by its substring
+	static final int UPPERCASE = 7; // slot: replace from mark by it in upper case
+	static final int LOWERCASE = 8; // slot: replace from mark by it in lower case
+	static final int SUM = 9; // slot, slot: replace the two numbers from the marks by their sum
+
+	final Expression source;
+	final int[] code;
+	final Object[] constants;
+	final int nSlots;
+
+	private CompiledExpression(Expression source, int[] code, Object[] constants, int nSlots) {
+		this.source = source;
+		this.code = code;
+		this.constants = constants;
+		this.nSlots = nSlots;
+	}
+
+	/**
+	 * @return expression compiled, or null if it has a sub-expression of a
+	 *         type that cannot be compiled
+	 */
+	public static CompiledExpression compile(Expression expression) {
+		Compiler compiler = new Compiler();
+		if (!compiler.compile(expression, false)) {
+			return null;
+		}
+		int[] code = new int[compiler.code.size()];
+		for (int i = 0; i < code.length; i++) {
+			code[i] = compiler.code.get(i);
+		}
+		return new CompiledExpression(expression, code, compiler.constants.toArray(), compiler.nSlots);
+	}
+
+	private static class Compiler {
+		final List<Integer> code = new ArrayList<Integer>();
+		final List<Object> constants = new ArrayList<Object>();
+		int nSlots = 0;
+
+		private void emit(int... ops) {
+			for (int op : ops) {
+				code.add(op);
+			}
+		}
+
+		private int constant(Object value) {
+			constants.add(value);
+			return constants.size() - 1;
+		}
+
+		private int mark() {
+			emit(MARK, nSlots);
+			return nSlots++;
+		}
+
+		/**
+		 * @param inConcatenation whether a group which did not match is
+		 *        appended as "null", rather than an error
+		 * @return false if expression cannot be compiled
+		 */
+		boolean compile(Expression expression, boolean inConcatenation) {
+			if (expression instanceof Literal) {
+				emit(LITERAL, constant(((Literal) expression).value));
+			} else if (expression instanceof MatchGroup) {
+				emit(inConcatenation ? GROUP : STRICT_GROUP, ((MatchGroup) expression).group);
+			} else if (expression instanceof Concatenation) {
+				for (Expression constituent : ((Concatenation) expression).constituents) {
+					if (!compile(constituent, true)) {
+						return false;
+					}
+				}
+			} else if (expression instanceof Normalization) {
+				Normalization normalization = (Normalization) expression;
+				if (normalization.keyExpression instanceof Concatenation) {
+					// looked up as a StringBuilder, which is never found
+					return false;
+				} else if (normalization.keyExpression instanceof MatchGroup) {
+					emit(NORMALIZE_GROUP, ((MatchGroup) normalization.keyExpression).group, constant(normalization));
+				} else {
+					int slot = mark();
+					if (!compile(normalization.keyExpression, false)) {
+						return false;
+					}
+					emit(NORMALIZE, slot, constant(normalization));
+				}
+			} else if (expression instanceof Substring) {
+				Substring substring = (Substring) expression;
+				int slot = mark();
+				if (!compile(substring.expr, false)) {
+					return false;
+				}
+				emit(SUBSTRING, slot, substring.start, substring.end);
+			} else if (expression instanceof Uppercase) {
+				int slot = mark();
+				if (!compile(((Uppercase) expression).expr, false)) {
+					return false;
+				}
+				emit(UPPERCASE, slot);
+			} else if (expression instanceof Lowercase) {
+				int slot = mark();
+				if (!compile(((Lowercase) expression).expr, false)) {
+					return false;
+				}
+				emit(LOWERCASE, slot);
+			} else if (expression instanceof Sum) {
+				Sum sum = (Sum) expression;
+				int slotA = mark();
+				if (!compile(sum.a, false)) {
+					return false;
+				}
+				int slotB = mark();
+				if (!compile(sum.b, false)) {
+					return false;
+				}
+				emit(SUM, slotA, slotB);
+			} else {
+				return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Appends the value of this expression for ruleMatch to out.
+	 */
+	public void appendTo(MatchResult ruleMatch, StringBuilder out) {
+		int[] marks = nSlots == 0 ? null : new int[nSlots];
+		int pc = 0;
+		while (pc < code.length) {
+			switch (code[pc++]) {
+			case LITERAL:
+				out.append((String) constants[code[pc++]]);
+				break;
+			case GROUP: {
+				String group = ruleMatch.group(code[pc++]);
+				out.append(group);
+				break;
+			}
+			case STRICT_GROUP: {
+				int g = code[pc++];
+				String group = ruleMatch.group(g);
+				if (group == null) {
+					throw new NullPointerException("group(" + g + ") did not match");
+				}
+				out.append(group);
+				break;
+			}
+			case MARK:
+				marks[code[pc++]] = out.length();
+				break;
+			case NORMALIZE: {
+				int mark = marks[code[pc++]];
+				Normalization normalization = (Normalization) constants[code[pc++]];
+				String value = normalize(normalization, out.substring(mark), ruleMatch);
+				out.setLength(mark);
+				out.append(value);
+				break;
+			}
+			case NORMALIZE_GROUP: {
+				String key = ruleMatch.group(code[pc++]);
+				Normalization normalization = (Normalization) constants[code[pc++]];
+				if (key == null) {
+					UIMAFramework.getLogger(Normalization.class).log(Level.FINE, "Empty part to normalize in " + normalization);
+				} else {
+					out.append(normalize(normalization, key, ruleMatch));
+				}
+				break;
+			}
+			case SUBSTRING: {
+				int mark = marks[code[pc++]];
+				int start = code[pc++];
+				int end = code[pc++];
+				if (start < 0 || end > out.length() - mark || start > end) {
+					throw new StringIndexOutOfBoundsException("substring(" + start + ", " + end + ") of \""
+							+ out.substring(mark) + "\"");
+				}
+				out.setLength(mark + end);
+				out.delete(mark, mark + start);
+				break;
+			}
+			case UPPERCASE: {
+				int mark = marks[code[pc++]];
+				String value = out.substring(mark).toUpperCase();
+				out.setLength(mark);
+				out.append(value);
+				break;
+			}
+			case LOWERCASE: {
+				int mark = marks[code[pc++]];
+				String value = out.substring(mark).toLowerCase();
+				out.setLength(mark);
+				out.append(value);
+				break;
+			}
+			case SUM: {
+				int markA = marks[code[pc++]];
+				int markB = marks[code[pc++]];
+				int sum = Integer.parseInt(out.substring(markA, markB)) + Integer.parseInt(out.substring(markB));
+				out.setLength(markA);
+				out.append(sum);
+				break;
+			}
+			default:
+				throw new IllegalStateException("Invalid operation at " + (pc - 1) + " in " + this);
+			}
+		}
+	}
+
+	private static String normalize(Normalization normalization, String key, MatchResult ruleMatch) {
+		Map<String, String> lookup = normalization.lookup;
+		String res = lookup.get(key);
+		if (res == null) {
+			throw new RuntimeException("No normalization key found: \"" + key + "\" [from " + normalization + "]\n" + ruleMatch);
+		}
+		return res;
+	}
+
+	@Override
+	public CharSequence evaluate(MatchResult ruleMatch) {
+		StringBuilder res = new StringBuilder();
+		appendTo(ruleMatch, res);
+		return res;
+	}
+
+	@Override
+	public String toString() {
+		return source.toString();
+	}
+}
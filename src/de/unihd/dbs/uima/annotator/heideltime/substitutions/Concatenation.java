@@ -5,6 +5,7 @@ import java.util.List;
 import java.util.regex.MatchResult;
 
 public class Concatenation implements Expression {
+	private static final long serialVersionUID = 1L;
 	
 	List<Expression> constituents;
 	
@@ -1,7 +1,8 @@
 package de.unihd.dbs.uima.annotator.heideltime.substitutions;
 
+import java.io.Serializable;
 import java.util.regex.MatchResult;
 
-public interface Expression {
+public interface Expression extends Serializable {
 	public CharSequence evaluate(MatchResult ruleMatch);
 }
@@ -3,6 +3,7 @@ package de.unihd.dbs.uima.annotator.heideltime.substitutions;
 import java.util.regex.MatchResult;
 
 public class Literal implements Expression {
+	private static final long serialVersionUID = 1L;
 	String value;
 	public Literal(String value) {
 		this.value = value;
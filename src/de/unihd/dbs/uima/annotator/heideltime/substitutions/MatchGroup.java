@@ -3,6 +3,7 @@ package de.unihd.dbs.uima.annotator.heideltime.substitutions;
 import java.util.regex.MatchResult;
 
 public class MatchGroup implements Function {
+	private static final long serialVersionUID = 1L;
 	
 	int group;
 
@@ -0,0 +1,43 @@
+package de.unihd.dbs.uima.annotator.heideltime.substitutions;
+
+import java.util.BitSet;
+
+/**
+ * Finds which groups of a rule match an expression reads. As expressions
+ * depend on nothing else, their values may be reused for matches with the
+ * same text in those groups.
+ */
+public class MatchGroups {
+
+	/**
+	 * Adds the numbers of the groups read by expression to groups.
+	 * @return false if expression is of a type not known to depend only on
+	 *         the groups it reads
+	 */
+	public static boolean collect(Expression expression, BitSet groups) {
+		if (expression instanceof MatchGroup) {
+			groups.set(((MatchGroup) expression).group);
+			return true;
+		} else if (expression instanceof Literal) {
+			return true;
+		} else if (expression instanceof Concatenation) {
+			for (Expression constituent : ((Concatenation) expression).constituents) {
+				if (!collect(constituent, groups)) {
+					return false;
+				}
+			}
+			return true;
+		} else if (expression instanceof Normalization) {
+			return collect(((Normalization) expression).keyExpression, groups);
+		} else if (expression instanceof Substring) {
+			return collect(((Substring) expression).expr, groups);
+		} else if (expression instanceof Uppercase) {
+			return collect(((Uppercase) expression).expr, groups);
+		} else if (expression instanceof Lowercase) {
+			return collect(((Lowercase) expression).expr, groups);
+		} else if (expression instanceof Sum) {
+			return collect(((Sum) expression).a, groups) && collect(((Sum) expression).b, groups);
+		}
+		return false;
+	}
+}
@@ -8,6 +8,7 @@ import org.apache.uima.util.Level;
 
 
 public class Normalization implements Function {
+	private static final long serialVersionUID = 1L;
 	String normGroup;
 	Map<String, String> lookup;
 	Expression keyExpression;
@@ -3,6 +3,7 @@ package de.unihd.dbs.uima.annotator.heideltime.substitutions;
 import java.util.regex.MatchResult;
 
 public class Uppercase implements Function {
+	private static final long serialVersionUID = 1L;
 	Expression expr;
 	
 	public Uppercase(Expression expr) {
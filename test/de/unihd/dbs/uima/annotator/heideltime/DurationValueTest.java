@@ -0,0 +1,57 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class DurationValueTest {
+
+	private static void assertNormalized(String expected, String value) {
+		assertEquals(value, expected, DurationValue.normalize(value));
+	}
+
+	@Test
+	public void testLadder() {
+		assertNormalized("PT2M", "PT120S");
+		assertNormalized("PT2H", "PT7200S");
+		assertNormalized("P1D", "PT86400S");
+		assertNormalized("PT2H", "PT120M");
+		assertNormalized("P1D", "PT1440M");
+		assertNormalized("P2D", "PT48H");
+		assertNormalized("PT25H", "PT1500M");
+		assertNormalized("P2Y", "P24M");
+		assertNormalized("P1Y", "P12M");
+	}
+
+	@Test
+	public void testUnchanged() {
+		for (String value : new String[] {"PT90M", "PT90S", "PT25H", "P14D", "P18M", "P2Y", "P3W", "PT2H",
+				"PXY", "PTXM", "P", "PT", "PTM", "P12", "P12MT", "P1Y6M", "PT1H30M", "2010-01", "UNDEF-year",
+				"P1.5M", "PT-60M", "pt60m"}) {
+			assertNormalized(value, value);
+		}
+	}
+
+	/**
+	 * Amounts of up to 18 digits are converted; longer ones, which might not
+	 * fit in a long, are left as they are.
+	 */
+	@Test
+	public void testOverflow() {
+		assertNormalized("P20000000000000000Y", "P240000000000000000M");
+		assertNormalized("PT2000000000000000M", "PT120000000000000000S");
+		assertNormalized("PT1200000000000000000S", "PT1200000000000000000S");
+		assertNormalized("P9223372036854775807M", "P9223372036854775807M");
+		assertNormalized("P120000000000000000000M", "P120000000000000000000M");
+	}
+
+	@Test
+	public void testZero() {
+		assertNormalized("P0D", "PT0M");
+		assertNormalized("P0D", "PT0S");
+		assertNormalized("P0D", "PT0H");
+		assertNormalized("P0Y", "P0M");
+		assertNormalized("P0D", "P0D");
+		assertNormalized("P0D", "PT000M");
+	}
+}
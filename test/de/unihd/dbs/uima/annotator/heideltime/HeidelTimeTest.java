@@ -0,0 +1,72 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.jcas.JCas;
+import org.junit.Before;
+import org.junit.Test;
+import org.uimafit.factory.JCasFactory;
+import org.uimafit.factory.TypeSystemDescriptionFactory;
+import org.uimafit.util.JCasUtil;
+
+import de.unihd.dbs.uima.types.heideltime.Timex3;
+
+/**
+ * Tests the deprecated passes over timexes already in the CAS.
+ */
+public class HeidelTimeTest {
+
+	private HeidelTime heidelTime;
+	private JCas jcas;
+
+	@Before
+	public void setUp() throws Exception {
+		heidelTime = new HeidelTime();
+		heidelTime.logger = UIMAFramework.getLogger(HeidelTime.class);
+		jcas = JCasFactory.createJCas(TypeSystemDescriptionFactory.createTypeSystemDescription());
+		jcas.setDocumentText("on Monday, January 15, 2010 and every week since");
+	}
+
+	private void addTimex(int begin, int end, int id, String type, String value, String rule) {
+		Timex3 t = new Timex3(jcas, begin, end);
+		t.setTimexId(TimexCandidate.formatTimexId(id));
+		t.setTimexType(type);
+		t.setTimexValue(value);
+		t.setFoundByRule(rule);
+		t.addToIndexes();
+	}
+
+	private List<String> timexIds() {
+		List<String> res = new ArrayList<String>();
+		for (Timex3 t : JCasUtil.select(jcas, Timex3.class)) {
+			res.add(t.getTimexId());
+		}
+		return res;
+	}
+
+	@SuppressWarnings("deprecation")
+	@Test
+	public void testDeleteOverlappedTimexes() {
+		addTimex(3, 9, 0, "DATE", "UNDEF-this-day-monday", "date_r1-relative");
+		addTimex(11, 27, 1, "DATE", "2010-01-15", "date_r2-explicit");
+		addTimex(11, 27, 2, "DATE", "UNDEF-year-01-15", "date_r3-relative");
+		addTimex(11, 22, 3, "DATE", "UNDEF-year-01-15", "date_r4-relative");
+		addTimex(32, 42, 4, "SET", "P1W", "set_r1");
+		addTimex(32, 42, 5, "DURATION", "P1W", "duration_r1");
+		heidelTime.deleteOverlappedTimexes(jcas);
+		assertEquals("[t0, t1, t5]", timexIds().toString());
+	}
+
+	@SuppressWarnings("deprecation")
+	@Test
+	public void testRemoveInvalids() {
+		addTimex(3, 9, 0, "DATE", "REMOVE", "date_r1-relative");
+		addTimex(11, 27, 1, "DATE", "2010-01-15", "date_r2-explicit");
+		heidelTime.removeInvalids(jcas);
+		assertEquals("[t1]", timexIds().toString());
+	}
+}
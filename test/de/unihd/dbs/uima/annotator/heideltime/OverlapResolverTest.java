@@ -0,0 +1,227 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class OverlapResolverTest {
+
+	/**
+	 * A timex as seen by the pairwise deduplication OverlapResolver replaces.
+	 */
+	static class Timex {
+		final int index;
+		final int begin;
+		final int end;
+		final String timexType;
+		final String timexValue;
+		final String foundByRule;
+		final String timexId;
+
+		Timex(int index, int begin, int end, int id, int flags) {
+			this.index = index;
+			this.begin = begin;
+			this.end = end;
+			this.timexType = (flags & OverlapResolver.SET) != 0 ? "SET" : "DATE";
+			this.timexValue = (flags & OverlapResolver.UNDEF) != 0 ? "UNDEF-year-01" : "2010-01";
+			this.foundByRule = (flags & OverlapResolver.EXPLICIT) != 0 ? "date_r1-explicit" : "date_r1-relative";
+			this.timexId = "t" + id;
+		}
+	}
+
+	/**
+	 * The deduplication of overlapping Timex3 annotations as it was done on
+	 * the CAS index: each timex is paired with those from the first with its
+	 * span on, in index order, which begin before it ends.
+	 */
+	static class PairwiseDeduplicator {
+		final Set<Timex> toRemove = new HashSet<Timex>();
+		final List<String> unhandled = new ArrayList<String>();
+
+		BitSet findToRemove(List<Timex> timexes) {
+			List<Timex> index = new ArrayList<Timex>(timexes);
+			Collections.sort(index, new Comparator<Timex>() {
+				public int compare(Timex t1, Timex t2) {
+					if (t1.begin != t2.begin) {
+						return t1.begin < t2.begin ? -1 : 1;
+					}
+					return t1.end > t2.end ? -1 : (t1.end < t2.end ? 1 : 0);
+				}
+			});
+			for (Timex a1 : index) {
+				int first = 0;
+				while (index.get(first).begin != a1.begin || index.get(first).end != a1.end) {
+					first++;
+				}
+				for (int k = first; k < index.size() && a1.end > index.get(k).begin; k++) {
+					Timex a2 = index.get(k);
+					if (a1 != a2) {
+						handle(a1, a2);
+					}
+				}
+			}
+			BitSet res = new BitSet();
+			for (Timex t : toRemove) {
+				if (t != null) {
+					res.set(t.index);
+				}
+			}
+			return res;
+		}
+
+		void handle(Timex a1, Timex a2) {
+			if (toRemove.contains(a1) || toRemove.contains(a2)) {
+				return;
+			}
+			toRemove.add(selectForRemoval(a1, a2));
+		}
+
+		Timex selectForRemoval(Timex t1, Timex t2) {
+			if (t1.end > t2.end || (t1.end == t2.end && t1.begin < t2.begin)) {
+				// t2 covered by t1
+				return t2;
+			} else if (t1.end != t2.end) {
+				unhandled.add(t1.index + "," + t2.index);
+				return null;
+			}
+			if (t1.timexType.equals("SET") || t2.timexType.equals("SET")) {
+				return selectLowestId(t1, t2);
+			}
+			boolean t1Undef = t1.timexValue.startsWith("UNDEF");
+			boolean t2Undef = t2.timexValue.startsWith("UNDEF");
+			if (t1Undef && !t2Undef) {
+				return t1;
+			} else if (t2Undef && !t1Undef) {
+				return t2;
+			}
+			boolean t1Explicit = t1.foundByRule.endsWith("explicit");
+			boolean t2Explicit = t2.foundByRule.endsWith("explicit");
+			if (t1Explicit && !t2Explicit) {
+				return t2;
+			} else if (t2Explicit && !t1Explicit) {
+				return t1;
+			}
+			return selectLowestId(t1, t2);
+		}
+
+		Timex selectLowestId(Timex t1, Timex t2) {
+			if (Integer.parseInt(t1.timexId.substring(1)) < Integer.parseInt(t2.timexId.substring(1))) {
+				return t1;
+			}
+			return t2;
+		}
+	}
+
+	static class RecordingResolver extends OverlapResolver {
+		final List<String> unhandled = new ArrayList<String>();
+
+		@Override
+		protected void unhandledOverlap(int i, int j) {
+			unhandled.add(i + "," + j);
+		}
+	}
+
+	/**
+	 * Adds n random timexes to resolver and returns them, drawing spans from
+	 * few enough offsets that many are identical.
+	 */
+	private static List<Timex> addRandom(Random random, OverlapResolver resolver, int n, int nOffsets,
+			boolean sorted) {
+		List<int[]> spans = new ArrayList<int[]>();
+		for (int i = 0; i < n; i++) {
+			int begin = random.nextInt(nOffsets);
+			spans.add(new int[] {begin, begin + 1 + random.nextInt(6)});
+		}
+		if (sorted) {
+			Collections.sort(spans, new Comparator<int[]>() {
+				public int compare(int[] a, int[] b) {
+					return a[0] != b[0] ? a[0] - b[0] : b[1] - a[1];
+				}
+			});
+		}
+		List<Integer> ids = new ArrayList<Integer>();
+		for (int i = 0; i < n; i++) {
+			ids.add(i + 1);
+		}
+		Collections.shuffle(ids, random);
+		List<Timex> res = new ArrayList<Timex>();
+		for (int i = 0; i < n; i++) {
+			int flags = random.nextInt(8);
+			int index = resolver.add(spans.get(i)[0], spans.get(i)[1], ids.get(i), flags);
+			assertEquals(i, index);
+			res.add(new Timex(index, spans.get(i)[0], spans.get(i)[1], ids.get(i), flags));
+		}
+		return res;
+	}
+
+	/**
+	 * The timexes removed, and the partial overlaps reported, are those of
+	 * the pairwise deduplication, for timexes added in and out of order.
+	 */
+	@Test
+	public void testAgreesWithPairwise() {
+		Random random = new Random(42);
+		int nRemoved = 0;
+		for (int trial = 0; trial < 2000; trial++) {
+			int n = 1 + random.nextInt(trial < 1900 ? 40 : 1500);
+			RecordingResolver resolver = new RecordingResolver();
+			List<Timex> timexes = addRandom(random, resolver, n, 1 + random.nextInt(n), trial % 3 == 0);
+			PairwiseDeduplicator pairwise = new PairwiseDeduplicator();
+			BitSet expected = pairwise.findToRemove(timexes);
+			assertEquals("trial " + trial, expected, resolver.resolve());
+			assertEquals("trial " + trial, pairwise.unhandled, resolver.unhandled);
+			nRemoved += expected.cardinality();
+		}
+		assertTrue(nRemoved > 0);
+	}
+
+	/**
+	 * Of timexes with the same span, one is kept by the precedence of SET,
+	 * UNDEF, EXPLICIT and id.
+	 */
+	@Test
+	public void testIdenticalSpans() {
+		int set = OverlapResolver.SET;
+		int undef = OverlapResolver.UNDEF;
+		int explicit = OverlapResolver.EXPLICIT;
+		// flags and id of each timex, and the one kept
+		int[][][] cases = {
+			{{set | explicit, 1}, {undef, 2}, {1}},
+			{{undef | explicit, 1}, {0, 2}, {1}},
+			{{explicit, 1}, {0, 2}, {0}},
+			{{0, 3}, {0, 2}, {0}},
+			{{explicit | undef, 5}, {explicit, 4}, {undef, 6}, {1}},
+		};
+		for (int[][] testCase : cases) {
+			OverlapResolver resolver = new OverlapResolver();
+			for (int i = 0; i < testCase.length - 1; i++) {
+				resolver.add(10, 20, testCase[i][1], testCase[i][0]);
+			}
+			BitSet kept = new BitSet();
+			kept.set(0, testCase.length - 1);
+			kept.andNot(resolver.resolve());
+			assertEquals(1, kept.cardinality());
+			assertEquals(testCase[testCase.length - 1][0], kept.nextSetBit(0));
+		}
+	}
+
+	@Test
+	public void testCoveredRemoved() {
+		OverlapResolver resolver = new OverlapResolver();
+		resolver.add(5, 8, 1, OverlapResolver.SET);
+		resolver.add(0, 10, 2, OverlapResolver.UNDEF);
+		resolver.add(0, 8, 3, 0);
+		resolver.add(12, 14, 4, 0);
+		BitSet removed = resolver.resolve();
+		assertEquals("{0, 2}", removed.toString());
+	}
+}
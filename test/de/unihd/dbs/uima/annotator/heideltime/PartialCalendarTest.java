@@ -6,6 +6,7 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -49,6 +50,30 @@ public class PartialCalendarTest {
 		assertHasFields(partial, PartialCalendar.DAY_OF_WEEK, PartialCalendar.DAY_OF_WEEK_IN_MONTH, PartialCalendar.DAY_OF_YEAR, PartialCalendar.WEEK_OF_YEAR, PartialCalendar.WEEK_OF_MONTH);
 	}
 	
+	@Test
+	public void testImplicaturesClosure() {
+		List<Implicature> many = new ArrayList<Implicature>();
+		for (int field = 0; field < 20; field++) {
+			many.add(new Implicature(PartialCalendar.makeMask(field), PartialCalendar.makeMask(field + 1, (field * 7) % 25)));
+		}
+		List<List<Implicature>> lists = new ArrayList<List<Implicature>>();
+		lists.add(PartialCalendar.DEFAULT_IMPLICATURES);
+		lists.add(TimexCalendar.TIMEX_IMPLICATURES);
+		lists.add(firstImplicature());
+		lists.add(many); // too many condition fields to tabulate
+		Random random = new Random(42);
+		for (List<Implicature> list : lists) {
+			PartialCalendar.Implicatures compiled = new PartialCalendar.Implicatures(list);
+			assertEquals(list, compiled);
+			// as implied(), which also takes any collection, applies them
+			List<Implicature> uncompiled = new ArrayList<Implicature>(list);
+			for (int i = 0; i < 10000; i++) {
+				int mask = random.nextInt(1 << 25) & random.nextInt(1 << 25);
+				assertEquals(PartialCalendar.implied(uncompiled, mask), compiled.implied(mask));
+			}
+		}
+	}
+	
 	@Test
 	public void testMarkSet() {
 		List<PartialCalendar.Implicature> implicatures = new ArrayList<PartialCalendar.Implicature>(); // empty
@@ -0,0 +1,137 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import de.unihd.dbs.uima.annotator.heideltime.regex.RegexParser;
+
+public class RulePrefilterTest extends ShippedRulesTestCase {
+
+	/**
+	 * Asserts that every pattern finding a match in one of texts is a
+	 * candidate of prefilter, with its first match starting no earlier than
+	 * the candidate's start.
+	 * @return the number of matches checked
+	 */
+	private static int assertCandidates(String message, RulePrefilter prefilter, List<Pattern> patterns,
+			List<String> texts) {
+		int nMatches = 0;
+		for (String text : texts) {
+			RulePrefilter.Candidates candidates = prefilter.candidates(text);
+			for (int i = 0; i < patterns.size(); i++) {
+				Matcher m = patterns.get(i).matcher(text);
+				if (!m.find()) {
+					continue;
+				}
+				nMatches++;
+				assertTrue(message + ": rule " + i + " " + patterns.get(i) + " matches " + m.group()
+						+ " in " + text, candidates.contains(i));
+				assertTrue(message + ": rule " + i + " " + patterns.get(i) + " matches at " + m.start()
+						+ " in " + text, candidates.getStart(i) <= m.start());
+			}
+		}
+		return nMatches;
+	}
+
+	/**
+	 * The rules left out of the candidates for a sentence do not match it.
+	 */
+	@Test
+	public void testCandidatesIncludeShippedRulesMatching() throws Exception {
+		for (RuleSet rules : shippedRuleSets()) {
+			int nMatches = assertCandidates(rules.toString(), rules.matcher.prefilter, rules.patterns, rules.texts);
+			assertTrue(rules.toString(), nMatches > 0);
+		}
+	}
+
+	/**
+	 * Text only seen by lookbehind, or matched case insensitively, is not
+	 * required of a match.
+	 */
+	@Test
+	public void testCandidatesIncludeRulesWithLookaroundAndFlags() throws Exception {
+		List<String> extractions = Arrays.asList(
+				"(?<=on )%reMonth %reYear",
+				"(?<!since )%reMonth",
+				"%reYear(?= and)",
+				"(?i)in %reYear",
+				"(?<=\\b(?:[Ii]n|[Aa]t) )(early|late) %reYear",
+				"([Ll]ast|[Nn]ext) (week|month)");
+		assertCustomCandidates("lookaround", extractions,
+				"signed on March 2010 and IN 2011",
+				"since February, at early 1999 and In late 2001",
+				"in January and 2003 and LAST WEEK or Next month");
+	}
+
+	/**
+	 * Rules whose matches begin with something other than a literal, or
+	 * contain no literal at all, may start anywhere their other parts allow,
+	 * and rules requiring no literal are candidates for any text.
+	 */
+	@Test
+	public void testCandidatesIncludeRulesWithNonLiteralPrefixes() throws Exception {
+		List<String> extractions = Arrays.asList(
+				"\\d{1,2} %reMonth",
+				"(?:[Tt]he |)%reMonth %reYear",
+				"[0-9]+ (days|weeks)",
+				"(early|late|)%reYear",
+				"%reYear",
+				"\\d+(?:st|nd|rd|th)",
+				".{0,3}of %reMonth",
+				"\\d{2,4}");
+		assertCustomCandidates("non-literal prefix", extractions,
+				"on 14 March and the February 2010 or 3 days, 12 weeks",
+				"late 1999, 21st of January",
+				"nothing of note");
+		RulePrefilter.Candidates candidates = customPrefilter(extractions).candidates("no digits here");
+		assertTrue(candidates.contains(7));
+		assertEquals(0, candidates.getStart(7));
+		assertFalse(candidates.contains(4));
+	}
+
+	private static Map<String, String> customVariables() {
+		Map<String, String> variables = new HashMap<String, String>();
+		variables.put("reMonth", "(January|February|March)");
+		variables.put("reYear", "(\\\\d\\\\d\\\\d\\\\d)");
+		return variables;
+	}
+
+	private static RulePrefilter customPrefilter(List<String> extractions) {
+		Map<String, String> placeholders = new HashMap<String, String>();
+		for (String name : customVariables().keySet()) {
+			placeholders.put(name, RegexParser.variable(name));
+		}
+		List<String> expanded = new ArrayList<String>();
+		for (String extraction : extractions) {
+			expanded.add(TimexRuleMatcher.expandExtraction(extraction, placeholders));
+		}
+		return new RulePrefilter(expanded, customVariables());
+	}
+
+	/**
+	 * Asserts the candidates of a prefilter of extractions over texts, also
+	 * in upper and lower case, with each rule matching one of them.
+	 */
+	private static void assertCustomCandidates(String message, List<String> extractions, String... texts) {
+		List<Pattern> patterns = new ArrayList<Pattern>();
+		for (String extraction : extractions) {
+			patterns.add(Pattern.compile(TimexRuleMatcher.expandExtraction(extraction, customVariables())));
+		}
+		List<String> cases = new ArrayList<String>();
+		for (String text : texts) {
+			cases.add(text);
+			cases.add(text.toUpperCase());
+			cases.add(text.toLowerCase());
+		}
+		assertTrue(message, assertCandidates(message, customPrefilter(extractions), patterns, cases) >= extractions.size());
+	}
+}
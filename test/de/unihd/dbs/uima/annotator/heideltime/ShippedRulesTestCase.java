@@ -0,0 +1,235 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Base of the tests of rule matching and of the analyses of rule patterns,
+ * which are compared with java.util.regex. It gives them the rules and
+ * resources shipped for each language and sentences to match them against.
+ */
+public abstract class ShippedRulesTestCase {
+
+	protected static final String[] LANGUAGES = {"english", "german", "dutch"};
+
+	// the languages whose rules can all be read; the dutch time rules use
+	// a normalization (normMinute) which is not among its resources
+	protected static final String[] RULE_LANGUAGES = {"english", "german"};
+
+	protected static final String[] TIMEX_TYPES = {"DATE", "TIME", "DURATION", "SET"};
+
+	private static final String[] ENGLISH = {
+		"The company said on January 15, 2010 that its profit rose in the third quarter.",
+		"Last year it had warned that sales would not recover until next year.",
+		"The deal, agreed in the summer of 2012, was signed on Monday after three hours of talks.",
+		"Prices have risen for at least the last twenty years, and for at least the last 20 years in cities.",
+		"The plant will close at the beginning of November 1999 and reopen in mid-2001.",
+		"Sales fell in the early nineteen seventies and again in the late 1980s.",
+		"Shares rose every Tuesday morning and twice a week during the 1990s.",
+		"Talks lasted nearly two decades, from March 2009 until 10:30 a.m. on Friday.",
+		"It was founded on 4 July 1998 and listed on Sept. 14 and 18, 2010.",
+		"The year-earlier first quarter was weak, but the quarter ended 2009-12-19T17:00:00 was strong.",
+		"He arrived at 5 pm yesterday, stayed for 3 days and left on 12/24/2003 at noon.",
+		"Each winter since the 19th century, and daily in the 21st century, tonight and this afternoon.",
+		"The fiscal 2005 results, due in the fourth quarter of FY2005, came 2 weeks after Christmas.",
+	};
+
+	private static final String[] GERMAN = {
+		"Am 15. Januar 2010 teilte das Unternehmen mit, dass der Gewinn im dritten Quartal gestiegen sei.",
+		"Im letzten Jahr warnte es, der Umsatz werde sich erst im nächsten Jahr erholen.",
+		"Der im Sommer 2012 vereinbarte Vertrag wurde am Montag nach drei Stunden unterzeichnet.",
+		"Die Preise steigen seit mindestens zwanzig Jahren, jeden Dienstag und zweimal pro Woche.",
+		"Das Werk schließt Anfang November 1999 und öffnet wieder am 24.12.2003 um 10:30 Uhr.",
+		"In den 1990er Jahren, im 19. Jahrhundert und heute Abend, seit gestern und bis morgen früh.",
+	};
+
+	private static final String[] DUTCH = {
+		"Het bedrijf meldde op 15 januari 2010 dat de winst in het derde kwartaal was gestegen.",
+		"Vorig jaar waarschuwde het dat de verkoop pas volgend jaar zou herstellen.",
+		"De overeenkomst uit de zomer van 2012 werd maandag na drie uur getekend.",
+		"Elke dinsdag en twee keer per week sinds de jaren negentig, om 10:30 uur vanavond.",
+	};
+
+	/**
+	 * The rules of one timex type of a language, and the sentences of that
+	 * language to match them against.
+	 */
+	protected static class RuleSet {
+		public final String language;
+		public final TimexRuleMatcher matcher;
+		// the compiled extraction patterns, in rule order
+		public final List<Pattern> patterns = new ArrayList<Pattern>();
+		// the literals the prefilter of matcher searches for
+		public final List<String> keywords;
+		public final List<String> texts;
+
+		RuleSet(String language, TimexRuleMatcher matcher, List<String> texts) {
+			this.language = language;
+			this.matcher = matcher;
+			for (TimexRuleMatcher.RulePattern rulePattern : matcher.patterns) {
+				patterns.add(rulePattern.pattern);
+			}
+			this.keywords = matcher.prefilter.keywords;
+			this.texts = texts;
+		}
+
+		/**
+		 * @return the patterns as regular expressions
+		 */
+		public List<String> regexes() {
+			List<String> res = new ArrayList<String>();
+			for (Pattern pattern : patterns) {
+				res.add(pattern.pattern());
+			}
+			return res;
+		}
+
+		@Override
+		public String toString() {
+			return language + " " + matcher.timexType;
+		}
+	}
+
+	private static List<RuleSet> ruleSets;
+
+	/**
+	 * @return the model of language, without rule automata
+	 */
+	protected static RuleModel model(String language) {
+		return RuleModel.get(language, false);
+	}
+
+	/**
+	 * @return the rules of every timex type of every language in
+	 *         {@link #RULE_LANGUAGES}, with the sentences of their language
+	 */
+	protected static synchronized List<RuleSet> shippedRuleSets() throws IOException {
+		if (ruleSets == null) {
+			ruleSets = new ArrayList<RuleSet>();
+			for (String language : RULE_LANGUAGES) {
+				List<String> texts = sentences(language);
+				for (String timexType : TIMEX_TYPES) {
+					TimexRuleMatcher rm = model(language).getMatcher(timexType);
+					if (rm != null) {
+						ruleSets.add(new RuleSet(language, rm, texts));
+					}
+				}
+			}
+		}
+		return ruleSets;
+	}
+
+	/**
+	 * @return the lines of each pattern resource of language, by name, as
+	 *         joined into an alternation by RuleModel
+	 */
+	protected static Map<String, List<String>> rePatternLines(String language) throws IOException {
+		Map<String, List<String>> res = new LinkedHashMap<String, List<String>>();
+		for (String path : resourcePaths(language, "repattern")) {
+			String name = path.substring(path.lastIndexOf("resources_repattern_") + 20, path.length() - 4);
+			List<String> lines = new ArrayList<String>();
+			for (String line : readLines(path)) {
+				if (!line.startsWith("//") && !line.equals("")) {
+					lines.add(line);
+				}
+			}
+			res.put(name, lines);
+		}
+		return res;
+	}
+
+	/**
+	 * @return the words normalized by the normalization resources of language
+	 */
+	protected static List<String> normalizedWords(String language) throws IOException {
+		List<String> res = new ArrayList<String>();
+		Pattern paNormalization = Pattern.compile("\"(.*?)\",\"(.*?)\"");
+		for (String path : resourcePaths(language, "normalization")) {
+			for (String line : readLines(path)) {
+				Matcher m = paNormalization.matcher(line);
+				if (!line.startsWith("//") && m.find()) {
+					res.add(m.group(1));
+				}
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * @return sentences of language, also in upper, lower and title case,
+	 *         and run on to text before them so that matches may only be
+	 *         excluded by their lookbehind or boundaries, together with
+	 *         sentences made of the normalized words of language
+	 */
+	protected static List<String> sentences(String language) throws IOException {
+		String[] base = "german".equals(language) ? GERMAN : "dutch".equals(language) ? DUTCH : ENGLISH;
+		List<String> texts = new ArrayList<String>();
+		for (String sentence : base) {
+			texts.add(sentence);
+		}
+		List<String> words = normalizedWords(language);
+		for (int i = 0; i < words.size(); i += 8) {
+			StringBuilder text = new StringBuilder();
+			for (String word : words.subList(i, Math.min(i + 8, words.size()))) {
+				text.append("the ").append(word).append(" 14, 2010 and ");
+			}
+			texts.add(text.append("12:30").toString());
+		}
+		List<String> res = new ArrayList<String>();
+		for (String text : texts) {
+			res.add(text);
+			res.add(text.toUpperCase());
+			res.add(text.toLowerCase());
+			res.add(titleCase(text));
+			res.add("x" + text.replace(' ', '-'));
+			res.add("1" + text.replace(" ", ""));
+		}
+		return res;
+	}
+
+	private static String titleCase(String text) {
+		StringBuilder res = new StringBuilder(text.toLowerCase());
+		for (int i = 0; i < res.length(); i++) {
+			if (Character.isLetter(res.charAt(i)) && (i == 0 || !Character.isLetter(res.charAt(i - 1)))) {
+				res.setCharAt(i, Character.toUpperCase(res.charAt(i)));
+			}
+		}
+		return res.toString();
+	}
+
+	private static List<String> resourcePaths(String language, String resourceType) throws IOException {
+		List<String> res = new ArrayList<String>();
+		String prefix = "./" + language + "/" + resourceType + "/";
+		for (String line : readLines("used_resources.txt")) {
+			if (line.startsWith(prefix)) {
+				res.add(line.substring(2));
+			}
+		}
+		return res;
+	}
+
+	private static List<String> readLines(String path) throws IOException {
+		InputStream in = ShippedRulesTestCase.class.getClassLoader().getResourceAsStream(path);
+		if (in == null) {
+			throw new IOException("Resource not found: " + path);
+		}
+		List<String> res = new ArrayList<String>();
+		BufferedReader br = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+		try {
+			for (String line; (line = br.readLine()) != null; ) {
+				res.add(line);
+			}
+		} finally {
+			br.close();
+		}
+		return res;
+	}
+}
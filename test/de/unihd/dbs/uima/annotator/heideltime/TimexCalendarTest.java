@@ -0,0 +1,148 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TimexCalendarTest {
+
+	private static final String[] VALUES = {
+		"2023", "20XX", "2023-XX", "2023-H1", "2023-Q2", "2023-WI", "2023-W04", "2023-05", "2023-05-07",
+		"XX93-04-15TNI", "XX93-04-15T22", "2123-W42-WE", "XXXX-XX-XX", "19XX", "199X", "XXX5",
+		"2011-10-21T14:30", "2011-10-21T14:3", "2011-10-21TXX", "2011-10-21T", "2011-10-2", "2011-",
+		"2011-SPX", "2011-SP-01", "2011-W", "2011-H3", "2011-Q5", "PRESENT_REF", "UNDEF", "",
+	};
+
+	// Fragments of TIMEX3 values, and some that are not
+	private static final String[] FRAGMENTS = {
+		"0", "1", "2", "9", "19", "20", "2011", "X", "XX", "XXXX", "-", "-", "-", "W", "W0", "W52", "WE",
+		"H", "H1", "H2", "Q", "Q1", "Q4", "SP", "SU", "FA", "WI", "T", "T0", "T23", "MO", "MD", "AF",
+		"EV", "NI", ":", ":30", "P", "UNDEF", "a", " ",
+	};
+
+	/**
+	 * The regular expression based parser which parseTimex replaced.
+	 */
+	private static int parseTimexByRegex(TimexCalendar cal, String value) {
+		if (value.matches("^\\d{4}.*")) {
+			cal.set(TimexCalendar.YEAR, Integer.parseInt(value.substring(0, 4)));
+		}
+		else {
+			if (value.matches("^\\d{2}.*")) {
+				cal.set(TimexCalendar.CENTURY, Integer.parseInt(value.substring(0, 2)));
+			}
+			if (value.matches("^[X0-9]{2}\\d.*")) {
+				cal.set(TimexCalendar.DECADE, Integer.parseInt(value.substring(2, 3)));
+			}
+			if (value.matches("^[X0-9]{3}\\d.*")) {
+				cal.set(TimexCalendar.YEAR_UNIT, Integer.parseInt(value.substring(3, 4)));
+			}
+		}
+		if (value.length() < 5) {
+			return TimexCalendar.YEAR;
+		}
+		value = value.substring(5);
+		if (value.matches("^\\d{2}.*")) {
+			cal.set(TimexCalendar.MONTH, Integer.parseInt(value.substring(0, 2)) - 1);
+		}
+		else if (value.matches("^W\\d{2}.*")) {
+			cal.set(TimexCalendar.WEEK_OF_YEAR, Integer.parseInt(value.substring(1, 3)));
+		}
+		else if (value.matches("^H[1-2].*")) {
+			cal.set(TimexCalendar.HALF_YEAR, "1".equals(value.substring(1, 2)) ? TimexCalendar.H1 : TimexCalendar.H2);
+		}
+		else if (value.matches("^Q[1-4].*")) {
+			cal.set(TimexCalendar.QUARTER_YEAR, Integer.parseInt(value.substring(1, 2)));
+		}
+		else if (value.matches("^(SP|SU|FA|WI)")) {
+			cal.set(TimexCalendar.SEASON, cal.seasonToInt(value.substring(0, 2)));
+			return TimexCalendar.SEASON;
+		}
+		if (value.indexOf('-') < 0) {
+			switch(value.charAt(0)) {
+			case 'H':
+				return TimexCalendar.HALF_YEAR;
+			case 'Q':
+				return TimexCalendar.QUARTER_YEAR;
+			case 'W':
+				return TimexCalendar.WEEK_OF_YEAR;
+			default:
+				return TimexCalendar.MONTH;
+			}
+		}
+		value = value.substring(value.indexOf('-') + 1);
+		if (value.matches("^\\d{2}.*")) {
+			cal.set(TimexCalendar.DAY_OF_MONTH, Integer.parseInt(value.substring(0, 2)));
+		}
+		if (value.matches("WE.*")) {
+			cal.set(TimexCalendar.PART_OF_WEEK, TimexCalendar.WEEKEND);
+			return TimexCalendar.PART_OF_WEEK;
+		}
+		value = value.substring(2);
+		if (!value.startsWith("T")) {
+			return TimexCalendar.DATE;
+		}
+		if (value.matches("^T\\d{2}.*")) {
+			cal.set(TimexCalendar.HOUR_OF_DAY, Integer.parseInt(value.substring(1, 3)));
+		}
+		else if (value.matches("^T(MO|MD|AF|EV|NI).*")) {
+			cal.set(TimexCalendar.PART_OF_DAY, TimexCalendar.partOfDayCodes.indexOf(value.substring(1, 3)));
+			return TimexCalendar.PART_OF_DAY;
+		}
+		if (value.matches("^T\\d{2}:\\d{2}.*")) {
+			cal.set(TimexCalendar.MINUTE, Integer.parseInt(value.substring(4, 6)));
+		}
+		else {
+			return TimexCalendar.HOUR_OF_DAY;
+		}
+		return TimexCalendar.MINUTE;
+	}
+
+	private void assertParsesAsByRegex(TimexCalendar base, String value) {
+		TimexCalendar expected = (TimexCalendar) base.clone();
+		TimexCalendar actual = (TimexCalendar) base.clone();
+		Object expectedRes;
+		Object actualRes;
+		try {
+			expectedRes = parseTimexByRegex(expected, value);
+		} catch (RuntimeException e) {
+			expectedRes = e.getClass();
+		}
+		try {
+			actualRes = actual.parseTimex(value);
+		} catch (RuntimeException e) {
+			actualRes = e.getClass();
+		}
+		assertEquals("Result of parsing \"" + value + "\"", expectedRes, actualRes);
+		assertEquals("Fields set parsing \"" + value + "\"", expected.fieldMask, actual.fieldMask);
+		assertEquals("Time parsing \"" + value + "\"", expected.wrapped.getTimeInMillis(), actual.wrapped.getTimeInMillis());
+	}
+
+	@Test
+	public void testParseTimex() {
+		for (String value : VALUES) {
+			assertParsesAsByRegex(new TimexCalendar("XXXX"), value);
+			assertParsesAsByRegex(new TimexCalendar("XXXX", false), value);
+		}
+	}
+
+	/**
+	 * Values containing line breaks, which regular expressions treat
+	 * differently, are not generated.
+	 */
+	@Test
+	public void testParseTimexFuzz() {
+		Random random = new Random(42);
+		TimexCalendar[] bases = {new TimexCalendar("XXXX"), new TimexCalendar("XXXX", false),
+				new TimexCalendar("1999-12-31T23:59")};
+		for (int i = 0; i < 100000; i++) {
+			StringBuilder value = new StringBuilder();
+			for (int nFragments = random.nextInt(8); nFragments > 0; nFragments--) {
+				value.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+			}
+			assertParsesAsByRegex(bases[random.nextInt(bases.length)], value.toString());
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.uima.jcas.JCas;
+import org.cleartk.token.type.Sentence;
+import org.cleartk.token.type.Token;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.uimafit.factory.JCasFactory;
+import org.uimafit.factory.TypeSystemDescriptionFactory;
+
+public class TimexRuleMatcherTest extends ShippedRulesTestCase {
+
+	// joined into one sentence, so that timexes fall across window boundaries
+	private static final String[] PHRASES = {
+		"The company said on January 15, 2010 that its profit rose in the third quarter.",
+		"Last year it had warned that sales would not recover until next year.",
+		"The deal, agreed in the summer of 2012, was signed on Monday after three hours of talks.",
+		"Prices have risen for at least the last twenty years, and for at least the last 20 years in cities.",
+		"The plant will close at the beginning of November 1999 and reopen at the beginning of this November 24.",
+		"Sales fell in the early nineteen seventies and again in the late 1980s.",
+		"Shares rose every Tuesday morning and twice a week during the 1990s.",
+		"Talks lasted nearly two decades, from March 2009 until 10:30 a.m on Friday.",
+		"It was founded on 4 July 1998 and listed on September 14 and 18, 2010.",
+		"The year-earlier first quarter was weak, but the quarter ended 2009-12-19T17:00:00 was strong.",
+		"Prices rose in the years 1981, 1982, 1983, 1984, 1985, 1986, 1987, 1988, 1989, 1990, 1991, 1992,"
+				+ " 1993, 1994, 1995, 1996, 1997, 1998, 1999, 2000 and 2001, and fell in 2002, 2003, 2004, 2005,"
+				+ " 2006, 2007, 2008, 2009, 2010, 2011, 2012, 2013, 2014, 2015, 2016, 2017, 2018 and 2019.",
+	};
+
+	// rules matching the lists of years above, each longer than the least overlap of windows
+	private static final String LONG_RULES =
+			"RULENAME=\"long_r1\",EXTRACTION=\"the years (\\d\\d\\d\\d)((?:, \\d\\d\\d\\d)+) and (\\d\\d\\d\\d)\",NORM_VALUE=\"group(3)\"\n"
+			+ "RULENAME=\"long_r2\",EXTRACTION=\"in (\\d\\d\\d\\d)((?:, \\d\\d\\d\\d)*)\",NORM_VALUE=\"group(1)\"\n";
+
+	// a rule matching often, to be abandoned partway through windows
+	private static final String YEAR_RULES =
+			"RULENAME=\"year_r1\",EXTRACTION=\"(\\d\\d\\d\\d)\",NORM_VALUE=\"group(1)\"\n";
+
+	private static RuleModel model;
+	private static JCas jcas;
+	private static Sentence sentence;
+	private static TokenIndex tokens;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		model = model("english");
+		jcas = JCasFactory.createJCas(TypeSystemDescriptionFactory.createTypeSystemDescription());
+		StringBuilder text = new StringBuilder();
+		for (String phrase : PHRASES) {
+			text.append(phrase).append(' ');
+		}
+		jcas.setDocumentText(text.toString().trim());
+		sentence = new Sentence(jcas, 0, jcas.getDocumentText().length());
+		sentence.addToIndexes();
+		Matcher m = Pattern.compile("\\w+|[^\\w\\s]").matcher(jcas.getDocumentText());
+		while (m.find()) {
+			Token t = new Token(jcas, m.start(), m.end());
+			t.setPos(m.group().matches("\\d+") ? "CD" : "NN");
+			t.addToIndexes();
+		}
+		tokens = new TokenIndex(jcas);
+	}
+
+	private static List<String> describe(List<TimexCandidate> candidates) {
+		List<String> res = new ArrayList<String>();
+		for (TimexCandidate c : candidates) {
+			res.add(c.begin + "-" + c.end + " " + c.value + " " + c.quant + " " + c.freq + " " + c.mod + " " + c.foundByRule);
+		}
+		return res;
+	}
+
+	/**
+	 * Timexes no longer than a window are to be found as in the whole
+	 * sentence, whichever way the windows fall.
+	 */
+	@Test
+	public void testWindowsMatchAsWholeSentence() {
+		String text = sentence.getCoveredText();
+		for (TimexRuleMatcher rm : new TimexRuleMatcher[] {model.getDateMatcher(), model.getTimeMatcher(),
+				model.getDurationMatcher(), model.getSetMatcher()}) {
+			List<String> expected = describe(rm.findCandidates(sentence, text, tokens));
+			assertFalse(expected.isEmpty());
+			for (int windowSize = 40; windowSize < 300; windowSize += 13) {
+				assertTrue(text.length() > windowSize);
+				List<String> actual = describe(rm.findCandidates(sentence, text, tokens,
+						new MatchOptions(null, 0, windowSize)));
+				assertEquals(rm.timexType + " in windows of " + windowSize, expected, actual);
+			}
+		}
+	}
+
+	private static TimexRuleMatcher readRules(String rules) throws Exception {
+		return new TimexRuleMatcher("DATE", new InputStreamReader(
+				new ByteArrayInputStream(rules.getBytes("UTF-8")), "UTF-8"),
+				new HashMap<String, String>(), new HashMap<String, HashMap<String, String>>());
+	}
+
+	/**
+	 * Windows shorter than their least overlap, and windows ending at or
+	 * beyond the end of the sentence, find what the whole sentence does.
+	 */
+	@Test
+	public void testWindowSizesAtExtremes() {
+		String text = sentence.getCoveredText();
+		TimexRuleMatcher rm = model.getDateMatcher();
+		List<String> expected = describe(rm.findCandidates(sentence, text, tokens));
+		for (int windowSize : new int[] {1, 2, TimexRuleMatcher.MIN_WINDOW_OVERLAP - 1,
+				TimexRuleMatcher.MIN_WINDOW_OVERLAP, text.length() - 1, text.length(), text.length() + 1}) {
+			List<String> actual = describe(rm.findCandidates(sentence, text, tokens,
+					new MatchOptions(null, 0, windowSize)));
+			assertEquals("In windows of " + windowSize, expected, actual);
+		}
+	}
+
+	/**
+	 * Timexes longer than the overlap of windows but no longer than a window
+	 * are to be found as in the whole sentence, both where the rule matches
+	 * only the whole timex and where it also matches the part of it within
+	 * a window.
+	 */
+	@Test
+	public void testWindowsMatchLongTimexes() throws Exception {
+		TimexRuleMatcher rm = readRules(LONG_RULES);
+		String text = sentence.getCoveredText();
+		List<String> expected = describe(rm.findCandidates(sentence, text, tokens));
+		assertEquals(2, expected.size());
+		for (int windowSize = 140; windowSize < 400; windowSize += 7) {
+			List<String> actual = describe(rm.findCandidates(sentence, text, tokens,
+					new MatchOptions(null, 0, windowSize)));
+			assertEquals("In windows of " + windowSize, expected, actual);
+		}
+	}
+
+	/**
+	 * The matches found in a window before the rule exceeded its budget
+	 * there are neither kept nor counted.
+	 */
+	@Test
+	public void testBudgetExceededMatchesNotCounted() throws Exception {
+		TimexRuleMatcher rm = readRules(YEAR_RULES);
+		String text = sentence.getCoveredText();
+		RuleStatistics statistics = new RuleStatistics();
+		List<TimexCandidate> candidates = rm.findCandidates(sentence, text, tokens,
+				new MatchOptions(statistics, 600, 200));
+		RuleStatistics.Entry entry = statistics.snapshot().get("year_r1");
+		assertTrue(entry.getAborts() > 0);
+		assertFalse(candidates.isEmpty());
+		assertTrue(candidates.size() < rm.findCandidates(sentence, text, tokens).size());
+		assertEquals(candidates.size(), entry.getMatches());
+	}
+}
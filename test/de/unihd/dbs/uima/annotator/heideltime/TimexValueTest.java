@@ -0,0 +1,199 @@
+package de.unihd.dbs.uima.annotator.heideltime;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TimexValueTest {
+
+	// fully specified, so that nothing depends on the current time
+	private static final String[] BASES = {
+		"1999-12-31T23:59", "2012-02-29T00:00", "2023-05-07T12:30", "1900-01-01T06:15", "2009-12-28T18:45",
+	};
+
+	private static final int[] LOWEST_FIELDS = {
+		TimexCalendar.CENTURY, TimexCalendar.DECADE, TimexCalendar.YEAR, TimexCalendar.YEAR_UNIT,
+		TimexCalendar.HALF_YEAR, TimexCalendar.QUARTER_YEAR, TimexCalendar.SEASON, TimexCalendar.MONTH,
+		TimexCalendar.WEEK_OF_YEAR, TimexCalendar.PART_OF_WEEK, TimexCalendar.DATE, TimexCalendar.DAY_OF_WEEK,
+		TimexCalendar.PART_OF_DAY, TimexCalendar.HOUR_OF_DAY, TimexCalendar.MINUTE,
+	};
+
+	private static final int[] FIELDS = {
+		TimexCalendar.ERA, TimexCalendar.YEAR, TimexCalendar.MONTH, TimexCalendar.WEEK_OF_YEAR,
+		TimexCalendar.WEEK_OF_MONTH, TimexCalendar.DATE, TimexCalendar.DAY_OF_YEAR, TimexCalendar.DAY_OF_WEEK,
+		TimexCalendar.DAY_OF_WEEK_IN_MONTH, TimexCalendar.AM_PM, TimexCalendar.HOUR, TimexCalendar.HOUR_OF_DAY,
+		TimexCalendar.MINUTE, TimexCalendar.CENTURY, TimexCalendar.DECADE, TimexCalendar.YEAR_UNIT,
+		TimexCalendar.HALF_YEAR, TimexCalendar.QUARTER_YEAR, TimexCalendar.SEASON, TimexCalendar.PART_OF_DAY,
+		TimexCalendar.PART_OF_WEEK,
+	};
+
+	// fields which may be set, with the least and greatest values to set
+	private static final int[][] SET_FIELDS = {
+		{TimexCalendar.CENTURY, 17, 21}, {TimexCalendar.DECADE, 0, 9}, {TimexCalendar.YEAR, 1800, 2200},
+		{TimexCalendar.YEAR_UNIT, 0, 9}, {TimexCalendar.HALF_YEAR, 1, 2}, {TimexCalendar.QUARTER_YEAR, 1, 4},
+		{TimexCalendar.SEASON, 0, 3}, {TimexCalendar.MONTH, 0, 11}, {TimexCalendar.WEEK_OF_YEAR, 1, 53},
+		{TimexCalendar.PART_OF_WEEK, 1, 2}, {TimexCalendar.DATE, 1, 31}, {TimexCalendar.DAY_OF_WEEK, 1, 7},
+		{TimexCalendar.PART_OF_DAY, 0, 4}, {TimexCalendar.HOUR_OF_DAY, 0, 23}, {TimexCalendar.MINUTE, 0, 59},
+	};
+
+	private static final int[] ADD_FIELDS = {
+		TimexCalendar.CENTURY, TimexCalendar.DECADE, TimexCalendar.YEAR, TimexCalendar.HALF_YEAR,
+		TimexCalendar.QUARTER_YEAR, TimexCalendar.SEASON, TimexCalendar.MONTH, TimexCalendar.WEEK_OF_YEAR,
+		TimexCalendar.DATE, TimexCalendar.DAY_OF_WEEK, TimexCalendar.HOUR_OF_DAY, TimexCalendar.MINUTE,
+	};
+
+	private static final String[][] VALUE_PARTS = {
+		{"2011", "19XX", "XX93", "201X", "XXXX", "2000"},
+		{"", "-10", "-W42", "-W01", "-H2", "-Q3", "-WI", "-SU", "-XX", "-02"},
+		{"", "-21", "-WE", "-31", "-XX", "-29"},
+		{"", "T14", "TNI", "TXX", "T23", "TMO"},
+		{"", ":30", ":XX"},
+	};
+
+	private static TimeZone defaultTimeZone;
+
+	// as TimexValue has no time zone, nor has TimexCalendar in UTC
+	@BeforeClass
+	public static void setUTC() {
+		defaultTimeZone = TimeZone.getDefault();
+		TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+	}
+
+	@AfterClass
+	public static void restoreTimeZone() {
+		TimeZone.setDefault(defaultTimeZone);
+	}
+
+	private static String randomTimexValue(Random random) {
+		StringBuilder res = new StringBuilder();
+		for (String[] parts : VALUE_PARTS) {
+			res.append(parts[random.nextInt(parts.length)]);
+		}
+		return res.toString();
+	}
+
+	private void assertAgrees(String message, TimexCalendar expected, TimexValue actual) {
+		for (int field : LOWEST_FIELDS) {
+			assertEquals(message + " to field " + field, expected.toString(field), actual.toString(field));
+		}
+		for (int field : FIELDS) {
+			assertEquals(message + " has field " + field, expected.has(field), actual.has(field));
+			assertEquals(message + " get field " + field, expected.get(field), actual.get(field));
+		}
+		assertEquals(message + " lowest field", expected.getLowestField(), actual.getLowestField());
+	}
+
+	@Test
+	public void testParse() {
+		for (String base : BASES) {
+			assertAgrees(base, new TimexCalendar(base), TimexValue.parse(base, true));
+			assertAgrees(base, new TimexCalendar(base, false), TimexValue.parse(base, false));
+		}
+	}
+
+	@Test
+	public void testNow() {
+		TimexValue now = TimexValue.now(true);
+		assertTrue(now.has(TimexCalendar.ERA));
+		assertFalse(now.has(TimexCalendar.YEAR));
+		assertEquals("XXXX", now.toString());
+		assertEquals("XXXX-XX-XX", now.toString(TimexCalendar.DATE));
+	}
+
+	@Test
+	public void testImmutable() {
+		TimexValue value = TimexValue.parse("2011-10-21", true);
+		TimexValue copy = TimexValue.parse("2011-10-21", true);
+		assertEquals(value, copy);
+		assertEquals(value.hashCode(), copy.hashCode());
+		assertEquals("2011-12-21", value.add(TimexCalendar.MONTH, 2).toString());
+		assertEquals("2011-06-21", value.set(TimexCalendar.MONTH, 5).toString());
+		assertEquals("2011-10", value.withLowestField(TimexCalendar.MONTH).toString());
+		assertEquals("2011-10-21", value.toString());
+		assertEquals(copy, value);
+	}
+
+	/**
+	 * Applies the same random operations to a TimexCalendar and a TimexValue
+	 * starting from a fully specified date.
+	 */
+	@Test
+	public void testOperationsFuzz() {
+		Random random = new Random(42);
+		for (int i = 0; i < 20000; i++) {
+			String base = BASES[random.nextInt(BASES.length)];
+			boolean northernSeasons = random.nextBoolean();
+			TimexCalendar expected = new TimexCalendar(base, northernSeasons);
+			TimexValue actual = TimexValue.parse(base, northernSeasons);
+			String message = base;
+			// which also resolves the fields of expected, as later reads would
+			assertAgrees(message, expected, actual);
+			for (int nOps = random.nextInt(5) + 1; nOps > 0; nOps--) {
+				expected = (TimexCalendar) expected.clone();
+				switch (random.nextInt(4)) {
+				case 0: {
+					int[] set = SET_FIELDS[random.nextInt(SET_FIELDS.length)];
+					int value = set[1] + random.nextInt(set[2] - set[1] + 1);
+					message += " set(" + set[0] + ", " + value + ")";
+					expected.set(set[0], value);
+					actual = actual.set(set[0], value);
+					break;
+				}
+				case 1: {
+					int field = ADD_FIELDS[random.nextInt(ADD_FIELDS.length)];
+					int amount = random.nextInt(61) - 30;
+					if (field == TimexCalendar.CENTURY) {
+						amount = random.nextInt(3) - 1;
+					}
+					message += " add(" + field + ", " + amount + ")";
+					expected.add(field, amount);
+					actual = actual.add(field, amount);
+					break;
+				}
+				case 2: {
+					String value = randomTimexValue(random);
+					message += " parse(" + value + ")";
+					Object expectedRes;
+					try {
+						expected.setLowestField(expected.parseTimex(value));
+						expectedRes = null;
+					} catch (RuntimeException e) {
+						expectedRes = e.getClass();
+					}
+					Object actualRes;
+					try {
+						actual = actual.parse(value);
+						actualRes = null;
+					} catch (RuntimeException e) {
+						actualRes = e.getClass();
+					}
+					assertEquals(message, expectedRes, actualRes);
+					if (expectedRes != null) {
+						nOps = 0;
+						continue;
+					}
+					break;
+				}
+				case 3: {
+					String other = BASES[random.nextInt(BASES.length)];
+					int lowestField = LOWEST_FIELDS[random.nextInt(LOWEST_FIELDS.length)];
+					message += " update(" + other + ", " + lowestField + ")";
+					expected.update(new TimexCalendar(other, northernSeasons), lowestField);
+					actual = actual.update(TimexValue.parse(other, northernSeasons), lowestField);
+					break;
+				}
+				}
+				if (expected.get(TimexCalendar.YEAR) < 1700) {
+					// GregorianCalendar is Julian before 1582
+					break;
+				}
+				assertAgrees(message, expected, actual);
+			}
+		}
+	}
+}
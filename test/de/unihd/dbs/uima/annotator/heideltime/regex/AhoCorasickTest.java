@@ -0,0 +1,68 @@
+package de.unihd.dbs.uima.annotator.heideltime.regex;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.unihd.dbs.uima.annotator.heideltime.ShippedRulesTestCase;
+
+public class AhoCorasickTest extends ShippedRulesTestCase {
+
+	private static void assertFirstOccurrences(List<String> keywords, String text) {
+		int[] occurrences = new AhoCorasick(keywords).firstOccurrences(text);
+		assertEquals(keywords.size(), occurrences.length);
+		for (int k = 0; k < keywords.size(); k++) {
+			assertEquals("\"" + keywords.get(k) + "\" in " + text, text.indexOf(keywords.get(k)), occurrences[k]);
+		}
+	}
+
+	@Test
+	public void testOverlappingKeywords() {
+		List<String> keywords = Arrays.asList("he", "she", "his", "hers", "s", "ushers", "x");
+		for (String text : new String[] {"ushers", "she sells his hers", "hhishers", "", "h"}) {
+			assertFirstOccurrences(keywords, text);
+		}
+	}
+
+	@Test
+	public void testDuplicateKeywords() {
+		List<String> keywords = Arrays.asList("May", "May", "Mayday", "ay");
+		assertFirstOccurrences(keywords, "in May and on Mayday");
+	}
+
+	/**
+	 * Keywords which are suffixes of others are found through the failure
+	 * links of the longer, including where the longer only partly occurs,
+	 * and keywords outside ASCII are found like any other.
+	 */
+	@Test
+	public void testSuffixKeywords() {
+		List<String> keywords = Arrays.asList("abcd", "bcd", "cd", "d", "bce", "März", "ärz", "z");
+		for (String text : new String[] {"abce", "abcabcd", "xbcd", "im März", "MÄRZ und märz", "\u00e4"}) {
+			assertFirstOccurrences(keywords, text);
+		}
+	}
+
+	@Test
+	public void testNoKeywords() {
+		assertFirstOccurrences(Arrays.<String>asList(), "any text");
+		assertFirstOccurrences(Arrays.asList("x"), "");
+	}
+
+	/**
+	 * The keywords searched for by the prefilters of the shipped rules are
+	 * found where String.indexOf finds them.
+	 */
+	@Test
+	public void testShippedKeywords() throws Exception {
+		for (RuleSet rules : shippedRuleSets()) {
+			assertFalse(rules.toString(), rules.keywords.isEmpty());
+			for (String text : rules.texts) {
+				assertFirstOccurrences(rules.keywords, text);
+			}
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package de.unihd.dbs.uima.annotator.heideltime.regex;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import de.unihd.dbs.uima.annotator.heideltime.ShippedRulesTestCase;
+
+public class AlternationTrieTest extends ShippedRulesTestCase {
+
+	private static String flat(List<String> alternatives) {
+		StringBuilder res = new StringBuilder();
+		for (int i = 0; i < alternatives.size(); i++) {
+			if (i > 0) {
+				res.append('|');
+			}
+			res.append(alternatives.get(i));
+		}
+		return res.toString();
+	}
+
+	/**
+	 * @return the spans of the successive matches of pattern in text, and
+	 *         of the match of pattern at each offset of text
+	 */
+	private static List<String> matches(Pattern pattern, String text) {
+		List<String> res = new ArrayList<String>();
+		Matcher m = pattern.matcher(text);
+		while (m.find()) {
+			res.add(m.start() + "-" + m.end());
+		}
+		res.add("at");
+		for (int i = 0; i < text.length(); i++) {
+			m.region(i, text.length());
+			res.add(m.lookingAt() ? m.end() + "" : "-");
+		}
+		return res;
+	}
+
+	private static void assertEquivalent(String message, List<String> alternatives, List<String> texts) {
+		Pattern flat = Pattern.compile("(" + flat(alternatives) + ")");
+		Pattern trie = Pattern.compile("(" + AlternationTrie.toRegex(alternatives) + ")");
+		assertEquals(message, flat.matcher("").groupCount(), trie.matcher("").groupCount());
+		for (String text : texts) {
+			assertEquals(message + " in " + text, matches(flat, text), matches(trie, text));
+		}
+	}
+
+	@Test
+	public void testFactoring() {
+		assertEquals("[Jj]an(?:\\.|)|[Ff]eb", AlternationTrie.toRegex(Arrays.asList("[Jj]an\\.", "[Jj]an", "[Ff]eb")));
+		List<String> alternatives = Arrays.asList("[Jj]an\\.", "[Jj]an", "[Jj]anuary", "a", "b", "[cd]", "ab",
+				"(x)y", "x(y)", "\\d\\d?", "\\d{4}", "e|f", "");
+		assertEquivalent("small", alternatives, Arrays.asList(
+				"Jan. January jan", "abcd", "xy", "1 12 1234", "ef", ""));
+	}
+
+	/**
+	 * Empty alternatives, alone, repeated or after alternatives they are a
+	 * prefix of, keep their place in the order of preference.
+	 */
+	@Test
+	public void testEmptyAlternatives() {
+		List<String> texts = Arrays.asList("", "a", "ab", "ba", "abc");
+		for (List<String> alternatives : Arrays.asList(
+				Arrays.<String>asList(),
+				Arrays.asList(""),
+				Arrays.asList("", ""),
+				Arrays.asList("", "a"),
+				Arrays.asList("a", ""),
+				Arrays.asList("ab", "", "a"),
+				Arrays.asList("a", "ab", "", "abc"),
+				Arrays.asList("a(|b)", "a"))) {
+			assertEquivalent(alternatives.toString(), alternatives, texts);
+		}
+	}
+
+	/**
+	 * Alternatives are only factored on whole atoms, so that escapes,
+	 * classes, groups and quantified atoms are not split.
+	 */
+	@Test
+	public void testNonLiteralPrefixes() {
+		List<String> alternatives = Arrays.asList("\\.a", "\\.b", "\\\\a", "[ab]c", "[ab]d", "a?b", "a?c",
+				"(a)b", "(a)c", "a{2}", "a{3}", "\\d\\d", "\\d.", "\\u0041");
+		assertEquivalent("non-literal", alternatives, Arrays.asList(
+				".a .b \\a", "ac bd b c", "ab ac", "aa aaa", "12 1x", "A"));
+	}
+
+	/**
+	 * The factored alternation of the lines of each shipped pattern resource
+	 * matches the same as their flat alternation, including which
+	 * alternative is preferred where several match.
+	 */
+	@Test
+	public void testShippedPatternResources() throws Exception {
+		for (String language : LANGUAGES) {
+			List<String> texts = new ArrayList<String>(sentences(language));
+			List<String> words = normalizedWords(language);
+			for (int i = 0; i < words.size(); i += 16) {
+				StringBuilder text = new StringBuilder();
+				for (String word : words.subList(i, Math.min(i + 16, words.size()))) {
+					text.append(word).append(' ');
+				}
+				texts.add(text.toString());
+			}
+			for (Map.Entry<String, List<String>> resource : rePatternLines(language).entrySet()) {
+				assertEquivalent(language + " " + resource.getKey(), resource.getValue(), texts);
+			}
+		}
+	}
+}
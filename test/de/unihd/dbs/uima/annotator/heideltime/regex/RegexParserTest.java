@@ -0,0 +1,85 @@
+package de.unihd.dbs.uima.annotator.heideltime.regex;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import de.unihd.dbs.uima.annotator.heideltime.ShippedRulesTestCase;
+
+public class RegexParserTest extends ShippedRulesTestCase {
+
+	private static void assertParsed(String regex) {
+		RegexParser parser = new RegexParser(regex);
+		RegexNode tree = parser.parse();
+		assertNotNull(regex, tree);
+		assertEquals(regex, Pattern.compile(regex).matcher("").groupCount(), parser.getGroupCount());
+	}
+
+	/**
+	 * Every shipped rule and pattern resource is parsed, with as many groups
+	 * as java.util.regex finds.
+	 */
+	@Test
+	public void testParseShippedPatterns() throws Exception {
+		for (RuleSet rules : shippedRuleSets()) {
+			for (String regex : rules.regexes()) {
+				assertParsed(regex);
+			}
+		}
+		for (String language : LANGUAGES) {
+			for (List<String> lines : rePatternLines(language).values()) {
+				for (String line : lines) {
+					assertParsed(line);
+				}
+				assertParsed("(" + AlternationTrie.toRegex(lines) + ")");
+			}
+		}
+	}
+
+	@Test
+	public void testParseVariables() {
+		RegexNode tree = RegexParser.parse("on " + RegexParser.variable("reMonth") + "(?: of)?");
+		assertTrue(tree instanceof RegexNode.Sequence);
+		boolean found = false;
+		for (RegexNode item : ((RegexNode.Sequence) tree).items) {
+			if (item instanceof RegexNode.Variable) {
+				assertEquals("reMonth", ((RegexNode.Variable) item).name);
+				found = true;
+			}
+		}
+		assertTrue(found);
+	}
+
+	@Test
+	public void testFlagsAndBackReferences() {
+		RegexParser parser = new RegexParser("(?i)in (\\d+)");
+		parser.parse();
+		assertTrue(parser.usesFlags());
+		assertFalse(parser.usesBackReferences());
+		parser = new RegexParser("(a)\\1(?:b)");
+		parser.parse();
+		assertFalse(parser.usesFlags());
+		assertTrue(parser.usesBackReferences());
+		assertEquals(1, parser.getGroupCount());
+	}
+
+	/**
+	 * Empty branches and groups, and parentheses which are escaped, quoted
+	 * or in a class, are parsed with as many groups as java.util.regex finds.
+	 */
+	@Test
+	public void testEmptyAndEscapedGroups() {
+		for (String regex : new String[] {"(a|)", "(|a)", "()", "(?:)", "a||b", "(a|(|b))c", "\\(a\\)",
+				"[()](b)", "[^)(]", "\\Q(a)\\E(b)", "(a)?(?:b|(c))*", "(?<name>a)b"}) {
+			assertParsed(regex);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnbalanced() {
+		RegexParser.parse("(a))");
+	}
+}
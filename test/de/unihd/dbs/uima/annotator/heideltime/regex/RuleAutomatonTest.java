@@ -0,0 +1,105 @@
+package de.unihd.dbs.uima.annotator.heideltime.regex;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import de.unihd.dbs.uima.annotator.heideltime.ShippedRulesTestCase;
+
+public class RuleAutomatonTest extends ShippedRulesTestCase {
+
+	/**
+	 * Asserts that every pattern finding a match in one of texts is reported
+	 * by automaton.
+	 * @return the number of patterns not reported for some text
+	 */
+	private static int assertMatchingRules(String message, RuleAutomaton automaton, List<String> patterns,
+			List<String> texts) {
+		List<Pattern> compiled = new ArrayList<Pattern>();
+		for (String pattern : patterns) {
+			compiled.add(pattern == null ? null : Pattern.compile(pattern));
+		}
+		int nExcluded = 0;
+		for (String text : texts) {
+			BitSet matching = automaton.matchingRules(text);
+			for (int i = 0; i < compiled.size(); i++) {
+				if (!matching.get(i)) {
+					nExcluded++;
+					assertFalse(message + ": rule " + i + " " + patterns.get(i) + " matches " + text,
+							compiled.get(i) != null && compiled.get(i).matcher(text).find());
+				}
+			}
+		}
+		return nExcluded;
+	}
+
+	/**
+	 * The rules not reported for a sentence do not match it.
+	 */
+	@Test
+	public void testMatchingRulesIncludeShippedRulesMatching() throws Exception {
+		for (RuleSet rules : shippedRuleSets()) {
+			List<String> patterns = rules.regexes();
+			int nExcluded = assertMatchingRules(rules.toString(), new RuleAutomaton(patterns), patterns, rules.texts);
+			assertTrue(rules.toString(), nExcluded > 0);
+		}
+	}
+
+	/**
+	 * Patterns which cannot be compiled are always reported, and
+	 * lookaround is taken to succeed.
+	 */
+	@Test
+	public void testUnsupportedAndLookaround() {
+		List<String> patterns = Arrays.asList(
+				"(a)b\\1",
+				"(?i)march",
+				null,
+				"(?<=on )May",
+				"\\bJune\\b(?![\\.,]\\d)",
+				"[Jj]uly\\s+\\d{1,2}",
+				"x{20,}");
+		RuleAutomaton automaton = new RuleAutomaton(patterns);
+		BitSet matching = automaton.matchingRules("nothing here");
+		assertEquals("{0, 1, 2}", matching.toString());
+		matching = automaton.matchingRules("in May, June 2, and july 4");
+		assertEquals("{0, 1, 2, 3, 4, 5}", matching.toString());
+		assertMatchingRules("copy", automaton.copy(), patterns, Arrays.asList(
+				"on May", "June.5", "July  12", "xxxxxxxxxxxxxxxxxxxxxxxxx", "abab", "MARCH"));
+	}
+
+	/**
+	 * Constructs the automaton cannot follow exactly, whether left out of
+	 * it (flags, back references, also by name) or approximated (classes
+	 * and escapes it cannot interpret, anchors, reluctant and possessive
+	 * quantifiers), never
+	 * exclude a rule which matches.
+	 */
+	@Test
+	public void testUnsupportedConstructs() {
+		List<String> patterns = Arrays.asList(
+				"(?i:may) \\d",
+				"ma(?i)Y",
+				"(?<m>a)\\k<m>",
+				"\\p{Lu}ay",
+				"[a-z&&[^b]]ay",
+				"^May",
+				"May$",
+				"\\GMay",
+				"M.*?y",
+				"M\\w*+y",
+				"\\QM.y\\E",
+				"a\\hb",
+				"a\\Rb");
+		RuleAutomaton automaton = new RuleAutomaton(patterns);
+		assertEquals("{0, 1, 2}", automaton.matchingRules("nothing here").toString());
+		assertMatchingRules("unsupported", automaton, patterns, Arrays.asList(
+				"MAY 5", "maY", "aa", "May", "Jay and may", "in May", "May.", "Moody", "M.y", "MAY", "a b", "a\r\nb", ""));
+	}
+}